@@ -0,0 +1,198 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache from coded messages to decoded messages, attached to one decoding tree
+ * with KTree.enableDecodeCache(). Entries are evicted in least recently used order once
+ * the estimated memory of the cached strings exceeds the byte budget.
+ * The owning tree clears the cache whenever set() changes it, and a message decoded before the change
+ * is not cached after it, see getGeneration(). All methods are thread-safe.
+ */
+public class DecodeCache {
+
+	/**
+	 * Estimated bytes per entry on top of the characters, two String objects and a map entry.
+	 */
+	public static final int ENTRY_OVERHEAD = 112;
+
+	private final long maxBytes; //byte budget of the cache
+	private final LinkedHashMap<String, String> entries; //kept in access order
+	private long bytes; //estimated bytes of the cached entries
+	private long generation; //number of times the cache was cleared
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+	private final LongAdder invalidations;
+
+	/**
+	 * Construct an empty cache with a byte budget.
+	 * @param maxBytes the maximum estimated memory of the cached entries.
+	 * @throws IllegalArgumentException if maxBytes is not positive.
+	 */
+	public DecodeCache(long maxBytes){
+
+		if(maxBytes <= 0){
+			throw new IllegalArgumentException();
+		}
+
+		this.maxBytes = maxBytes;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+		this.invalidations = new LongAdder();
+	}
+
+	/**
+	 * Return the estimated memory of one entry.
+	 * @param codedMessage the coded message.
+	 * @param decodedMessage the decoded message.
+	 * @return the estimated bytes of the entry.
+	 */
+	private static long weigh(String codedMessage, String decodedMessage){
+
+		return ENTRY_OVERHEAD + 2L * codedMessage.length() + 2L * decodedMessage.length();
+	}
+
+	/**
+	 * Look up a decoded message, counting a hit or a miss.
+	 * @param codedMessage the coded message.
+	 * @return the cached decoded message, or null if it is not cached.
+	 */
+	public String get(String codedMessage){
+
+		String toReturn;
+		synchronized(this){
+			toReturn = entries.get(codedMessage);
+		}
+
+		if(toReturn == null){
+			misses.increment();
+		}
+		else{
+			hits.increment();
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Return the generation of the cache, which clear() moves on. Read it before decoding a message
+	 * and pass it to put(), so a message decoded from the tree as it was before a change is dropped.
+	 * @return the number of times the cache was cleared.
+	 */
+	public synchronized long getGeneration(){
+
+		return generation;
+	}
+
+	/**
+	 * Cache a decoded message, evicting the least recently used entries to stay in budget.
+	 * Entries larger than the whole budget are not cached.
+	 * @param codedMessage the coded message.
+	 * @param decodedMessage the decoded message.
+	 * @param generation the generation read before the message was decoded.
+	 */
+	public synchronized void put(String codedMessage, String decodedMessage, long generation){
+
+		if(generation != this.generation){
+			return; //the tree changed while the message was decoded
+		}
+
+		long weight = weigh(codedMessage, decodedMessage);
+		if(weight > maxBytes){
+			return;
+		}
+
+		String old = entries.put(codedMessage, decodedMessage);
+		if(old != null){
+			bytes -= weigh(codedMessage, old);
+		}
+		bytes += weight;
+
+		Iterator<Map.Entry<String, String>> itr = entries.entrySet().iterator();
+		while(bytes > maxBytes && itr.hasNext()){ //eldest entries come first
+			Map.Entry<String, String> eldest = itr.next();
+			bytes -= weigh(eldest.getKey(), eldest.getValue());
+			itr.remove();
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * Remove every entry, called by the tree when it changes.
+	 */
+	public synchronized void clear(){
+
+		if(!entries.isEmpty()){
+			entries.clear();
+			bytes = 0;
+		}
+		generation++;
+		invalidations.increment();
+	}
+
+	/**
+	 * Return the number of cached messages.
+	 * @return the number of entries.
+	 */
+	public synchronized int size(){
+
+		return entries.size();
+	}
+
+	/**
+	 * Return the estimated memory of the cached entries.
+	 * @return the estimated bytes in use.
+	 */
+	public synchronized long byteSize(){
+
+		return bytes;
+	}
+
+	/**
+	 * Return the byte budget of the cache.
+	 * @return the maximum estimated bytes.
+	 */
+	public long getMaxBytes(){
+
+		return maxBytes;
+	}
+
+	/**
+	 * Return the number of lookups that found a cached message.
+	 * @return the number of hits.
+	 */
+	public long getHits(){
+
+		return hits.sum();
+	}
+
+	/**
+	 * Return the number of lookups that did not find a cached message.
+	 * @return the number of misses.
+	 */
+	public long getMisses(){
+
+		return misses.sum();
+	}
+
+	/**
+	 * Return the number of entries evicted to stay within the byte budget.
+	 * @return the number of evictions.
+	 */
+	public long getEvictions(){
+
+		return evictions.sum();
+	}
+
+	/**
+	 * Return the number of times the cache was cleared because the tree changed.
+	 * @return the number of invalidations.
+	 */
+	public long getInvalidations(){
+
+		return invalidations.sum();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,164 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.BiConsumer;
+
+/**
+ * A Flow.Processor stage that decodes a coded message arriving in chunks and publishes the decoded text.
+ * The partial path of the walk is carried across chunk boundaries by a KTree.Decoder, and emitted
+ * leaves are collected into batches of at least batchSize characters before they are published.
+ * One chunk is requested from upstream at a time, and publishing blocks while a subscriber's buffer
+ * is full, so a slow subscriber slows down the upstream publisher instead of growing a queue.
+ * @param <T> the type of the chunks, CharSequence or ByteBuffer.
+ */
+public class DecodeProcessor<T> extends SubmissionPublisher<String> implements Flow.Processor<T, String> {
+
+	private final KTree.Decoder decoder; //walk state carried between chunks
+	private final BiConsumer<T, StringBuilder> feeder; //decodes one chunk into the batch
+	private final int batchSize; //characters collected before publishing
+	private final StringBuilder batch; //decoded text not yet published
+	private Flow.Subscription subscription; //the upstream subscription
+
+	/**
+	 * Construct a processor.
+	 * @param decoder the decoder holding the walk state.
+	 * @param feeder the decoder method for one chunk.
+	 * @param batchSize the number of decoded characters collected before publishing.
+	 * @param executor the executor that delivers to subscribers.
+	 * @param maxBufferCapacity the number of batches buffered per subscriber.
+	 */
+	private DecodeProcessor(KTree.Decoder decoder, BiConsumer<T, StringBuilder> feeder, int batchSize,
+			Executor executor, int maxBufferCapacity){
+
+		super(executor, maxBufferCapacity);
+
+		if(batchSize <= 0){
+			throw new IllegalArgumentException();
+		}
+
+		this.decoder = decoder;
+		this.feeder = feeder;
+		this.batchSize = batchSize;
+		this.batch = new StringBuilder();
+	}
+
+	/**
+	 * Create a processor for chunks of instruction characters in the default alphabet of the tree.
+	 * @param tree the decoding tree, it must not be changed while the processor runs.
+	 * @param batchSize the number of decoded characters collected before publishing.
+	 * @return the new processor.
+	 */
+	public static DecodeProcessor<CharSequence> forCharacters(KTree<String> tree, int batchSize){
+
+		return forCharacters(tree, SymbolAlphabet.forK(tree.getK()), batchSize, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+	}
+
+	/**
+	 * Create a processor for chunks of instruction characters.
+	 * @param tree the decoding tree, it must not be changed while the processor runs.
+	 * @param alphabet the instruction alphabet.
+	 * @param batchSize the number of decoded characters collected before publishing.
+	 * @param executor the executor that delivers to subscribers.
+	 * @param maxBufferCapacity the number of batches buffered per subscriber.
+	 * @return the new processor.
+	 */
+	public static DecodeProcessor<CharSequence> forCharacters(KTree<String> tree, SymbolAlphabet alphabet, int batchSize,
+			Executor executor, int maxBufferCapacity){
+
+		KTree.Decoder decoder = new KTree.Decoder(tree, alphabet);
+		return new DecodeProcessor<CharSequence>(decoder, decoder::feed, batchSize, executor, maxBufferCapacity);
+	}
+
+	/**
+	 * Create a processor for chunks of bytes where every byte is one instruction, like KTree.decodeBytes().
+	 * @param tree the decoding tree, it must not be changed while the processor runs.
+	 * @param batchSize the number of decoded characters collected before publishing.
+	 * @return the new processor.
+	 */
+	public static DecodeProcessor<ByteBuffer> forBytes(KTree<String> tree, int batchSize){
+
+		return forBytes(tree, batchSize, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+	}
+
+	/**
+	 * Create a processor for chunks of bytes where every byte is one instruction, like KTree.decodeBytes().
+	 * @param tree the decoding tree, it must not be changed while the processor runs.
+	 * @param batchSize the number of decoded characters collected before publishing.
+	 * @param executor the executor that delivers to subscribers.
+	 * @param maxBufferCapacity the number of batches buffered per subscriber.
+	 * @return the new processor.
+	 */
+	public static DecodeProcessor<ByteBuffer> forBytes(KTree<String> tree, int batchSize, Executor executor, int maxBufferCapacity){
+
+		KTree.Decoder decoder = new KTree.Decoder(tree, SymbolAlphabet.DECIMAL); //the alphabet is not used for bytes
+		return new DecodeProcessor<ByteBuffer>(decoder, decoder::feedBytes, batchSize, executor, maxBufferCapacity);
+	}
+
+	/**
+	 * Accept the upstream subscription and request the first chunk.
+	 * Only one upstream is allowed, a second subscription is cancelled.
+	 * @param subscription the upstream subscription.
+	 */
+	public void onSubscribe(Flow.Subscription subscription){
+
+		if(this.subscription != null){
+			subscription.cancel(); //only one upstream is allowed
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request(1);
+	}
+
+	/**
+	 * Decode one chunk into the batch and request the next chunk. Once the batch holds batchSize
+	 * characters it is published, which blocks the calling upstream thread while a subscriber's
+	 * buffer is full, so the next chunk is only requested when there is room again.
+	 * An instruction of k or more fails like decode(): the upstream subscription is cancelled, the text not yet
+	 * published is dropped and the subscribers are closed with the ArrayIndexOutOfBoundsException.
+	 * @param item the chunk of instructions.
+	 */
+	public void onNext(T item){
+
+		try{
+			feeder.accept(item, batch);
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			subscription.cancel(); //nothing after the bad instruction is decoded
+			batch.setLength(0);
+			closeExceptionally(e);
+			return;
+		}
+
+		if(batch.length() >= batchSize){
+			submit(batch.toString()); //blocks while a subscriber's buffer is full
+			batch.setLength(0);
+		}
+
+		subscription.request(1);
+	}
+
+	/**
+	 * Drop the decoded text not yet published and close the subscribers with the upstream error.
+	 * @param throwable the error of the upstream publisher.
+	 */
+	public void onError(Throwable throwable){
+
+		batch.setLength(0);
+		closeExceptionally(throwable);
+	}
+
+	/**
+	 * Publish the rest of the batch, which may be shorter than batchSize, and close the subscribers.
+	 * A walk left partway down the tree by the end of the message emits nothing, like decode().
+	 */
+	public void onComplete(){
+
+		if(batch.length() > 0){
+			submit(batch.toString());
+			batch.setLength(0);
+		}
+		close();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process service that decodes many concurrent coded streams against one shared, read-only tree.
+ * Each stream gets its own KTree.Decoder and one task that reads the stream, decodes it chunk by chunk
+ * and hands the decoded text to the consumer through a bounded queue. When the consumer falls behind
+ * the queue fills up, the task blocks, and the stream is no longer read, which pushes back on the sender.
+ * The tree must not be changed while the service is running.
+ */
+public class DecodeService implements AutoCloseable {
+
+	private static final String END = new String(); //marks the end of a stream, compared by identity
+
+	private final KTree<String> tree; //the shared decoding tree
+	private final SymbolAlphabet alphabet; //instruction characters of the streams
+	private final int queueCapacity; //decoded chunks buffered per stream
+	private final int chunkSize; //characters read from a stream at a time
+	private final ExecutorService executor; //runs one task per stream
+
+	/**
+	 * Construct a service with the default alphabet of the tree and one thread per stream.
+	 * Virtual threads are used when the runtime has them.
+	 * @param tree the decoding tree, it must not be changed while the service runs.
+	 * @param queueCapacity the number of decoded chunks buffered per stream before reading stops.
+	 */
+	public DecodeService(KTree<String> tree, int queueCapacity){
+
+		this(tree, SymbolAlphabet.forK(tree.getK()), queueCapacity, 1024, newThreadPerTaskExecutor());
+	}
+
+	/**
+	 * Construct a service.
+	 * @param tree the decoding tree, it must not be changed while the service runs.
+	 * @param alphabet the instruction alphabet of the streams.
+	 * @param queueCapacity the number of decoded chunks buffered per stream before reading stops.
+	 * @param chunkSize the number of characters read from a stream at a time.
+	 * @param executor the executor that runs one task per stream, it is shut down by close().
+	 * @throws IllegalArgumentException if the tree is empty or a size is not positive.
+	 */
+	public DecodeService(KTree<String> tree, SymbolAlphabet alphabet, int queueCapacity, int chunkSize, ExecutorService executor){
+
+		if(queueCapacity <= 0 || chunkSize <= 0){
+			throw new IllegalArgumentException();
+		}
+		new KTree.Decoder(tree, alphabet); //fail now rather than in every stream if the tree is empty
+
+		this.tree = tree;
+		this.alphabet = alphabet;
+		this.queueCapacity = queueCapacity;
+		this.chunkSize = chunkSize;
+		this.executor = executor;
+	}
+
+	/**
+	 * Return an executor that starts a new thread for every task, virtual threads on runtimes that
+	 * have them (Java 21 and later), daemon platform threads otherwise.
+	 * @return the new executor.
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(){
+
+		try{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e){
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(null, task, "decode-stream", 256 * 1024); //small stacks for many streams
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Start decoding a stream.
+	 * @param in the coded stream, it is closed when the stream ends or the session is closed.
+	 * @return the session to read the decoded text from.
+	 */
+	public Session open(Reader in){
+
+		Session session = new Session(in);
+		session.task = executor.submit(session::run);
+		return session;
+	}
+
+	/**
+	 * Stop every running stream and the executor.
+	 */
+	public void close(){
+
+		executor.shutdownNow();
+	}
+
+	/**
+	 * One stream being decoded by the service.
+	 */
+	public class Session implements AutoCloseable {
+
+		private final Reader in; //the coded stream
+		private final BlockingQueue<String> output; //decoded chunks waiting for the consumer
+		private volatile Future<?> task; //the task reading the stream
+		private volatile IOException failure; //the read or decode error that ended the stream, if any
+		private boolean ended; //the consumer has seen the end of the stream
+		private volatile boolean closed; //close() was called, nobody may be reading any more
+
+		/**
+		 * Create a new session.
+		 * @param in the coded stream.
+		 */
+		private Session(Reader in){
+			this.in = in;
+			this.output = new ArrayBlockingQueue<>(queueCapacity);
+		}
+
+		/**
+		 * Read, decode and queue the stream until it ends, runs on the executor.
+		 * The end of the stream is always queued, also when the stream fails or the session is closed.
+		 */
+		private void run(){
+
+			boolean interrupted = false;
+			try(Reader reader = in){
+				KTree.Decoder decoder = new KTree.Decoder(tree, alphabet);
+				char[] buffer = new char[chunkSize];
+				StringBuilder decoded = new StringBuilder();
+
+				int n;
+				while((n = reader.read(buffer)) >= 0){
+					decoder.feed(buffer, 0, n, decoded);
+					if(decoded.length() > 0){
+						output.put(decoded.toString()); //blocks while the consumer is behind
+						decoded.setLength(0);
+					}
+				}
+			}
+			catch(IOException e){
+				if(closed || (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))){
+					interrupted = true; //the session or service was closed during a read, the stream did not fail
+				}
+				else{
+					failure = e;
+				}
+			}
+			catch(InterruptedException e){
+				interrupted = true; //the session or service was closed
+			}
+			catch(RuntimeException e){
+				failure = new IOException("Decoding the stream failed", e); //an instruction the tree rejects
+			}
+			finally{
+				end(interrupted || closed);
+			}
+		}
+
+		/**
+		 * This method supports the run() method, it queues the end of the stream for the consumer.
+		 * @param stopped true if the session or service was closed, then the oldest chunks are dropped
+		 * to make room rather than waiting for a consumer that may be gone.
+		 */
+		private void end(boolean stopped){
+
+			if(!stopped){
+				try{
+					output.put(END); //blocks while the consumer is behind
+					return;
+				}
+				catch(InterruptedException e){
+					//closed while waiting, nobody may be reading any more
+				}
+			}
+			while(!output.offer(END)){
+				output.poll();
+			}
+		}
+
+		/**
+		 * Wait for the next decoded chunk.
+		 * @return the next decoded text, or null once the stream has ended.
+		 * @throws InterruptedException if interrupted while waiting.
+		 * @throws IOException if reading or decoding the stream failed.
+		 */
+		public String take() throws InterruptedException, IOException{
+
+			return unwrap(ended ? END : output.take());
+		}
+
+		/**
+		 * Return the next decoded chunk if one arrives in time.
+		 * @param timeout how long to wait.
+		 * @param unit the unit of timeout.
+		 * @return the next decoded text, null if none arrived in time or the stream has ended.
+		 * @throws InterruptedException if interrupted while waiting.
+		 * @throws IOException if reading or decoding the stream failed.
+		 */
+		public String poll(long timeout, TimeUnit unit) throws InterruptedException, IOException{
+
+			return unwrap(ended ? END : output.poll(timeout, unit));
+		}
+
+		/**
+		 * This method supports the take() and poll() methods.
+		 * @param chunk the chunk taken from the queue.
+		 * @return the chunk, or null for the end of the stream.
+		 * @throws IOException if reading or decoding the stream failed.
+		 */
+		private String unwrap(String chunk) throws IOException{
+
+			if(chunk == END){
+				ended = true;
+				if(failure != null){
+					throw failure;
+				}
+				return null;
+			}
+			return chunk;
+		}
+
+		/**
+		 * Test if the consumer has seen the end of the stream.
+		 * @return true if take() or poll() has returned the end of the stream.
+		 */
+		public boolean isEnded(){
+
+			return ended;
+		}
+
+		/**
+		 * Stop decoding the stream and close it. The chunks not yet taken are dropped as needed to end the
+		 * stream, and a read broken off by the close is not reported as a failure.
+		 * A Reader that holds a lock while it waits for input, like InputStreamReader, only closes once that read
+		 * returns, so to stop a stream that is waiting on a socket, close the socket.
+		 */
+		public void close(){
+
+			closed = true;
+			Future<?> running = task;
+			if(running != null){
+				running.cancel(true);
+			}
+			try{
+				in.close();
+			}
+			catch(IOException e){
+				//already closed or broken, nothing left to release
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,533 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Generate a DecoderProgram for one decoding tree as a hidden class, the code behind KTree.decodeCompiled().
+ * Every state becomes a block of bytecode that reads the next child index and jumps through a tableswitch
+ * straight to the block of the child, or to the code that appends a leaf and jumps back to the root block,
+ * so the JIT compiles the tree into branches instead of loading nodes and scanning for leaves.
+ * The class only refers to its own constants, it is unloaded with the last decoder that uses it.
+ */
+public final class DecoderCompiler {
+
+	/**
+	 * The longest run() method that is generated, HotSpot never JIT compiles a longer method
+	 * (-XX:HugeMethodLimit), so larger trees are better off with the interpreted tables.
+	 */
+	public static final int MAX_CODE_LENGTH = 8000;
+
+	private static final String CLASS_NAME = "CompiledDecoderProgram"; //hidden classes live in the package of the lookup
+	private static final String RUN_DESCRIPTOR = "([BIILjava/lang/StringBuilder;I)I";
+
+	//the opcodes the generated code uses
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD = 0x19;
+	private static final int ILOAD_2 = 0x1C;
+	private static final int ILOAD_3 = 0x1D;
+	private static final int ALOAD_0 = 0x2A;
+	private static final int ALOAD_1 = 0x2B;
+	private static final int BALOAD = 0x33;
+	private static final int POP = 0x57;
+	private static final int SWAP = 0x5F;
+	private static final int IINC = 0x84;
+	private static final int IF_ICMPGE = 0xA2;
+	private static final int GOTO = 0xA7;
+	private static final int TABLESWITCH = 0xAA;
+	private static final int IRETURN = 0xAC;
+	private static final int RETURN = 0xB1;
+	private static final int INVOKEVIRTUAL = 0xB6;
+	private static final int INVOKESPECIAL = 0xB7;
+
+	private DecoderCompiler(){}
+
+	/**
+	 * Compile the single instruction tables of a decoding tree into a DecoderProgram.
+	 * @param k the branching factor of the tree, only the instructions 0-9 are compiled.
+	 * @param next the state reached after one instruction, indexed by state * k + digit, 0 after a leaf or a reset.
+	 * @param emit the leaf emitted by one instruction, indexed like next, null if none.
+	 * @return the compiled program, or null if its code would be longer than MAX_CODE_LENGTH.
+	 */
+	public static DecoderProgram compile(int k, int[] next, String[] emit){
+
+		byte[] classFile = classFile(k, next, emit);
+		if(classFile == null){
+			return null;
+		}
+
+		try{
+			Class<?> program = MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+			return (DecoderProgram)program.getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException e){
+			throw new IllegalStateException(e); //the class is generated with a public constructor
+		}
+	}
+
+	/**
+	 * This method supports the compile() method, it writes the class file of the program.
+	 * Labels 0 to states - 1 start the block of each state, the next states labels return the state
+	 * when the input runs out, and the labels after those push one distinct leaf value for the last
+	 * label, the only append() call, so the JIT inlines one append() instead of one per leaf.
+	 * @param k the branching factor of the tree.
+	 * @param next the state reached after one instruction.
+	 * @param emit the leaf emitted by one instruction.
+	 * @return the class file, or null if the code would be too long.
+	 */
+	private static byte[] classFile(int k, int[] next, String[] emit){
+
+		int states = next.length / k;
+		int digits = Math.min(k, 10);
+
+		if(states > MAX_CODE_LENGTH / 16){ //every state takes more than 16 bytes
+			return null;
+		}
+
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classRef(CLASS_NAME);
+		int objectClass = pool.classRef("java/lang/Object");
+		int programInterface = pool.classRef("DecoderProgram");
+		int objectInit = pool.methodRef(objectClass, "<init>", "()V");
+		int append = pool.methodRef(pool.classRef("java/lang/StringBuilder"), "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+		int stringClass = pool.classRef("java/lang/String");
+		int codeName = pool.utf8("Code");
+		int stackMapName = pool.utf8("StackMapTable");
+		int initName = pool.utf8("<init>");
+		int initDescriptor = pool.utf8("()V");
+		int runName = pool.utf8("run");
+		int runDescriptor = pool.utf8(RUN_DESCRIPTOR);
+
+		//number the distinct leaf values, each gets one block that appends it
+		HashMap<String, Integer> leaves = new HashMap<>();
+		for(int s = 0; s < states; s++){
+			for(int d = 0; d < digits; d++){
+				String leaf = emit[s * k + d];
+				if(leaf != null && !leaves.containsKey(leaf)){
+					leaves.put(leaf, leaves.size());
+				}
+			}
+		}
+
+		int appendLabel = 2 * states + leaves.size();
+		Assembler code = new Assembler(appendLabel + 1);
+
+		code.u1(ILOAD); //jump to the block of the starting state
+		code.u1(5);
+		int[] blocks = new int[states];
+		for(int s = 0; s < states; s++){
+			blocks[s] = s;
+		}
+		code.tableswitch(blocks, 0);
+
+		int[] targets = new int[digits];
+		for(int s = 0; s < states; s++){
+			code.bind(s);
+			code.u1(ILOAD_2); //i < to or return the state
+			code.u1(ILOAD_3);
+			code.branch(IF_ICMPGE, states + s);
+			code.u1(ALOAD_1); //numbers[i++]
+			code.u1(ILOAD_2);
+			code.u1(BALOAD);
+			code.u1(IINC);
+			code.u1(2);
+			code.u1(1);
+			for(int d = 0; d < digits; d++){
+				String leaf = emit[s * k + d];
+				targets[d] = (leaf != null) ? 2 * states + leaves.get(leaf) : next[s * k + d];
+			}
+			code.tableswitch(targets, 0);
+			if(code.size() > MAX_CODE_LENGTH){
+				return null;
+			}
+		}
+
+		for(int s = 0; s < states; s++){
+			code.bind(states + s);
+			code.u1(SIPUSH);
+			code.u2(s);
+			code.u1(IRETURN);
+		}
+
+		for(String leaf : leaves.keySet()){
+			code.bind(2 * states + leaves.get(leaf));
+			code.u1(LDC_W);
+			code.u2(pool.string(leaf));
+			code.branch(GOTO, appendLabel);
+		}
+
+		code.bind(appendLabel);
+		code.u1(ALOAD); //decodedMessage.append(leaf), then back to the root
+		code.u1(4);
+		code.u1(SWAP);
+		code.u1(INVOKEVIRTUAL);
+		code.u2(append);
+		code.u1(POP);
+		code.branch(GOTO, 0);
+
+		if(code.size() > MAX_CODE_LENGTH || !pool.fits()){
+			return null;
+		}
+
+		byte[] run = code.finish();
+		byte[] frames = code.frames(appendLabel, stringClass);
+
+		try{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0); //minor version
+			out.writeShort(52); //Java 8, verified with the stack map frames of run()
+			pool.writeTo(out);
+			out.writeShort(0x0031); //public final super
+			out.writeShort(thisClass);
+			out.writeShort(objectClass);
+			out.writeShort(1);
+			out.writeShort(programInterface);
+			out.writeShort(0); //no fields
+			out.writeShort(2);
+
+			out.writeShort(0x0001); //public <init>(){ super(); }
+			out.writeShort(initName);
+			out.writeShort(initDescriptor);
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(12 + 5);
+			out.writeShort(1); //max stack
+			out.writeShort(1); //max locals
+			out.writeInt(5);
+			out.write(new byte[]{(byte)ALOAD_0, (byte)INVOKESPECIAL, (byte)(objectInit >> 8), (byte)objectInit, (byte)RETURN});
+			out.writeShort(0); //no exception handlers
+			out.writeShort(0); //no attributes
+
+			out.writeShort(0x0001); //public int run(numbers, i, to, decodedMessage, state)
+			out.writeShort(runName);
+			out.writeShort(runDescriptor);
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(12 + run.length + 6 + frames.length);
+			out.writeShort(2); //max stack
+			out.writeShort(6); //max locals
+			out.writeInt(run.length);
+			out.write(run);
+			out.writeShort(0); //no exception handlers
+			out.writeShort(1);
+			out.writeShort(stackMapName);
+			out.writeInt(frames.length);
+			out.write(frames);
+
+			out.writeShort(0); //no class attributes
+			out.flush();
+			return bytes.toByteArray();
+		}
+		catch(IOException e){
+			throw new IllegalStateException(e); //the stream is in memory
+		}
+	}
+
+	/**
+	 * The constant pool of the generated class, every constant is added once.
+	 */
+	private static class ConstantPool{
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final HashMap<String, Integer> entries = new HashMap<>(); //index of each constant by kind and text
+		private int count = 1; //entry 0 is not used
+		private boolean tooLong; //a text did not fit in a constant
+
+		/**
+		 * This method supports the other ConstantPool methods, it adds an entry unless it is already there.
+		 * @param key the kind and text of the entry.
+		 * @param entry the bytes of the entry.
+		 * @return the index of the entry.
+		 */
+		private int add(String key, byte[] entry){
+
+			Integer index = entries.get(key);
+			if(index == null){
+				index = count++;
+				entries.put(key, index);
+				bytes.write(entry, 0, entry.length);
+			}
+			return index;
+		}
+
+		/**
+		 * Add a UTF-8 constant.
+		 * @param text the text.
+		 * @return the index of the constant.
+		 */
+		public int utf8(String text){
+
+			ByteArrayOutputStream entry = new ByteArrayOutputStream();
+			try{
+				DataOutputStream data = new DataOutputStream(entry);
+				data.writeByte(1);
+				data.writeUTF(text); //the modified UTF-8 of class files
+			}
+			catch(IOException e){
+				tooLong = true; //fits() turns the compile down
+				return 0;
+			}
+			return add("U" + text, entry.toByteArray());
+		}
+
+		/**
+		 * Add a class constant.
+		 * @param name the internal name of the class.
+		 * @return the index of the constant.
+		 */
+		public int classRef(String name){
+
+			int utf8 = utf8(name);
+			return add("C" + name, new byte[]{7, (byte)(utf8 >> 8), (byte)utf8});
+		}
+
+		/**
+		 * Add a string constant.
+		 * @param text the string.
+		 * @return the index of the constant.
+		 */
+		public int string(String text){
+
+			int utf8 = utf8(text);
+			return add("S" + text, new byte[]{8, (byte)(utf8 >> 8), (byte)utf8});
+		}
+
+		/**
+		 * Add a method constant.
+		 * @param owner the index of the class constant of the owner.
+		 * @param name the name of the method.
+		 * @param descriptor the descriptor of the method.
+		 * @return the index of the constant.
+		 */
+		public int methodRef(int owner, String name, String descriptor){
+
+			int nameIndex = utf8(name);
+			int descriptorIndex = utf8(descriptor);
+			int nameAndType = add("N" + name + descriptor,
+					new byte[]{12, (byte)(nameIndex >> 8), (byte)nameIndex, (byte)(descriptorIndex >> 8), (byte)descriptorIndex});
+			return add("M" + owner + "." + name + descriptor,
+					new byte[]{10, (byte)(owner >> 8), (byte)owner, (byte)(nameAndType >> 8), (byte)nameAndType});
+		}
+
+		/**
+		 * Test if the pool still fits in a class file.
+		 * @return true if there are fewer than 65535 entries and every text fits in a constant.
+		 */
+		public boolean fits(){
+
+			return count < 0xFFFF && !tooLong;
+		}
+
+		/**
+		 * Write the pool count and entries.
+		 * @param classFile the class file.
+		 * @throws IOException if writing fails.
+		 */
+		public void writeTo(DataOutputStream classFile) throws IOException{
+
+			classFile.writeShort(count);
+			bytes.writeTo(classFile);
+		}
+	}
+
+	/**
+	 * The code of the run() method, with labels that are bound after the jumps to them are written.
+	 * Every label starts a stack map frame with the locals of the frame on entry, since the locals
+	 * keep their parameter types, and the stack is empty at every jump but the ones to one label.
+	 */
+	private static class Assembler{
+
+		private byte[] code = new byte[256];
+		private int size;
+		private final int[] labels; //position of each label, -1 until bound
+		private int[] fixups = new int[64]; //position of the offset, position of the jump, label, width
+		private int fixupCount;
+
+		/**
+		 * Start an empty method.
+		 * @param labels the number of labels.
+		 */
+		public Assembler(int labels){
+
+			this.labels = new int[labels];
+			Arrays.fill(this.labels, -1);
+		}
+
+		/**
+		 * Return the length of the code so far.
+		 * @return the number of bytes.
+		 */
+		public int size(){
+
+			return size;
+		}
+
+		/**
+		 * Append one byte.
+		 * @param b the byte.
+		 */
+		public void u1(int b){
+
+			if(size == code.length){
+				code = Arrays.copyOf(code, 2 * size);
+			}
+			code[size++] = (byte)b;
+		}
+
+		/**
+		 * Append two bytes, big-endian.
+		 * @param v the value.
+		 */
+		public void u2(int v){
+
+			u1(v >> 8);
+			u1(v);
+		}
+
+		/**
+		 * Append four bytes, big-endian.
+		 * @param v the value.
+		 */
+		public void u4(int v){
+
+			u2(v >> 16);
+			u2(v);
+		}
+
+		/**
+		 * Bind a label to the end of the code.
+		 * @param label the label.
+		 */
+		public void bind(int label){
+
+			labels[label] = size;
+		}
+
+		/**
+		 * Append a jump with a two byte offset.
+		 * @param opcode the jump instruction.
+		 * @param label the target.
+		 */
+		public void branch(int opcode, int label){
+
+			int at = size;
+			u1(opcode);
+			offset(at, label, 2);
+		}
+
+		/**
+		 * Append a tableswitch over 0 to targets.length - 1.
+		 * @param targets the label of each case.
+		 * @param defaultLabel the label of the other values.
+		 */
+		public void tableswitch(int[] targets, int defaultLabel){
+
+			int at = size;
+			u1(TABLESWITCH);
+			while(size % 4 != 0){
+				u1(0);
+			}
+			offset(at, defaultLabel, 4);
+			u4(0);
+			u4(targets.length - 1);
+			for(int target : targets){
+				offset(at, target, 4);
+			}
+		}
+
+		/**
+		 * This method supports the branch() and tableswitch() methods, it leaves room for an offset.
+		 * @param at the position of the jump instruction.
+		 * @param label the target.
+		 * @param width 2 or 4 bytes.
+		 */
+		private void offset(int at, int label, int width){
+
+			if(fixupCount + 4 > fixups.length){
+				fixups = Arrays.copyOf(fixups, 2 * fixups.length);
+			}
+			fixups[fixupCount++] = size;
+			fixups[fixupCount++] = at;
+			fixups[fixupCount++] = label;
+			fixups[fixupCount++] = width;
+			for(int b = 0; b < width; b++){
+				u1(0);
+			}
+		}
+
+		/**
+		 * Fill in the jump offsets.
+		 * @return the code.
+		 */
+		public byte[] finish(){
+
+			for(int f = 0; f < fixupCount; f += 4){
+				int offset = labels[fixups[f + 2]] - fixups[f + 1];
+				for(int b = fixups[f + 3] - 1, p = fixups[f]; b >= 0; b--, p++){
+					code[p] = (byte)(offset >> (8 * b));
+				}
+			}
+			return Arrays.copyOf(code, size);
+		}
+
+		/**
+		 * Write the StackMapTable entries, a same frame at every label.
+		 * @param stringLabel the label that is reached with a string on the stack.
+		 * @param stringClass the index of the class constant of String.
+		 * @return the number of entries followed by the entries.
+		 */
+		public byte[] frames(int stringLabel, int stringClass){
+
+			int[] positions = labels.clone();
+			Arrays.sort(positions);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			int count = 0;
+			int previous = -1;
+			for(int position : positions){
+				if(position < 0 || position == previous){
+					continue; //unused label, or two labels at one place
+				}
+				int delta = position - previous - 1;
+				if(position == labels[stringLabel]){
+					if(delta < 64){
+						bytes.write(64 + delta); //same_locals_1_stack_item_frame
+					}
+					else{
+						bytes.write(247); //same_locals_1_stack_item_frame_extended
+						bytes.write(delta >> 8);
+						bytes.write(delta);
+					}
+					bytes.write(7); //a String
+					bytes.write(stringClass >> 8);
+					bytes.write(stringClass);
+				}
+				else if(delta < 64){
+					bytes.write(delta); //same_frame
+				}
+				else{
+					bytes.write(251); //same_frame_extended
+					bytes.write(delta >> 8);
+					bytes.write(delta);
+				}
+				previous = position;
+				count++;
+			}
+
+			byte[] entries = bytes.toByteArray();
+			byte[] frames = new byte[2 + entries.length];
+			frames[0] = (byte)(count >> 8);
+			frames[1] = (byte)count;
+			System.arraycopy(entries, 0, frames, 2, entries.length);
+			return frames;
+		}
+	}
+}
\ No newline at end of file
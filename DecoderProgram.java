@@ -0,0 +1,19 @@
+/**
+ * Define the decoding loop DecoderCompiler generates for one decoding tree, see KTree.decodeCompiled().
+ * The states are the root, state 0, and every node with a value that is not a leaf,
+ * numbered like KTree.LookaheadDecoder numbers them.
+ */
+public interface DecoderProgram {
+
+	/**
+	 * Walk the tree for a run of child indices, appending every leaf reached and resetting back to the root
+	 * after a leaf or a missing child, like decode().
+	 * @param numbers the child indices, each less than k.
+	 * @param from the index of the first child index.
+	 * @param to the index after the last child index.
+	 * @param decodedMessage the decoded string with the secret message.
+	 * @param state the state the walk starts in.
+	 * @return the state the walk ends in, to continue with the next run.
+	 */
+	public int run(byte[] numbers, int from, int to, StringBuilder decodedMessage, int state);
+}
\ No newline at end of file
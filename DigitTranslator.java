@@ -0,0 +1,128 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Translate digit instructions into child indices before the tree walk, the front end of KTree.decodeDigits().
+ * translate() stops at the first symbol that is not a digit less than k and returns how many symbols it
+ * translated, so the caller finds every invalid or out-of-range symbol at srcOffset + the returned count.
+ * The byte version checks 8 ASCII digits at a time inside one long, translateScalar() checks one byte at a time
+ * and gives the same results.
+ */
+public final class DigitTranslator {
+
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN); //8 bytes as one long
+	private static final long ONES = 0x0101010101010101L; //1 in every byte
+	private static final long HIGHS = 0x8080808080808080L; //the top bit of every byte
+
+	private DigitTranslator(){}
+
+	/**
+	 * Return the largest digit character that selects a child.
+	 * @param k the branching factor k.
+	 * @return '0' + k - 1, or '9' if k is more than 10.
+	 * @throws InvalidKException if k is less than 2.
+	 */
+	private static int lastDigit(int k){
+
+		if(k < 2){
+			throw new InvalidKException();
+		}
+		return '0' + Math.min(k, 10) - 1;
+	}
+
+	/**
+	 * Translate ASCII digits into child indices, 8 bytes at a time.
+	 * A block of 8 is accepted when no byte is below '0' and no byte is above the last digit for k,
+	 * then '0' is taken off every byte at once. The first block that fails is finished one byte at a time.
+	 * @param src the ASCII digits.
+	 * @param srcOffset the index of the first digit.
+	 * @param dst the child indices, may be src to translate in place.
+	 * @param dstOffset the index of the first child index.
+	 * @param length the number of bytes to translate.
+	 * @param k the branching factor k.
+	 * @return the number of leading bytes that are digits less than k, their child indices are in dst.
+	 * @throws InvalidKException if k is less than 2.
+	 */
+	public static int translate(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length, int k){
+
+		int last = lastDigit(k);
+		long below = ONES * '0'; //hasless(w, '0')
+		long above = ONES * (127 - last); //hasmore(w, last)
+
+		int n = 0;
+		for(; n + 8 <= length; n += 8){
+			long w = (long)LONGS.get(src, srcOffset + n);
+			if(((((w - below) & ~w) | (w + above) | w) & HIGHS) != 0){
+				break; //some byte is not a digit less than k
+			}
+			LONGS.set(dst, dstOffset + n, w - below); //no byte is below '0' so nothing borrows
+		}
+		return n + translateScalar(src, srcOffset + n, dst, dstOffset + n, length - n, k);
+	}
+
+	/**
+	 * Translate ASCII digits into child indices one byte at a time, the fallback of translate().
+	 * @param src the ASCII digits.
+	 * @param srcOffset the index of the first digit.
+	 * @param dst the child indices, may be src to translate in place.
+	 * @param dstOffset the index of the first child index.
+	 * @param length the number of bytes to translate.
+	 * @param k the branching factor k.
+	 * @return the number of leading bytes that are digits less than k, their child indices are in dst.
+	 * @throws InvalidKException if k is less than 2.
+	 */
+	public static int translateScalar(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length, int k){
+
+		int count = lastDigit(k) - '0' + 1;
+
+		for(int n = 0; n < length; n++){
+			int number = src[srcOffset + n] - '0';
+			if(number < 0 || number >= count){
+				return n;
+			}
+			dst[dstOffset + n] = (byte)number;
+		}
+		return length;
+	}
+
+	/**
+	 * Translate digit characters into child indices with one unsigned compare per character,
+	 * instead of Character.getNumericValue(). Only '0' to '9' are translated, the caller decides
+	 * what to do with other characters that Character.getNumericValue() reads as digits.
+	 * @param src the digit characters.
+	 * @param srcOffset the index of the first character.
+	 * @param dst the child indices.
+	 * @param dstOffset the index of the first child index.
+	 * @param length the number of characters to translate.
+	 * @param k the branching factor k.
+	 * @return the number of leading characters that are digits less than k, their child indices are in dst.
+	 * @throws InvalidKException if k is less than 2.
+	 */
+	public static int translate(CharSequence src, int srcOffset, byte[] dst, int dstOffset, int length, int k){
+
+		int count = lastDigit(k) - '0' + 1;
+
+		for(int n = 0; n < length; n++){
+			int number = src.charAt(srcOffset + n) - '0';
+			if(Integer.compareUnsigned(number, count) >= 0){
+				return n;
+			}
+			dst[dstOffset + n] = (byte)number;
+		}
+		return length;
+	}
+
+	/**
+	 * Test if a symbol that translate() stopped at is a digit that no child answers to,
+	 * the symbols decode() rejects with an ArrayIndexOutOfBoundsException.
+	 * @param c the symbol.
+	 * @param k the branching factor k.
+	 * @return true if Character.getNumericValue(c) is a digit from k to 9.
+	 */
+	public static boolean isOutOfRange(char c, int k){
+
+		int number = Character.getNumericValue(c);
+		return number >= k && number <= 9;
+	}
+}
\ No newline at end of file
@@ -1,5 +1,5 @@
-/**
- * Construct a new exception when the branching factor k is less than 2.
- * @author CS310 professors.
- */
+/**
+ * Construct a new exception when the branching factor k is less than 2.
+ * @author CS310 professors.
+ */
 public class InvalidKException extends InvalidTreeException {}
\ No newline at end of file
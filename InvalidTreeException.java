@@ -1,5 +1,5 @@
-/**
- * Construct a new exception when setting the location would make an invalid tree.
- * @author CS310 professors.
- */
+/**
+ * Construct a new exception when setting the location would make an invalid tree.
+ * @author CS310 professors.
+ */
 public class InvalidTreeException extends RuntimeException {}
\ No newline at end of file
@@ -2,7 +2,26 @@ import java.util.Iterator;
 import java.util.Scanner;
 import java.io.File;
 import java.io.IOException;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongBinaryOperator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
 
 /**
  * The linked structure implementation of a k-ary tree.
@@ -22,7 +41,21 @@ public class KTree<E> implements TreeIterable<E> {
 	private int numberOfElements; //number of valid values in the k-ary tree
 	private int numberOfNodes; //number of nodes of a perfect k-ary tree
 	private int kValue; //k branching factor of the k-ary tree
-	private int height; //height of a perfect k-ary tree
+	private int height; //deepest level that holds a value
+	private int[] levelValues; //number of values on each level, which keeps the height exact
+	
+	private KTreeMetrics metrics; //operation metrics, null when metrics are turned off
+	private DecodeCache decodeCache; //cache of decoded messages, null when caching is turned off
+	private LookaheadDecoder lookahead; //tables built by decodeLookahead(), null until needed
+	private CompiledDecoder compiledDecoder; //decoder built by decodeCompiled(), null until needed
+	private IndexHashes hashes; //hash of each subtree with values by location index, null when hashing is turned off
+	private ToLongFunction<? super E> valueHasher; //64-bit hash of one value the hashes are made with
+	private long version; //number of changes made to the tree
+	private HashMap<E, Object> positions; //location of each value, an Integer or an IndexSet, null when the reverse index is turned off
+	private float positionsLoadFactor; //load factor of the IndexSets of the reverse index
+	private HashMap<Integer, int[]> subtreeCounts; //size and values per level of each subtree the iterators reach, null when counting is turned off
+	private boolean compact; //null positions have no node, see KTree(arrayTree, k, compact)
+	private BitSet placeholders; //indices of the null nodes the default mode would have, compact mode only
 	
 	/**
 	 * Define a tree node that has an array of children and an associated index.
@@ -45,26 +78,92 @@ public class KTree<E> implements TreeIterable<E> {
 			this.children = new Node[kValue];
 			this.index = index;
 		}
+		
+		/**
+		 * Create a new node for a compact tree, its children array grows when a child is added.
+		 * @param data the specified value.
+		 * @param index the index associated with each node.
+		 */
+		@SuppressWarnings("unchecked")
+		public Node(E data, int index){
+			this.data = data;
+			this.children = (Node<E>[])NO_CHILDREN;
+			this.index = index;
+		}
+		
+		/**
+		 * Return a child of the node.
+		 * @param i the position of the child, 0 to k - 1.
+		 * @return the child, or null if there is no child at that position.
+		 */
+		public Node<E> child(int i){
+			return (i < children.length) ? children[i] : null; //compact nodes only hold up to the last child
+		}
+		
+		/**
+		 * Set a child of the node, growing a compact children array when needed.
+		 * @param i the position of the child, 0 to k - 1.
+		 * @param child the new child.
+		 */
+		public void setChild(int i, Node<E> child){
+			if(i >= children.length){
+				children = Arrays.copyOf(children, i + 1);
+			}
+			children[i] = child;
+		}
 	}
 	
+	private static final Node<?>[] NO_CHILDREN = new Node<?>[0]; //shared children array of compact leaves
+	
 	/**
 	 * Construct a k-ary tree from the given array with the branching factor k.
 	 * @param arrayTree the given array that stores the tree in level order.
 	 * @param k the branching factor k.
 	 */
 	public KTree(E[] arrayTree, int k){
+		
+		this(arrayTree, k, false);
+	}
+	
+	/**
+	 * Construct a k-ary tree from the given array with the branching factor k.
+	 * In compact mode a null position of the array gets no node unless a value below it needs one,
+	 * and each children array only reaches up to the last child that exists. Trees with many null
+	 * placeholders take a fraction of the memory, and every operation behaves as in the default mode.
+	 * @param arrayTree the given array that stores the tree in level order.
+	 * @param k the branching factor k.
+	 * @param compact true to leave out the nodes of null positions.
+	 */
+	public KTree(E[] arrayTree, int k, boolean compact){
 				
 		if(k < 2){ //k can't be less than 2
 			throw new InvalidKException(); 
 		}
 		
-		this.numberOfNodes = arrayTree.length; //count number of nodes of a perfect tree
-		
 		this.kValue = k; //assign the branching factor k
-				
-		this.height = (int)Math.ceil(Math.log((kValue - 1) * numberOfNodes + 1) / Math.log(kValue)) - 1; //formula for the height of a perfect tree		
 		
-		this.root = this.addChildren(arrayTree, this.root, 0); //add each child to the tree
+		this.levelValues = new int[0];
+		long next = 1; //the first index of the next level
+		for(int i = 0, level = 0; i < arrayTree.length; i++){
+			if(i == next){
+				level++;
+				next = next * kValue + 1;
+			}
+			if(arrayTree[i] != null){
+				countValues(level, 1);
+			}
+		}
+		updateHeight(); //the height and number of nodes of a perfect tree
+		
+		this.compact = compact;
+		
+		if(compact){
+			this.placeholders = new BitSet(arrayTree.length);
+			this.root = (arrayTree.length > 0) ? this.addCompactChildren(arrayTree, 0) : null; //the root node is kept even when its value is null
+		}
+		else{
+			this.root = this.addChildren(arrayTree, this.root, 0); //add each child to the tree
+		}
 		
 	}
 	
@@ -93,6 +192,102 @@ public class KTree<E> implements TreeIterable<E> {
 		return root;
 	}
 	
+	/**
+	 * This method supports the constructor for creating a new compact k-ary tree.
+	 * @param arrayTree the given array that stores the tree in level order.
+	 * @param index the index associated with the node.
+	 * @return the new node, or null if neither the position nor anything below it has a value.
+	 */
+	private Node<E> addCompactChildren(E[] arrayTree, int index){
+		
+		Node<E> node = null;
+		
+		for(int j = kValue - 1; j >= 0; j--){ //the last child first, so the children array is allocated once
+			long childIndex = (long)kValue * index + j + 1;
+			if(childIndex >= arrayTree.length){
+				continue;
+			}
+			Node<E> child = addCompactChildren(arrayTree, (int)childIndex);
+			if(child != null){
+				if(node == null){
+					node = new Node<E>(arrayTree[index], index);
+				}
+				node.setChild(j, child);
+			}
+		}
+		
+		if(node == null){
+			if(arrayTree[index] == null && index != 0){
+				placeholders.set(index); //an empty position with nothing below it
+				return null;
+			}
+			node = new Node<E>(arrayTree[index], index);
+		}
+		
+		if(node.data != null){ //don't count the null nodes
+			numberOfElements++;
+		}
+		return node;
+	}
+	
+	/**
+	 * Return the index of a child position, the index of the null node the default mode would keep there.
+	 * @param parentIndex the index of the parent node.
+	 * @param c the position of the child, 0 to k - 1.
+	 * @return the index of the child, or -1 if it is past the last null node.
+	 */
+	private int placeholderIndex(int parentIndex, int c){
+		
+		long index = (long)kValue * parentIndex + c + 1;
+		return (index < placeholders.length()) ? (int)index : -1;
+	}
+	
+	/**
+	 * Forget the null nodes of a compact tree in a subtree that was replaced by set() or removed by prune().
+	 * @param index the index of the root of the subtree.
+	 */
+	private void clearPlaceholders(int index){
+		
+		for(long from = index, to = index; from < placeholders.length(); from = kValue * from + 1, to = kValue * to + kValue){
+			placeholders.clear((int)from, (int)Math.min(to + 1, placeholders.length())); //one level of the subtree at a time
+		}
+	}
+	
+	/**
+	 * Add values to the count of a level, growing the counts when the level is new.
+	 * @param level the level, 0 for the root.
+	 * @param n the number of values added, negative for values removed.
+	 */
+	private void countValues(int level, int n){
+		
+		if(level >= levelValues.length){
+			levelValues = Arrays.copyOf(levelValues, level + 1);
+		}
+		levelValues[level] += n;
+	}
+	
+	/**
+	 * Set the height to the deepest level that still has values, after values were added or removed.
+	 */
+	private void updateHeight(){
+		
+		int h = levelValues.length - 1;
+		while(h >= 0 && levelValues[h] == 0){
+			h--;
+		}
+		this.height = h;
+		this.numberOfNodes = (int)Math.min(firstIndex(h + 1), Integer.MAX_VALUE); //number of nodes of a perfect tree
+	}
+	
+	/**
+	 * Test if the tree leaves out the nodes of null positions.
+	 * @return true if the tree was constructed in compact mode.
+	 */
+	public boolean isCompact(){
+		
+		return compact;
+	}
+	
 	/**
 	 * Return the branching factor k of the tree
 	 * @return the branching factor k.
@@ -112,8 +307,9 @@ public class KTree<E> implements TreeIterable<E> {
 	}
 	
 	/**
-	 * Return the height of the k-ary tree.
-	 * @return the height of the k-ary tree.
+	 * Return the height of the k-ary tree, the deepest level that holds a value. The height grows and
+	 * shrinks with set(), prune() and graft(), and the exports and toString() only cover the levels up to it.
+	 * @return the height of the k-ary tree, -1 if it has no values.
 	 */
 	public int height(){
 		
@@ -121,1245 +317,6996 @@ public class KTree<E> implements TreeIterable<E> {
 	}
 	
 	/**
-	 * Accept a location index and return the value at that location in the tree.
-	 * @param i the level-order location index of the node if the tree was perfect.
-	 * @return the value at the location index.
-	 * @throws IllegalArgumentException if the location i is not a node in the tree.
+	 * Compute the shape statistics of the tree in one pass over its nodes.
+	 * Like the iterators, nodes below a node without a value are not counted.
+	 * @return the per-level occupancy, leaf depths and fill ratio of the tree.
 	 */
-	public E get(int i){
+	public KTreeStatistics statistics(){
 		
-		if(i < 0 || this.root == null){  //invalid index or the tree is empty
-			throw new IllegalArgumentException(); 
-		}
-		
-		Node<E> toReturn = findNode(root, i);
+		int[] levelOccupancy = new int[this.height() + 1];
+		int[] leafDepths = new int[this.height() + 1];
 		
-		if(toReturn == null || toReturn.data == null){ //i is not a node in the tree
-			throw new IllegalArgumentException("Invalid Index");
+		if(this.root != null && this.root.data != null){
+			collectStatistics(this.root, 0, levelOccupancy, leafDepths);
 		}
 		
-		return toReturn.data;
-		
+		return new KTreeStatistics(kValue, levelOccupancy, leafDepths);
 	}
 	
 	/**
-	 * This method supports the get(), set(), and subtree() methods.
-	 * @param root the root of the k-ary tree. 
-	 * @param i the level-order location index of the node if the tree was perfect.
-	 * @return the node at the specified location.
+	 * This method supports the statistics() method.
+	 * @param root the root of the subtree, it holds a value.
+	 * @param depth the level of the root.
+	 * @param levelOccupancy the number of values found on each level.
+	 * @param leafDepths the number of leaves found on each level.
 	 */
-	private Node<E> findNode(Node<E> root, int i){
-		
+	private void collectStatistics(Node<E> root, int depth, int[] levelOccupancy, int[] leafDepths){
 		
-		Node<E> toReturn = null;
+		levelOccupancy[depth]++;
 		
-		if(root.index == i){ //base case
-			return root;
+		boolean leaf = true;
+		for(int i = 0; i < kValue; i++){
+			if(root.child(i) != null && root.child(i).data != null){
+				leaf = false;
+				collectStatistics(root.child(i), depth + 1, levelOccupancy, leafDepths); //recursively counting each child
+			}
 		}
 		
-		if(root.children[0] != null){ 
-			toReturn = findNode(root.children[0], i); //recursively looking for the node
+		if(leaf){
+			leafDepths[depth]++;
 		}
+	}
+	
+	/**
+	 * Turn on operation metrics for this tree, creating a new KTreeMetrics if needed.
+	 * @return the metrics this tree records into.
+	 */
+	public KTreeMetrics enableMetrics(){
 		
-		for(int j = 1; j < kValue; j++){ 
-			if(toReturn == null && root.children[j] != null){
-				toReturn =  findNode(root.children[j], i); //recursively looking for the node
-			}
+		if(this.metrics == null){
+			this.metrics = new KTreeMetrics();
 		}
+		return this.metrics;
+	}
+	
+	/**
+	 * Set the metrics this tree records into, several trees may share one KTreeMetrics.
+	 * Passing null turns metrics off, after which no operation reads the clock or counts anything.
+	 * @param metrics the metrics to record into, or null to turn metrics off.
+	 */
+	public void setMetrics(KTreeMetrics metrics){
 		
-		return toReturn;
+		this.metrics = metrics;
 	}
 	
 	/**
-	 * Accept a location index and a value.
-	 * Attempt to set the node at location index to the value indicated.
-	 * Also can be used to remove leaves from the tree.
-	 * @param i the level-order location index of the node if the tree was perfect.
-	 * @param value the new value to set the location to (or null if attempting to remove a leaf).
-	 * @return true if the operation could be performed, false otherwise.
-	 * @throws InvalidTreeException if setting this location would make an invalid tree.
+	 * Return the metrics this tree records into.
+	 * @return the metrics of the tree, or null if metrics are turned off.
 	 */
-	public boolean set(int i, E value){
+	public KTreeMetrics getMetrics(){
 		
-		if(i < 0 || this.root == null){ //invalid index or the tree is empty
-			return false;
+		return this.metrics;
+	}
+	
+	/**
+	 * Attach a bounded decode cache to this tree, decode() then answers repeated messages from it.
+	 * The cache is cleared whenever the tree changes.
+	 * @param maxBytes the maximum estimated memory of the cached messages.
+	 * @return the new cache attached to the tree.
+	 */
+	public DecodeCache enableDecodeCache(long maxBytes){
+		
+		this.decodeCache = new DecodeCache(maxBytes);
+		return this.decodeCache;
+	}
+	
+	/**
+	 * Detach the decode cache from this tree.
+	 */
+	public void disableDecodeCache(){
+		
+		this.decodeCache = null;
+	}
+	
+	/**
+	 * Return the decode cache attached to this tree.
+	 * @return the decode cache, or null if caching is turned off.
+	 */
+	public DecodeCache getDecodeCache(){
+		
+		return this.decodeCache;
+	}
+	
+	/**
+	 * Notify the optional features of the tree that the tree has changed.
+	 * @param i the level-order location index that changed, or -1 if the whole tree may have changed.
+	 */
+	private void changed(int i){
+		
+		if(decodeCache != null){
+			decodeCache.clear();
 		}
-				
-		Node<E> toChange = findNode(root, i);
 		
-		//when value is null and node is not in the tree, or node has children
-		if(value == null){
-			if(toChange == null || toChange.data == null){ 
-				return false;
+		lookahead = null; //rebuilt by the next decodeLookahead()
+		compiledDecoder = null; //compiled again by the next decodeCompiled()
+		
+		if(hashes != null){
+			if(i < 0){
+				enableHashing(); //rehash everything
 			}
 			else{
-				for(int z = 0; z < kValue; z++){ //check to see if the node has children
-					if(toChange.children[z] != null){
-						if(toChange.children[z].data != null){
-							return false; 
-						}
-					}
-				}
-				toChange.data = null; //remove the node when the node doesn't have children
-				numberOfElements--;
-				return true;
+				rehashPath(i);
 			}
 		}
-		else if(value != null && toChange != null && toChange.data != null){ //when there is a node, value is not null
-				toChange.data = value;
-				return true;
-		}
-		else{  //when the value is not null, and there is no node at the i-th location
-			
-			for(int j = 1; j < kValue; j++){
-				Node<E> validParent = findNode(root, (i - j)/kValue); //check for valid parent
-				if(validParent != null){
-					if(validParent.data != null){
-						validParent.children[j] = new Node<E>(value, kValue, i);
-						numberOfElements++;
-						if(i >= numberOfNodes){ //check number of nodes of a perfect tree
-							height++; //increment the height base on the index
-							numberOfNodes = (int)(Math.pow(kValue, this.height() + 1) - 1) / (kValue - 1); //recount the number of nodes
-						}
-						return true;
-					}
-					else{
-						throw new InvalidTreeException(); //the location will make the tree invalid
-					}
-				}
+		
+		if(subtreeCounts != null){
+			if(i < 0){
+				enableSubtreeCounts(); //recount everything
 			}
-			return false;
-			//Note for the TA: this set() method is a nightmare!!! So glad I finished it! Please be easy on this method, thank you so much! :)
-		}	
+			else{
+				recountPath(i);
+			}
+		}
+		
+		version++;
 	}
 	
-	
 	/**
-	 * Return the copy of the tree stored in level order.
-	 * @return the copy of the tree stored in level order, return an empty array if there are no elements.
+	 * Return the number of changes made to the tree so far. A tree that returns the same version
+	 * twice has not changed in between.
+	 * @return the version of the tree.
 	 */
-	public Object[] toArray(){
+	public long getVersion(){
 		
-		int arraySize = (int)(Math.pow(kValue, this.height() + 1) - 1) / (kValue - 1); //formula for number of nodes of a perfect tree
+		return version;
+	}
+	
+	/**
+	 * Test if the tree has changed since getVersion() returned a version.
+	 * @param version an earlier version of the tree.
+	 * @return true if the tree has changed since then.
+	 */
+	public boolean hasChangedSince(long version){
 		
-		Object[] toReturn = new Object[arraySize];
+		return this.version != version;
+	}
+	
+	/**
+	 * Turn on subtree hashes with the default value hash, see VALUE_HASH.
+	 */
+	public void enableHashing(){
 		
-		addToArray(this.root, toReturn, 0); //add values in the nodes to the array representation
+		enableHashing(VALUE_HASH);
+	}
+	
+	/**
+	 * Turn on subtree hashes, which hash(), subtreeHash(), equals() and diff() then read in O(1).
+	 * Every set() afterwards updates the hashes on the path from the root to the changed node, and the
+	 * tree keeps one hash for every subtree that holds values.
+	 * The hashes are trusted: equals(), subtreeEquals() and diff() take two subtrees with the same hash
+	 * as equal without looking at their values, when both trees hash with the same value hasher.
+	 * A value hasher that spreads different values evenly over 64 bits makes two different subtrees hash alike
+	 * with a chance of about 2^-64, so an equality test goes wrong with a chance of about 2^-64, and a diff()
+	 * that compares n pairs of subtrees misses a change with a chance of at most about n / 2^64. Values that the hasher sends to the same hash are not told apart at all.
+	 * The hashes are not meant to resist values chosen to collide.
+	 * @param valueHasher the 64-bit hash of one value, equal values must get equal hashes.
+	 */
+	public void enableHashing(ToLongFunction<? super E> valueHasher){
 		
-		return toReturn;
+		this.valueHasher = Objects.requireNonNull(valueHasher);
+		this.hashes = new IndexHashes();
+		subtreeHash(root, kValue, valueHasher, (node, hash) -> hashes.put(node.index, hash));
 	}
 	
 	/**
-	 * This method supports the toArray() and mirror() methods.
-	 * @param root the root of the k-ary tree.
-	 * @param toReturn the copy of the tree stored in level order.
-	 * @param index the location index of each node.
+	 * Turn off subtree hashes and release them.
 	 */
-	private void addToArray(Node<E> root, Object[] toReturn, int index){
+	public void disableHashing(){
 		
-		if(root == null){ //base case
-			return;
-		}
+		this.hashes = null;
+		this.valueHasher = null;
+	}
+	
+	/**
+	 * Test if subtree hashes are turned on.
+	 * @return true if enableHashing() was called and disableHashing() was not called since.
+	 */
+	public boolean isHashing(){
 		
-		toReturn[index] = root.data;
+		return hashes != null;
+	}
+	
+	/**
+	 * Return a 64-bit hash of the values of the tree and their locations, made with the value hasher
+	 * given to enableHashing(), or VALUE_HASH when hashing is turned off.
+	 * Trees with equal values at equal locations have equal hashes, whatever their height or mode.
+	 * @return the hash, 0 for a tree without values.
+	 */
+	public long hash(){
 		
-		for(int i = 0, j = 1; i < kValue; i++, j++){
-			if(root.children[i] != null){
-				addToArray(root.children[i], toReturn, index * kValue + j); //using formula k * index + c-th child of the node
-			}
-		}
+		return subtreeHash(0);
 	}
 	
 	/**
-	 * Output the tree where each level is printed on its own line, each node is separated by a space.
-	 * @return the output of the tree where each level is printed on its own line.
+	 * Return a 64-bit hash of the subtree whose root is at a location index, equal to
+	 * the hash() of a tree that holds the same subtree at its root.
+	 * @param i the level-order location index of the root of the subtree.
+	 * @return the hash, 0 for a subtree without values.
+	 * @throws IllegalArgumentException if i is negative.
 	 */
-	public String toString(){
+	public long subtreeHash(int i){
 		
-		StringBuilder s = new StringBuilder();
+		checkIndex(i);
 		
-		for(int i = 1; i <= this.height() + 1; i++){
-			printLevel(s, this.root, i); //print each level, start with level 1 of the tree
-			s.append("\n");
+		if(hashes != null){
+			return hashes.get(i); //kept up to date by set()
 		}
 		
-		return s.toString();
+		return (root == null) ? 0 : subtreeHash(locate(i), kValue, VALUE_HASH, null);
 	}
 	
 	/**
-	 * This method supports the toString() method.
-	 * @param s the StringBuilder for building a string representation of the tree.
-	 * @param root the root of the k-ary tree.
-	 * @param level each level of the tree.
+	 * Test if the subtree at a location index holds the same values as another tree.
+	 * With hashing turned on for both trees with the same value hasher this compares their 64-bit hashes
+	 * in O(1), see enableHashing() for the chance of a collision. Otherwise the values are compared in O(n).
+	 * @param i the level-order location index of the root of the subtree.
+	 * @param other the other tree.
+	 * @return true if the trees have the same k and the subtree holds the same values at the same places as other.
+	 * @throws IllegalArgumentException if i is negative.
 	 */
-	private void printLevel(StringBuilder s, Node<E> root, int level){
-						
-		if(root == null){ //base case
-			return;
-		}
+	public boolean subtreeEquals(int i, KTree<?> other){
 		
-		if(level == 1){
-			s.append(root.data); //append values in the nodes to the StringBuilder s
-			s.append(" ");
+		checkIndex(i);
+		
+		if(kValue != other.kValue){
+			return false;
 		}
-		else if(level > 1){
-			for(int i = 0; i < kValue; i++){
-				printLevel(s, root.children[i], level - 1); //recursively printing values on each level
-			}
-		}		
+		if(sameHashes(other)){
+			return subtreeHash(i) == other.hash();
+		}
+		return sameValues((root == null) ? null : locate(i), other.root, kValue);
 	}
 	
 	/**
-	 * The DynamicArray implements an array whose capacity can grow and shrink.
-	 * @param <E> the type of the value in the DynamicArray.
+	 * Test if another tree has the same k and equal values at the same locations.
+	 * With hashing turned on for both trees with the same value hasher this compares their 64-bit hashes
+	 * in O(1), see enableHashing() for the chance of a collision. Otherwise the values are compared in O(n).
+	 * @param o the other object.
+	 * @return true if o is a KTree with the same k and the same values at the same locations.
 	 */
-	private static class DynamicArray<E>{
+	public boolean equals(Object o){
 		
-		private static final int INITCAP = 2;	// default initial capacity / minimum capacity
-		private E[] storage;	// underlying array
-		private int numOfElements; //number of elements in the array
-
-		@SuppressWarnings("unchecked")
-		/**
-		 * Constructs an empty Dynamic Array.
-		 */
-		public DynamicArray(){
-			numOfElements = 0;
-			storage = (E[]) new Object[INITCAP];
+		if(o == this){
+			return true;
+		}
+		if(!(o instanceof KTree)){
+			return false;
 		}
 		
-		/**
-		 * Returns the number of elements in the list.
-		 * @return the number of elements in the list.
-		 */
-		public int size() {	  
-			
-			return numOfElements;
-		}
-			
-		/**
-		 * Reports the max number of elements before the next expansion.
-		 * @return the max number of elements the list can hold.
-		 */
-		public int capacity() { 
-
-			return storage.length;
-		}
-		
-		public boolean add(E value){
-			
-			if(size() == capacity()){
-				this.increaseCapacity(); //doubles the capacity
-			}
-			
-				storage[size()] = value; //place new value into the highest possible index
-				numOfElements++;
-				return true;
+		KTree<?> other = (KTree<?>)o;
+		if(kValue != other.kValue){
+			return false;
 		}
-		
-		@SuppressWarnings("unchecked")
-		/**
-		 * Removes the item at position index, shifts items to remove any gap in the list.
-		 * Halves the capacity if the number of elements falls below 1/3 of the capacity.
-		 * Makes sure the capacity doesn't go below INITCAP.
-		 * @param index the index of the object.
-		 * @return the old item removed from the list.
-		 * @throws IndexOutOfBoundsException if index is out of range.
-		 */
-		public E remove(int index){
-
-			if(index >= size() || index < 0){
-				throw new IndexOutOfBoundsException(this.toString());
-			}
-			else{
-				E old = storage[index];
-				for(int i = index; i < size() - 1; i++){
-						storage[i] = storage[i + 1]; //shifting the elements					
-				}
-				
-				numOfElements--;
-							
-				//size is below 1/3 of capacity and capacity is not below INITCAP
-				if((size() < (double)capacity() / 3) && (capacity()/2 >= INITCAP)){ 
-					E[] newStorage = (E[]) new Object[capacity() / 2]; //halve the capacity
-					
-					for(int i = 0; i < size(); i++){
-						newStorage[i] = storage[i]; //copy each item from old storage to new storage
-					}
-					storage = newStorage;
-				}
-				
-				return old; //return old element
-			}
-		}  
-		
-		@SuppressWarnings("unchecked")
-		/**
-		 * Doubles the capacity if no space is available.
-		 */
-		private void increaseCapacity(){
-			E[] newStorage = (E[]) new Object[capacity() * 2]; //double the capacity of the array;
-			
-			for(int i = 0; i < size(); i++){
-				newStorage[i] = storage[i]; //copy each item from old storage to new storage
-			}
-			storage = newStorage;
+		if(sameHashes(other)){
+			return hash() == other.hash();
 		}
-
+		return sameValues(root, other.root, kValue);
 	}
 	
 	/**
-	 * Return an iterator that walks through the tree in level order.
-	 * @return an iterator that walks through the tree in level order.
+	 * This method supports the equals() and subtreeEquals() methods.
+	 * @param other the other tree.
+	 * @return true if both trees keep hashes made with the same value hasher.
 	 */
-	public Iterator<E> getLevelOrderIterator(){
+	private boolean sameHashes(KTree<?> other){
 		
-		return new LevelOrderIterator();
+		return hashes != null && other.hashes != null && valueHasher == other.valueHasher;
 	}
 	
 	/**
-	 * This is the implementation of the LevelOrderIterator.
+	 * Return a hash code consistent with equals(), taken from the hash() made with VALUE_HASH.
+	 * It takes O(1) with hashing turned on with VALUE_HASH, and O(n) otherwise.
+	 * @return the hash code.
 	 */
-	private class LevelOrderIterator implements Iterator<E>{
+	public int hashCode(){
 		
-		private final DynamicArray<Node<E>> list;
+		long hash = (hashes == null || valueHasher == VALUE_HASH) ? hash() : subtreeHash(root, kValue, VALUE_HASH, null);
+		return (int)(hash ^ (hash >>> 32));
+	}
+	
+	/**
+	 * This method supports the equals() and subtreeEquals() methods.
+	 * @param x the node of one tree, or null.
+	 * @param y the node at the same location of the other tree, or null.
+	 * @param k the branching factor k.
+	 * @return true if the subtrees hold equal values at the same locations.
+	 */
+	private static boolean sameValues(Node<?> x, Node<?> y, int k){
 		
-		/**
-		 * Construct a new LevelOrderIterator.
-		 */
-		public LevelOrderIterator(){
-			list = new DynamicArray<>();
-			list.add(root); //add the root of the tree to the queue
+		if(x == null && y == null){ //base case
+			return true;
 		}
 		
-		/**
-		 * Test if there are more items in the tree.
-		 * @return true if there are more items in the tree.
-		 */
-		public boolean hasNext(){
-			
-			return !(list.size() == 0);
+		if(!Objects.equals((x == null) ? null : x.data, (y == null) ? null : y.data)){
+			return false;
 		}
 		
-		/**
-		 * Obtain the next item in the tree.
-		 * @return the next item in the tree, return null if no more items in the tree.
-		 */
-		public E next(){
-			
-			if(!hasNext()){
-				return null;
-			}
-							
-			Node<E> nextNode = list.remove(0); //get the front of the queue
-			
-			for(int i = 0; i < kValue; i++){
-				if(nextNode.children[i] != null){
-					if(nextNode.children[i].data != null){ //don't add null nodes to the queue
-						list.add(nextNode.children[i]);
-					}
-				}
+		for(int i = 0; i < k; i++){
+			if(!sameValues((x == null) ? null : x.child(i), (y == null) ? null : y.child(i), k)){
+				return false;
 			}
-			return nextNode.data;
-		}		
+		}
+		return true;
 	}
 	
 	/**
-	 * Return the string representation of the level order walk.
-	 * @return the string representation of the level order walk.
+	 * This method supports the changed() method, it updates the hashes from a changed node up to the root.
+	 * @param i the level-order location index that changed.
 	 */
-	public String toStringLevelOrder(){
+	private void rehashPath(int i){
 		
-		StringBuilder s = new StringBuilder();
-		
-		Iterator<E> itr = this.getLevelOrderIterator();
+		int[] indices = ancestors(i);
+		Node<E>[] path = nodesOn(indices);
 		
-		while(itr.hasNext()){
-			s.append(itr.next()); //append values in nodes in the queue to the StringBuilder s
-			s.append(" ");
+		for(int t = indices.length - 1; t >= 0; t--){ //from the node up to the root
+			int j = indices[t];
+			long hash = valueHash(path[t].data, valueHasher);
+			for(int c = 0; c < kValue; c++){
+				long child = (path[t].child(c) == null) ? 0 : hashes.get(kValue * j + c + 1); //children in order
+				hash = hash * 0x9E3779B97F4A7C15L + child;
+			}
+			hash = mix(hash);
+			if(hash == 0){
+				hashes.remove(j);
+			}
+			else{
+				hashes.put(j, hash);
+			}
 		}
-		
-		return s.toString();
 	}
 	
 	/**
-	 * The implementation of a Node.
-	 * @author Professors
-	 * @param <E> the type of the value of Node.
+	 * Map the location index of every subtree with values to its hash. The indices and hashes are kept in
+	 * two primitive arrays with open addressing, instead of a boxed Integer, a boxed Long and an entry per subtree.
+	 * A subtree hash is never 0, so 0 marks an empty slot.
 	 */
-	private static class StackNode<E> {
-		private E value;
-		private StackNode<E> next;
-		private StackNode<E> prev;
+	private static final class IndexHashes{
+		private int[] keys; //location indices
+		private long[] values; //subtree hashes, 0 for an empty slot
+		private int size; //number of hashes kept
 		
 		/**
-		 * Create a new node with the specified value.
-		 * @param value the specified value.
+		 * Create an empty map.
 		 */
-		public StackNode(E value) {
-			this.value = value;
+		private IndexHashes(){
+			keys = new int[16];
+			values = new long[16];
 		}
 		
 		/**
-		 * Return the value stored this node.
-		 * @return the value stored this node.
+		 * Return the slot a location index is looked for first.
+		 * @param index the location index.
+		 * @return the first slot to probe.
 		 */
-		public E getValue() {
-			return value;
+		private int home(int index){
+			int h = index * 0x9E3779B9; //spread the indices of one level
+			return (h ^ (h >>> 16)) & (keys.length - 1);
 		}
 		
 		/**
-		 * Set the value stored in this node.
-		 * @param value the (new) value of this node.
+		 * Return the slot of a location index.
+		 * @param index the location index.
+		 * @return the slot holding the index, or the empty slot where it would go.
 		 */
-		public void setValue(E value) {
-			this.value = value;
+		private int find(int index){
+			int mask = keys.length - 1;
+			int s = home(index);
+			while(values[s] != 0 && keys[s] != index){
+				s = (s + 1) & mask;
+			}
+			return s;
 		}
 		
 		/**
-		 * Return the next node after this node.
-		 * @return the node after this node.
+		 * Return the hash of the subtree at a location index.
+		 * @param index the location index.
+		 * @return the hash, 0 if the subtree has no values.
 		 */
-		public StackNode<E> getNext() {
-			return this.next;
+		public long get(int index){
+			return values[find(index)];
 		}
 		
 		/**
-		 * Set the next node after this node.
-		 * @param next the (new) next node after this node.
+		 * Keep the hash of the subtree at a location index.
+		 * @param index the location index.
+		 * @param hash the hash, not 0.
 		 */
-		public void setNext(StackNode<E> next) {
-			this.next = next;
+		public void put(int index, long hash){
+			int s = find(index);
+			if(values[s] == 0){
+				keys[s] = index;
+				size++;
+			}
+			values[s] = hash;
+			if(2 * size > keys.length){ //keep probes short
+				grow();
+			}
 		}
 		
 		/**
-		 * Return the previous node before this node.
-		 * @return the node before this node.
+		 * Forget the hash of the subtree at a location index, moving later entries of its probe run back.
+		 * @param index the location index.
 		 */
-		public StackNode<E> getPrev() {
-			return this.prev;
+		public void remove(int index){
+			int mask = keys.length - 1;
+			int s = find(index);
+			if(values[s] == 0){
+				return;
+			}
+			values[s] = 0;
+			size--;
+			for(int n = (s + 1) & mask; values[n] != 0; n = (n + 1) & mask){
+				if(((n - home(keys[n])) & mask) >= ((n - s) & mask)){ //the entry may move back to the gap
+					keys[s] = keys[n];
+					values[s] = values[n];
+					values[n] = 0;
+					s = n;
+				}
+			}
 		}
 		
 		/**
-		 * Set the previous node before this node.
-		 * @param previous the previous node before this node.
+		 * This method supports the put() method, it doubles the slots.
 		 */
-		public void setPrev(StackNode<E> prev) {
-			this.prev = prev;
+		private void grow(){
+			int[] oldKeys = keys;
+			long[] oldValues = values;
+			keys = new int[2 * oldKeys.length];
+			values = new long[2 * oldValues.length];
+			for(int s = 0; s < oldKeys.length; s++){
+				if(oldValues[s] != 0){
+					int t = find(oldKeys[s]);
+					keys[t] = oldKeys[s];
+					values[t] = oldValues[s];
+				}
+			}
 		}
+	}
+	
+	/**
+	 * Return the location indices from the root down to a location index.
+	 * @param i the level-order location index.
+	 * @return indices[t] is the ancestor of i on level t, the last one is i.
+	 */
+	private int[] ancestors(int i){
 		
+		int[] indices = new int[depth(i) + 1];
+		for(int t = indices.length - 1, j = i; t >= 0; t--, j = (j - 1) / kValue){
+			indices[t] = j;
+		}
+		return indices;
 	}
 	
 	/**
-	 * Linked list implementation of the stack.
-	 * @param <E> the type of the value in the ProgramStack.
+	 * Return the nodes at a path of location indices from the root, the path must exist.
+	 * @param indices the location indices from the root down, see ancestors().
+	 * @return the node at each index.
 	 */
-	private static class ProgramStack<E>{
+	@SuppressWarnings("unchecked")
+	private Node<E>[] nodesOn(int[] indices){
 		
-		private StackNode<E> top;
-		private int size;	
+		Node<E>[] path = (Node<E>[])new Node<?>[indices.length];
+		path[0] = root;
+		for(int t = 1; t < indices.length; t++){
+			path[t] = path[t - 1].child((indices[t] - 1) % kValue); //set() has just made the whole path
+		}
+		return path;
+	}
+	
+	/**
+	 * Turn on the reverse index with room for 16 distinct values and int sets filled up to half, see enableReverseIndex(int, float).
+	 */
+	public void enableReverseIndex(){
 		
-		/**
-		 * Construct an empty stack.
-		 */
-		public ProgramStack() {
+		enableReverseIndex(16, 0.5f);
+	}
+	
+	/**
+	 * Turn on the reverse index from each value to the level-order locations that hold it, which contains(),
+	 * indexOf() and indicesOf() then read in O(1) expected time. set(), prune() and graft() keep it up to date.
+	 * A value held at one location costs a HashMap entry and a boxed index, about 56 bytes. A value held at more
+	 * than one location keeps them in a primitive int hash set instead, about 4 / loadFactor bytes per location.
+	 * @param initialCapacity the number of distinct values to size the index for.
+	 * @param loadFactor how full the int sets get before they grow, lower is faster and takes more memory.
+	 * @throws IllegalArgumentException if initialCapacity is negative or loadFactor is not between 0 and 1.
+	 */
+	public void enableReverseIndex(int initialCapacity, float loadFactor){
 		
-			top = null;
-			size = 0;
+		if(initialCapacity < 0 || !(loadFactor > 0 && loadFactor < 1)){
+			throw new IllegalArgumentException();
 		}
 		
-		/**
-		 * Insert a new item onto the stack.
-		 * @param item the item to insert.
-		 */
-		public void push(E item) {
-			
-			StackNode<E> newNode = new StackNode<E>(item); //create a new node with the item
-			
-			//link the nodes
-			newNode.setNext(top);
-			if(size() != 0){
-				top.setPrev(newNode);
+		this.positionsLoadFactor = loadFactor;
+		this.positions = new HashMap<>(initialCapacity);
+		exportLevels(0, this.height(), (value, index) -> addPosition(value, index));
+	}
+	
+	/**
+	 * Turn off the reverse index and release it.
+	 */
+	public void disableReverseIndex(){
+		
+		this.positions = null;
+	}
+	
+	/**
+	 * Test if the reverse index is turned on.
+	 * @return true if enableReverseIndex() was called and disableReverseIndex() was not called since.
+	 */
+	public boolean isReverseIndexed(){
+		
+		return positions != null;
+	}
+	
+	/**
+	 * Test if a value is somewhere in the tree, in O(1) expected time with the reverse index turned on
+	 * and with a walk over the tree otherwise.
+	 * @param value the value to look for, compared with equals().
+	 * @return true if a location holds the value.
+	 */
+	public boolean contains(E value){
+		
+		return indexOf(value) >= 0;
+	}
+	
+	/**
+	 * Return the first location in level order that holds a value, in O(1) expected time with the reverse
+	 * index turned on and with a walk over the tree otherwise.
+	 * @param value the value to look for, compared with equals().
+	 * @return the smallest level-order location index holding the value, or -1 if there is none.
+	 */
+	public int indexOf(E value){
+		
+		if(value == null){
+			return -1;
+		}
+		
+		if(positions != null){
+			Object found = positions.get(value);
+			if(found == null){
+				return -1;
 			}
-			
-			top = newNode; //set the newNode to be the top
-			size++;
+			return (found instanceof Integer) ? (Integer)found : ((IndexSet)found).min();
 		}
 		
-		/**
-		 * Remove the most recently inserted item from the stack.
-		 * @return the removed item.
-		 * @return null if the stack is empty.
-		 */
-		public E pop() {
-			
-			if(isEmpty()){ //check if the stack is empty
-				return null;
+		int[] first = { -1 };
+		exportLevels(0, this.height(), (v, index) -> {
+			if(first[0] < 0 && value.equals(v)){
+				first[0] = index;
 			}
-			else{
-				E toReturn = top.getValue(); 
-				top = top.getNext(); //set top to be the next item
-				size--;
-				if(size != 0){
-					top.setPrev(null);
-				}
-				return toReturn; //return the old value
-			}
-			
-		}
-		/**
-		 * Get the most recently inserted item in the stack.
-		 * Do not remove the item from the stack.
-		 * @return the most recently inserted item in the stack.
-		 * @return null if the stack is empty.
-		 */
-		public E peek() {
-			
-			if(isEmpty()){ //check if the stack is empty
-				return null;
-			}
-			else{
-				return top.getValue();
-			}
-		}
+		});
+		return first[0];
+	}
+	
+	/**
+	 * Return every location that holds a value, in O(1) expected time per location with the reverse
+	 * index turned on and with a walk over the tree otherwise.
+	 * @param value the value to look for, compared with equals().
+	 * @return the level-order location indices holding the value in ascending order, empty if there are none.
+	 */
+	public int[] indicesOf(E value){
 		
-		/**
-		 * Return the number of items in the stack.
-		 * @return the size of the stack.
-		 */
-		public int size() {
-			
-			return size;
+		if(value == null){
+			return new int[0];
 		}
 		
-		/**
-		 * Check if the stack is logically empty.
-		 * @return true if empty, false otherwise.
-		 */
-		public boolean isEmpty() {
-			
-			if(size() == 0){ //if the stack is empty
-				return true;
+		if(positions != null){
+			Object found = positions.get(value);
+			if(found == null){
+				return new int[0];
 			}
-			else{
-				return false;
+			return (found instanceof Integer) ? new int[]{ (Integer)found } : ((IndexSet)found).toSortedArray();
+		}
+		
+		IndexSet found = new IndexSet(0.5f);
+		exportLevels(0, this.height(), (v, index) -> {
+			if(value.equals(v)){
+				found.add(index);
 			}
-		}	
+		});
+		return found.toSortedArray();
 	}
+	
+	/**
+	 * Add a location of a value to the reverse index.
+	 * @param value the value.
+	 * @param i the level-order location index that now holds the value.
+	 */
+	private void addPosition(E value, int i){
 		
+		Object found = positions.get(value);
+		if(found == null){
+			positions.put(value, i); //a value held once needs no set
+		}
+		else if(found instanceof Integer){
+			IndexSet set = new IndexSet(positionsLoadFactor);
+			set.add((Integer)found);
+			set.add(i);
+			positions.put(value, set);
+		}
+		else{
+			((IndexSet)found).add(i);
+		}
+	}
 	
 	/**
-	 * Return an iterator that walks through the tree using pre-order walk.
-	 * @return an iterator that walks through the tree using pre-order walk.
+	 * Remove a location of a value from the reverse index.
+	 * @param value the value.
+	 * @param i the level-order location index that no longer holds the value.
 	 */
-	public Iterator<E> getPreOrderIterator(){
+	private void removePosition(E value, int i){
 		
-		return new PreOrderIterator();
+		Object found = positions.get(value);
+		if(found instanceof Integer){
+			if((Integer)found == i){
+				positions.remove(value);
+			}
+		}
+		else if(found != null){
+			IndexSet set = (IndexSet)found;
+			set.remove(i);
+			if(set.size() == 1){
+				positions.put(value, set.min()); //back to a single boxed index
+			}
+		}
 	}
 	
 	/**
-	 * This is the implementation of the PreOrderIterator.
+	 * A set of level-order location indices in an open addressing hash table of ints with linear probing,
+	 * used by the reverse index for values held at more than one location.
 	 */
-	private class PreOrderIterator implements Iterator<E>{
+	private static class IndexSet{
+		private int[] slots; //the indices, -1 for an empty slot
+		private int size; //number of indices in the set
+		private int min; //the smallest index, -1 when it has to be searched for again
+		private final float loadFactor; //how full the table gets before it grows
 		
-		private final ProgramStack<Node<E>> stack;
+		/**
+		 * Create an empty set.
+		 * @param loadFactor how full the table gets before it grows, between 0 and 1.
+		 */
+		public IndexSet(float loadFactor){
+			this.loadFactor = loadFactor;
+			this.slots = new int[4];
+			this.min = -1;
+			Arrays.fill(slots, -1);
+		}
 		
 		/**
-		 * Construct a new PreOrderIterator.
+		 * Return the number of indices in the set.
+		 * @return the number of indices.
 		 */
-		public PreOrderIterator(){
-			stack = new ProgramStack<>();
-			stack.push(root); //push the root of the tree to the stack
+		public int size(){
+			return size;
 		}
 		
 		/**
-		 * Test if there are more items in the tree.
-		 * @return true if there are more items in the tree.
+		 * Return the slot an index is looked for first.
+		 * @param i the index.
+		 * @return the home slot of the index.
 		 */
-		public boolean hasNext(){
-			
-			return !stack.isEmpty();
+		private int home(int i){
+			int h = i * 0x9E3779B9; //spread consecutive indices over the table
+			return (h ^ (h >>> 16)) & (slots.length - 1);
 		}
 		
 		/**
-		 * Obtain the next item in the tree.
-		 * @return the next item in the tree, return null if no more items in the tree.
+		 * Add an index to the set.
+		 * @param i the index, not negative.
+		 * @return true if the index was not in the set already.
 		 */
-		public E next(){
-			
-			if(!hasNext()){
-				return null;
+		public boolean add(int i){
+			if(size + 1 > slots.length * loadFactor){
+				grow();
 			}
-							
-			Node<E> nextNode = stack.pop();
-			
-			for(int i = kValue - 1; i >= 0; i--){
-				if(nextNode.children[i] != null){
-					if(nextNode.children[i].data != null){ //don't push null node to the stack
-						stack.push(nextNode.children[i]);
-					}
+			int s = home(i);
+			while(slots[s] != -1){
+				if(slots[s] == i){
+					return false;
 				}
-			}	
-			return nextNode.data;
+				s = (s + 1) & (slots.length - 1);
+			}
+			slots[s] = i;
+			size++;
+			if(size == 1 || (min >= 0 && i < min)){
+				min = i;
+			}
+			return true;
 		}
-	}
-	
-	/**
-	 * Return the string representation of the pre-order walk.
-	 * @return the string representation of the pre-order walk.
-	 */
-	public String toStringPreOrder(){
-		
-		StringBuilder s = new StringBuilder();
 		
-		Iterator<E> itr = this.getPreOrderIterator(); 
-		
-		while(itr.hasNext()){
-			s.append(itr.next()); //append values in nodes on the stack to StringBuilder s
-			s.append(" ");
+		/**
+		 * Remove an index from the set, moving the indices after it back so no tombstone is left.
+		 * @param i the index.
+		 * @return true if the index was in the set.
+		 */
+		public boolean remove(int i){
+			int mask = slots.length - 1;
+			int hole = home(i);
+			while(slots[hole] != i){
+				if(slots[hole] == -1){
+					return false;
+				}
+				hole = (hole + 1) & mask;
+			}
+			for(int s = (hole + 1) & mask; slots[s] != -1; s = (s + 1) & mask){
+				if(((s - home(slots[s])) & mask) >= ((s - hole) & mask)){ //the index may move back into the hole
+					slots[hole] = slots[s];
+					hole = s;
+				}
+			}
+			slots[hole] = -1;
+			size--;
+			if(i == min){
+				min = -1;
+			}
+			return true;
 		}
 		
-		return s.toString();
-	}
-	
-	/**
-	 * Return an iterator that walks through the tree using post-order walk.
-	 * @return an iterator that walks through the tree using post-order walk.
-	 */
-	public Iterator<E> getPostOrderIterator(){
-		
-		return new PostOrderIterator();
-	}
-	
-	/**
-	 * This is the implementation of the PostOrderIterator.
-	 */
-	private class PostOrderIterator implements Iterator<E>{
-		
-		private final ProgramStack<Node<E>> stack1;
-		private final ProgramStack<Node<E>> stack2;
-		
 		/**
-		 * Construct a new PostOrderIterator.
+		 * Return the smallest index, searching the table again only after the smallest one was removed.
+		 * @return the smallest index, or -1 if the set is empty.
 		 */
-		public PostOrderIterator(){
-			stack1 = new ProgramStack<>();
-			stack2 = new ProgramStack<>();
-			stack1.push(root); //push the root of the tree to stack1
+		public int min(){
+			if(min < 0 && size > 0){
+				min = Integer.MAX_VALUE;
+				for(int slot : slots){
+					if(slot != -1 && slot < min){
+						min = slot;
+					}
+				}
+			}
+			return min;
 		}
 		
 		/**
-		 * Test if there are more items in the tree.
-		 * @return true if there are more items in the tree.
+		 * Return the indices in ascending order.
+		 * @return a new array of the indices.
 		 */
-		public boolean hasNext(){
-			
-			return !stack1.isEmpty();
+		public int[] toSortedArray(){
+			int[] toReturn = new int[size];
+			int n = 0;
+			for(int slot : slots){
+				if(slot != -1){
+					toReturn[n++] = slot;
+				}
+			}
+			Arrays.sort(toReturn);
+			return toReturn;
 		}
 		
 		/**
-		 * Obtain the next item in the tree.
-		 * @return the next item in the tree, return null if no more items in the tree.
+		 * Double the table and put every index back in.
 		 */
-		public E next(){
-			
-			if(root == null){
-				return null;
-			}
-			
-			while(hasNext()){
-				
-				Node<E> nextNode = stack1.pop();
-				stack2.push(nextNode);
-				
-				for(int i = 0; i < kValue; i++){
-					if(nextNode.children[i] != null){
-						if(nextNode.children[i].data != null){ //don't push null nodes to the stack1
-							stack1.push(nextNode.children[i]);
-						}
+		private void grow(){
+			int[] old = slots;
+			slots = new int[old.length * 2];
+			Arrays.fill(slots, -1);
+			for(int slot : old){
+				if(slot != -1){
+					int s = home(slot);
+					while(slots[s] != -1){
+						s = (s + 1) & (slots.length - 1);
 					}
+					slots[s] = slot;
 				}
 			}
-			
-			Node<E> toReturn = stack2.pop();
-				
-			return toReturn.data;
 		}
 	}
 	
 	/**
-	 * Return the string representation of the post-order walk.
-	 * @return the string representation of the post-order walk.
+	 * Accept a location index and return the value at that location in the tree.
+	 * @param i the level-order location index of the node if the tree was perfect.
+	 * @return the value at the location index.
+	 * @throws IllegalArgumentException if the location i is not a node in the tree.
 	 */
-	public String toStringPostOrder(){
+	public E get(int i){
 		
-		StringBuilder s = new StringBuilder();
+		if(i < 0 || this.root == null){  //invalid index or the tree is empty
+			throw new IllegalArgumentException(); 
+		}
 		
-		Iterator<E> itr = this.getPostOrderIterator();
+		long start = (metrics == null) ? 0 : System.nanoTime();
 		
-		for(int i = 0; i < this.size(); i++){
-			s.append(itr.next()); //append values in nodes in stack2 to the the StringBuilder s
-			s.append(" ");
+		Node<E> toReturn = locate(i);
+		
+		if(toReturn == null || toReturn.data == null){ //i is not a node in the tree
+			throw new IllegalArgumentException("Invalid Index");
 		}
 		
-		return s.toString();
+		if(metrics != null){
+			metrics.recordOperation(KTreeMetrics.Operation.GET, System.nanoTime() - start);
+		}
+		
+		return toReturn.data;
+		
 	}
 	
 	/**
-	 * Receive a decoding tree and an encoded string, then decode the string to get the secret message.
-	 * The value of the leaves will be used to decode the string, the values at internal nodes are ignored.
-	 * @param tree the decoding tree.
-	 * @param codedMessage the encoded string with the secret message.
-	 * @return the decoded string with the secret message.
+	 * This method supports the get(), set(), and subtree() methods, it walks down from the root
+	 * following the base k digits of the location index.
+	 * @param root the root of the k-ary tree. 
+	 * @param i the level-order location index of the node if the tree was perfect.
+	 * @param visited counts the visited nodes when it is not null.
+	 * @return the node at the specified location.
 	 */
-	public static String decode(KTree<String> tree, String codedMessage){
-				
-		if(tree.root == null){ //check null root
-			return null;
-		}
-		
-		Node<String> current = tree.root;
-				
-		StringBuilder decodedMessage = new StringBuilder();
+	private Node<E> findNode(Node<E> root, int i, int[] visited){
 		
-		char character = '\0';
-		int number = 0;
+		int depth = depth(i);
+		long offset = i - firstIndex(depth); //place of i on its level
+		long block = 1; //number of places on the level below each node of the next level down
+		for(int t = 1; t < depth; t++){
+			block *= kValue;
+		}
 		
-		for(int i = 0; i < codedMessage.length(); i++){ //loop based on the length of the codedMessage
-			
-			character = codedMessage.charAt(i); //get each instruction
-			number = Character.getNumericValue(character);
-			
-			switch(number){
-				case 0:
-					current = getEachLetter(current, decodedMessage, tree.root, 0);
-					break;
-				case 1:
-					current = getEachLetter(current, decodedMessage, tree.root, 1);
-					break;
-				case 2:
-					current = getEachLetter(current, decodedMessage, tree.root, 2);
-					break;
-				case 3:
-					current = getEachLetter(current, decodedMessage, tree.root, 3);
-					break;
-				case 4:
-					current = getEachLetter(current, decodedMessage, tree.root, 4);
-					break;
-				case 5:
-					current = getEachLetter(current, decodedMessage, tree.root, 5);
-					break;
-				case 6:
-					current = getEachLetter(current, decodedMessage, tree.root, 6);
-					break;
-				case 7:
-					current = getEachLetter(current, decodedMessage, tree.root, 7);
-					break;
-				case 8:
-					current = getEachLetter(current, decodedMessage, tree.root, 8);
-					break;
-				case 9:
-					current = getEachLetter(current, decodedMessage, tree.root, 9);
-					break;
+		Node<E> current = root;
+		for(int t = 0; t < depth && current != null; t++, block /= kValue){
+			if(visited != null){
+				visited[0]++;
 			}
+			current = current.child((int)(offset / block % kValue)); //the digit of i for this level
 		}
 		
-		return decodedMessage.toString();
+		if(visited != null && current != null){
+			visited[0]++;
+		}
+		return current;
 	}
 	
 	/**
-	 * This method supports the decode() method.
-	 * @param current the current node during the decoding period.
-	 * @param decodedMessage the decoded string with the secret message.
-	 * @param root the root of the tree.
-	 * @param number the instruction.
-	 * @return the current node during the decoding period, reset back to root if encounters a leaf.
+	 * Find the node at a location index, counting the visited nodes when metrics are turned on.
+	 * @param i the level-order location index of the node if the tree was perfect.
+	 * @return the node at the specified location, or null if there is none.
 	 */
-	private static Node<String> getEachLetter(Node<String> current, StringBuilder decodedMessage, Node<String> root, int number){
-						
-		if(current.children[number] == null || current.children[number].data == null){
-			current = root; //reset back to the root if the instruction is wrong
-		}
-		else{
-			
-			int k = root.children.length; //get non-static kValue
-						
-			current = current.children[number];
-			for(int i = 0; i < k; i++){ //check to see if the current node is a leaf
-				if(current.children[i] != null){
-					if(current.children[i].data != null){
-						return current; //return the current node if it is not a leaf
-					}
-				}
-			}
-			decodedMessage.append(current.data); //append the value to the decodedMessage if the node is a leaf
-			current = root; //reset back to the root
+	private Node<E> locate(int i){
+		
+		if(metrics == null){
+			return findNode(root, i, null);
 		}
-		return current;
+		
+		int[] visited = new int[1];
+		Node<E> toReturn = findNode(root, i, visited);
+		metrics.recordFindNode(i, visited[0]);
+		return toReturn;
 	}
 	
 	/**
-	 * Return an array representation of a subtree where the location index is the root.
-	 * @param i the level-order location index of the node if the tree was perfect.
-	 * @return an array representation of a subtree.
+	 * Return the location index of the parent of a location index.
+	 * Like the other index queries this is arithmetic on the level-order indices, the nodes do not have to be in the tree.
+	 * @param i the level-order location index.
+	 * @return the index of the parent, -1 for the root.
+	 * @throws IllegalArgumentException if i is negative.
 	 */
-	@SuppressWarnings("unchecked")
-	public E[] subtree(int i){
+	public int parent(int i){
 		
-		if(i < 0){ //check for valid index
-			return null;
+		checkIndex(i);
+		return (i == 0) ? -1 : (i - 1) / kValue;
+	}
+	
+	/**
+	 * Return the level of a location index.
+	 * @param i the level-order location index.
+	 * @return the level, 0 for the root.
+	 * @throws IllegalArgumentException if i is negative.
+	 */
+	public int depth(int i){
+		
+		checkIndex(i);
+		int depth = 0;
+		for(long first = 1; first <= i; first = first * kValue + 1){
+			depth++; //first is the index of the first node of the next level
 		}
-
-		int arraySize = (int)(Math.pow(kValue, this.height() + 1) - 1) / (kValue - 1); //formula for number of nodes of perfect tree 
-
-		E[] toReturn = (E[]) new Object[arraySize];
-
-		Node<E> toFindNode = findNode(this.root, i); //get the node at the i-th location
-						
-		addToArray(toFindNode, toReturn, 0); //add values in nodes to the return array
+		return depth;
+	}
+	
+	/**
+	 * Return the instructions from the root to a location index, which decode() follows to reach it.
+	 * @param i the level-order location index.
+	 * @return one digit per level, the child taken at each level, empty for the root.
+	 * @throws IllegalArgumentException if i is negative or k is more than 10, use pathTo(i, alphabet) then.
+	 */
+	public String pathTo(int i){
 		
-		return toReturn;
+		if(kValue > 10){
+			throw new IllegalArgumentException("No digit instructions for k = " + kValue);
+		}
+		return pathTo(i, SymbolAlphabet.DECIMAL);
 	}
 	
 	/**
-	 * Return the mirror of the k-ary tree in array format.
-	 * @return the mirror of the k-ary tree in array format.
+	 * Return the instructions from the root to a location index in an instruction alphabet,
+	 * which decode(tree, message, alphabet) follows to reach it.
+	 * @param i the level-order location index.
+	 * @param alphabet the instruction alphabet.
+	 * @return one instruction per level, the child taken at each level, empty for the root.
+	 * @throws IllegalArgumentException if i is negative or the alphabet is smaller than k.
 	 */
-	@SuppressWarnings("unchecked")
-	public E[] mirror(){ 
+	public String pathTo(int i, SymbolAlphabet alphabet){
 		
-		int arraySize = (int)(Math.pow(kValue, this.height() + 1) - 1) / (kValue - 1); //formula for no. of nodes of perfect tree
-				
-		E[] toReturn = (E[]) new Object[arraySize];
+		if(alphabet.size() < kValue){
+			throw new IllegalArgumentException("The alphabet has fewer than " + kValue + " instructions");
+		}
 		
-		Node<E> newRoot = this.root;
+		char[] path = new char[depth(i)];
+		for(int t = path.length - 1; t >= 0; t--){ //from the node back up to the root
+			path[t] = alphabet.symbol((i - 1) % kValue); //i is the ((i - 1) % k)-th child of its parent
+			i = (i - 1) / kValue;
+		}
+		return new String(path);
+	}
+	
+	/**
+	 * Return the lowest common ancestor of two location indices, the root of the smallest subtree holding both.
+	 * @param i the first level-order location index.
+	 * @param j the second level-order location index.
+	 * @return the index of the lowest common ancestor, i if i is an ancestor of j.
+	 * @throws IllegalArgumentException if i or j is negative.
+	 */
+	public int lca(int i, int j){
 		
-		newRoot = getNewRoot(newRoot); //create a mirror of the tree
-				
-		addToArray(newRoot, toReturn, 0); //add values in nodes to the return array
+		int di = depth(i);
+		int dj = depth(j);
 		
-		return toReturn;
+		for(; di > dj; di--){
+			i = (i - 1) / kValue; //bring i up to the level of j
+		}
+		for(; dj > di; dj--){
+			j = (j - 1) / kValue; //bring j up to the level of i
+		}
+		while(i != j){
+			i = (i - 1) / kValue;
+			j = (j - 1) / kValue;
+		}
+		return i;
 	}
 	
 	/**
-	 * This method supports the mirror() method.
-	 * @param root the root of the tree.
-	 * @return the new root of the mirror of the tree.
+	 * Test if a location index is on the path from the root to another one.
+	 * @param i the level-order location index of the possible ancestor.
+	 * @param j the level-order location index of the possible descendant.
+	 * @return true if i is j or an ancestor of j.
+	 * @throws IllegalArgumentException if i or j is negative.
 	 */
-	private Node<E> getNewRoot(Node<E> root){
+	public boolean isAncestor(int i, int j){
 		
-		if(root == null){
-			return null;
+		checkIndex(i);
+		checkIndex(j);
+		while(j > i){
+			j = (j - 1) / kValue; //ancestors have smaller indices
 		}
-			
-		Node<E> tempNode = null;
+		return i == j;
+	}
+	
+	/**
+	 * This method supports the index query methods.
+	 * @param i the level-order location index.
+	 * @throws IllegalArgumentException if i is negative.
+	 */
+	private static void checkIndex(int i){
 		
-		for(int i = 0; i < kValue; i++){
-			getNewRoot(root.children[i]);
+		if(i < 0){
+			throw new IllegalArgumentException("Invalid Index");
+		}
+	}
+	
+	/**
+	 * Accept a location index and a value.
+	 * Attempt to set the node at location index to the value indicated.
+	 * Also can be used to remove leaves from the tree.
+	 * @param i the level-order location index of the node if the tree was perfect.
+	 * @param value the new value to set the location to (or null if attempting to remove a leaf).
+	 * @return true if the operation could be performed, false otherwise.
+	 * @throws InvalidTreeException if setting this location would make an invalid tree.
+	 */
+	public boolean set(int i, E value){
+		
+		long start = (metrics == null) ? 0 : System.nanoTime();
+		
+		boolean result = setValue(i, value);
+		
+		if(result){
+			changed(i);
 		}
 		
-		for(int i = 0; i < kValue/2; i++){
-			tempNode = root.children[i];
-			root.children[i] = root.children[kValue - i - 1]; //interchange the nodes
-			root.children[kValue - i - 1] = tempNode;
+		if(metrics != null){
+			metrics.recordOperation(KTreeMetrics.Operation.SET, System.nanoTime() - start);
 		}
 		
-		return root;
-	}	
-	
-	/****************************************/
-	/* EDIT THIS MAIN METHOD FOR TESTS. PUT */
-	/* HELPER TEST METHODS IN THIS SECTION  */
-	/* AS WELL. TESTS REQUIRED FOR FULL     */
-    /* CREDIT.                              */
-	/****************************************/
+		return result;
+	}
 	
 	/**
-	 * A main method to test/demo
-	 * @param args not used
+	 * This method supports the set() method.
+	 * @param i the level-order location index of the node if the tree was perfect.
+	 * @param value the new value to set the location to (or null if attempting to remove a leaf).
+	 * @return true if the operation could be performed, false otherwise.
+	 * @throws InvalidTreeException if setting this location would make an invalid tree.
 	 */
-	@SuppressWarnings("unchecked")
-	public static void main(String[] args) {
-		//change this method around to test!
-		//methodSigCheck();
+	private boolean setValue(int i, E value){
 		
+		if(i < 0 || this.root == null){ //invalid index or the tree is empty
+			return false;
+		}
 				
-//		String[] strings2 = { "a", "b", "c", null, "e", "f", null, "h", "i", "j", "k", "l", "m", null, null,
-//				null, null, "r", "s", null, null, "v", "w", "x", "y", null, null, null, null, null, null, null, null,
-//				null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
-//				null, null, null, null, null, null, null, null,null, null, null, null,null, null, null, null,null, null, null, null,
-//				null, null, null, "z", null, null, null, null, null, null, null, null, 
-//				null, null, null, null};
-//		
-//		KTree<String> tree10 = new KTree<>(strings2, 4);
-//		
-//		System.out.println(tree10.size()); //18
-//		System.out.println(tree10.height()); //3
-//		System.out.println(tree10.numberOfNodes); //85
-//		System.out.println(tree10.getK()); //4
-//		System.out.println(tree10.get(0)); //a
-//		System.out.println(tree10.get(1)); //b
-////		System.out.println(tree10.get(3)); //IllegalArgumentException
-////		System.out.println(tree10.get(67)); //IllegalArgumentException
-//		System.out.println(tree10.get(4)); //e
-//		System.out.println(tree10.get(7)); //h
-//		System.out.println(tree10.get(17)); //r
-//		System.out.println(tree10.get(24)); //y
-//		System.out.println(tree10.get(72)); //z
-//		System.out.println();
-				
-//		System.out.println(tree10.set(0, "A")); //true
-//		System.out.println(tree10.set(13, "n")); //InvalidTreeException
-//		System.out.println(tree10.set(84, "hi")); //InvalidTreeException
-//		System.out.println(tree10.set(20, null)); //false
-//		System.out.println(tree10.set(5, null)); //false
-//		System.out.println(tree10.set(24, null)); //true
-//		System.out.println(tree10.set(85, "hey")); //true
-//		System.out.println(tree10.get(24)); //InvalidTreeException
-//		System.out.println(tree10.set(17, null)); //false
-//		System.out.println(tree10.get(17)); //still r
-//		System.out.println(tree10.height); //4
-//		System.out.println(tree10.numberOfNodes); //341
-//		System.out.println(tree10.set(-1, "ha")); //false
-
-//		Object o10[] = tree10.toArray();
-//		System.out.println(o10[0]); //a
-//		System.out.println(o10[3]); //null
-//		System.out.println(o10[12]); //m
-//		System.out.println(o10[72]); //z
-//		System.out.println(o10[84]); //null
+		Node<E> toChange = locate(i);
 		
-//		String s10 = tree10.toString();
-//		System.out.println(s10); //walla long
+		//when value is null and node is not in the tree, or node has children
+		if(value == null){
+			if(toChange == null || toChange.data == null){ 
+				return false;
+			}
+			else{
+				for(int z = 0; z < kValue; z++){ //check to see if the node has children
+					if(toChange.child(z) != null){
+						if(toChange.child(z).data != null){
+							return false; 
+						}
+					}
+				}
+				if(positions != null){
+					removePosition(toChange.data, i);
+				}
+				toChange.data = null; //remove the node when the node doesn't have children
+				numberOfElements--;
+				countValues(depth(i), -1);
+				updateHeight(); //the level may have no values left
+				return true;
+			}
+		}
+		else if(value != null && toChange != null && toChange.data != null){ //when there is a node, value is not null
+				if(positions != null){
+					removePosition(toChange.data, i);
+					addPosition(value, i);
+				}
+				toChange.data = value;
+				return true;
+		}
+		else{  //when the value is not null, and there is no node at the i-th location
+			
+			Node<E> validParent = locate((i - 1)/kValue); //check for valid parent
+			if(validParent != null){
+				if(validParent.data != null){
+					int j = (i - 1) % kValue; //i is the j-th child of its parent
+					int level = depth(i);
+					numberOfElements -= removeNodes(validParent.child(j), level); //the replaced child and any values below it
+					if(compact){
+						clearPlaceholders(i); //the default mode drops the null nodes under the replaced child
+						validParent.setChild(j, new Node<E>(value, i));
+					}
+					else{
+						validParent.children[j] = new Node<E>(value, kValue, i);
+					}
+					numberOfElements++;
+					countValues(level, 1);
+					updateHeight(); //the index may start a new level
+					if(positions != null){
+						addPosition(value, i);
+					}
+					return true;
+				}
+				else{
+					throw new InvalidTreeException(); //the location will make the tree invalid
+				}
+			}
+			else if(compact && placeholders.get((i - 1)/kValue)){
+				throw new InvalidTreeException(); //the default mode has a null node there
+			}
+			return false;
+			//Note for the TA: this set() method is a nightmare!!! So glad I finished it! Please be easy on this method, thank you so much! :)
+		}	
+	}
+	
+	/**
+	 * Remove the subtree whose root is at a location index, values and null nodes alike, in O(height + removed nodes).
+	 * Afterwards the location has no node, as if the tree had been built without it, and the height is the
+	 * deepest level that still has values. Pruning the root leaves an empty tree.
+	 * @param i the level-order location index of the root of the subtree.
+	 * @return the number of values removed, 0 if there is no node at the location.
+	 * @throws IllegalArgumentException if i is negative.
+	 */
+	public int prune(int i){
 		
-//		Iterator<String> it10 = tree10.getLevelOrderIterator();
-//		System.out.println(it10.next());//a
-//		System.out.println(it10.next());//b
-//		System.out.println(it10.next());//c
-//		System.out.println(tree10.toStringLevelOrder()); 
-//
-//		Iterator<String> it10_1 = tree10.getPreOrderIterator();
-//		System.out.println(it10_1.next());//a
-//		System.out.println(it10_1.next());//b
-//		System.out.println(it10_1.next());//f
-//		System.out.println(tree10.toStringPreOrder());
-//		
-//		Iterator<String> it10_2 = tree10.getPostOrderIterator();
-//		System.out.println(it10_2.next());//v
-//		System.out.println(it10_2.next());//w
-//		System.out.println(it10_2.next());//x
-//		System.out.println(tree10.toStringPostOrder());
+		checkIndex(i);
 		
-		//System.out.println(tree10.get(72));
+		Node<E> parent = (i == 0) ? null : locate((i - 1) / kValue);
+		Node<E> toRemove = (i == 0) ? root : (parent == null) ? null : parent.child((i - 1) % kValue);
 		
-//		String sDecode = decode(tree10, "0203001020031300331020030203"); //0203001020031300331020030203 
-//		System.out.println(sDecode); // hiwhymyshyhi
+		if(toRemove == null){
+			if(compact && placeholders.get(i)){ //the default mode has a null node there
+				clearPlaceholders(i);
+				version++; //only null nodes are gone, the values and hashes are the same
+			}
+			return 0;
+		}
 		
-//		Object[] subtree10 = tree10.subtree(1);
-//		System.out.println(subtree10[0]); //b
-//		System.out.println(subtree10[1]); //f
-//		System.out.println(subtree10[2]); //null
-//		System.out.println(subtree10[4]); //i
-//		System.out.println(subtree10[8]); //y
+		int removed = removeNodes(toRemove, depth(i));
+		if(compact){
+			clearPlaceholders(i);
+		}
 		
-//		Object[] mirror10 = tree10.mirror();
-//		System.out.println(mirror10[1]); //e
-//		System.out.println(mirror10[2]); //null
-//		System.out.println(mirror10[3]); //c
-//		System.out.println(mirror10[4]); //b
-//		System.out.println(mirror10[5]); //null
-//		System.out.println(mirror10[8]); //r
-//		System.out.println(mirror10[15]); //k
-//		System.out.println(mirror10[18]); //h
-//		System.out.println(mirror10[82]); //x
-//		System.out.println(mirror10[84]); //v
-
-
+		if(parent == null){
+			root = null;
+		}
+		else{
+			parent.children[(i - 1) % kValue] = null; //detach the subtree
+		}
 		
-//		String[] strings = { "_", "_", "A", "B", "N", null, null };
-//		KTree<String> tree = new KTree<>(strings, 2);
+		numberOfElements -= removed;
+		updateHeight();
+		changed((parent == null) ? -1 : (i - 1) / kValue);
+		return removed;
+	}
+	
+	/**
+	 * Move every node of another tree into this tree as the subtree at a location index, in O(height + donor nodes).
+	 * The donor's nodes are relinked and renumbered rather than copied, and the donor is left empty.
+	 * The location must have a parent with a value and no values of its own below it; null nodes
+	 * there are replaced, like set() replaces them. Nothing changes if an exception is thrown.
+	 * @param i the level-order location index of the root of the grafted subtree, 0 only for a tree without values.
+	 * @param donor the tree to move, with the same k and mode as this tree and a value at its root.
+	 * @return the number of values moved.
+	 * @throws IllegalArgumentException if i is negative, the location holds values, has no parent node or is too deep,
+	 * or the donor is this tree, has no root value or a different k or mode.
+	 * @throws InvalidTreeException if the parent location has no value.
+	 */
+	public int graft(int i, KTree<E> donor){
 		
-//		boolean b = tree.set(0, "x"); //should set the root to "x"
-//		
-//		Object[] o = tree.toArray(); //should return [ "x", "_", "A", "B", "N", null, null ]
-//		System.out.println(o[0]); //x
-//		System.out.println(o[1]); //_
-//		System.out.println(o[2]); //A
-//		System.out.println(o[3]); //B
-//		System.out.println(o[4]); //N
-//		System.out.println(o[5]); //null
-//		System.out.println(o[6]); //null
-//		System.out.println();
-
+		checkIndex(i);
 		
-//		System.out.println(tree.getK()); //2
-//		System.out.println(tree.size()); //5
-//		System.out.println(tree.height()); //2
-//		System.out.println(tree.get(0)); //_
-//		System.out.println(tree.get(3)); //B
+		if(donor == this || donor.kValue != kValue || donor.compact != compact){
+			throw new IllegalArgumentException("The donor must be another tree with the same k and mode");
+		}
+		if(donor.root == null || donor.root.data == null){
+			throw new IllegalArgumentException("The donor has no root value");
+		}
+		
+		Node<E> parent = null;
+		if(i > 0){
+			parent = (root == null) ? null : locate((i - 1) / kValue);
+			if(parent == null){
+				if(compact && placeholders.get((i - 1) / kValue)){
+					throw new InvalidTreeException(); //the default mode has a null node there
+				}
+				throw new IllegalArgumentException("No parent node for index " + i);
+			}
+			if(parent.data == null){
+				throw new InvalidTreeException(); //the location will make the tree invalid
+			}
+		}
+		
+		Node<E> replaced = (i == 0) ? root : parent.child((i - 1) % kValue);
+		if(holdsValues(replaced, kValue)){
+			throw new IllegalArgumentException("Index " + i + " already holds values");
+		}
+		
+		int deepest = nodeHeight(donor.root, kValue); //null nodes below the donor's height are moved too
+		if(compact && !donor.placeholders.isEmpty()){
+			deepest = Math.max(deepest, donor.depth(donor.placeholders.length() - 1));
+		}
+		long last = i; //the last index of each level of the grafted subtree
+		for(int d = 0; d < deepest; d++){
+			last = last * kValue + kValue;
+			if(last > Integer.MAX_VALUE){
+				throw new IllegalArgumentException("The donor is too deep to graft at index " + i);
+			}
+		}
+		
+		//checks done, nothing below can fail
+		int level = depth(i);
+		removeNodes(replaced, level);
+		if(compact){
+			clearPlaceholders(i);
+			long offset = i - firstIndex(level); //place of i on its level
+			for(int b = donor.placeholders.nextSetBit(0); b >= 0; b = donor.placeholders.nextSetBit(b + 1)){
+				int d = donor.depth(b);
+				long scale = 1; //number of places on level d of the subtree for each place above
+				for(int t = 0; t < d; t++){
+					scale *= kValue;
+				}
+				placeholders.set((int)(firstIndex(level + d) + offset * scale + (b - donor.firstIndex(d))));
+			}
+		}
+		
+		renumber(donor.root, i);
+		for(int d = 0; d <= donor.height(); d++){
+			countValues(level + d, donor.levelValues[d]);
+		}
+		
+		if(parent == null){
+			root = donor.root;
+		}
+		else{
+			parent.setChild((i - 1) % kValue, donor.root);
+		}
+		
+		int moved = donor.numberOfElements;
+		numberOfElements += moved;
+		updateHeight();
+		if(hashes != null){
+			subtreeHash(donor.root, kValue, valueHasher, (node, hash) -> hashes.put(node.index, hash)); //under the new indices
+		}
+		if(subtreeCounts != null){
+			countSubtree(donor.root, i);
+		}
+		changed(i);
+		
+		donor.root = null;
+		donor.numberOfElements = 0;
+		donor.levelValues = new int[0];
+		donor.updateHeight();
+		if(compact){
+			donor.placeholders.clear();
+		}
+		if(donor.positions != null){
+			donor.positions.clear();
+		}
+		donor.changed(-1);
+		
+		return moved;
+	}
+	
+	/**
+	 * This method supports the set(), prune() and graft() methods, it takes the values of a subtree off
+	 * the level counts and the reverse index and drops their hashes and subtree counts.
+	 * @param root the root of the subtree, or null.
+	 * @param level the level of the root.
+	 * @return the number of values in the subtree.
+	 */
+	private int removeNodes(Node<E> root, int level){
+		
+		if(root == null){ //base case
+			return 0;
+		}
+		
+		if(hashes != null){
+			hashes.remove(root.index);
+		}
+		if(subtreeCounts != null){
+			subtreeCounts.remove(root.index);
+		}
+		
+		int values = 0;
+		if(root.data != null){
+			levelValues[level]--;
+			values++;
+			if(positions != null){
+				removePosition(root.data, root.index);
+			}
+		}
+		for(int c = 0; c < root.children.length; c++){
+			values += removeNodes(root.children[c], level + 1);
+		}
+		return values;
+	}
+	
+	/**
+	 * This method supports the graft() method, it gives the nodes of a subtree the indices of their new locations
+	 * and adds their values to the reverse index.
+	 * @param root the root of the subtree.
+	 * @param index the new level-order location index of the root.
+	 */
+	private void renumber(Node<E> root, int index){
+		
+		root.index = index;
+		if(positions != null && root.data != null){
+			addPosition(root.data, index);
+		}
+		for(int c = 0; c < root.children.length; c++){
+			if(root.children[c] != null){
+				renumber(root.children[c], kValue * index + c + 1); //using k * index + c-th child of the node
+			}
+		}
+	}
+	
+	/**
+	 * This method supports the graft() method.
+	 * @param root the root of a subtree, or null.
+	 * @param k the branching factor k.
+	 * @return the deepest level of the subtree that has a node, null nodes included, -1 for no subtree.
+	 */
+	private static int nodeHeight(Node<?> root, int k){
+		
+		if(root == null){ //base case
+			return -1;
+		}
+		int deepest = 0;
+		for(int c = 0; c < k; c++){
+			deepest = Math.max(deepest, nodeHeight(root.child(c), k) + 1);
+		}
+		return deepest;
+	}
+	
+	/**
+	 * Free the null nodes that have no values below them, which set() leaves behind when it removes values,
+	 * and trim the arrays the tree keeps to its current height. The values and their locations do not change,
+	 * but toString() no longer shows the freed null nodes. The root node is always kept.
+	 * Compact trees also trim each children array to its last child. Only memory is freed, so the version,
+	 * the hashes, the counts and the decode caches stay as they are.
+	 */
+	public void trimToSize(){
+		
+		if(root != null){
+			trimNodes(root);
+		}
+		if(compact){
+			placeholders.clear(); //every placeholder is a null node without values below it
+		}
+		levelValues = Arrays.copyOf(levelValues, height + 1);
+	}
+	
+	/**
+	 * This method supports the trimToSize() method.
+	 * @param root the root of a subtree.
+	 * @return true if any node of the subtree has a value.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean trimNodes(Node<E> root){
+		
+		boolean values = root.data != null;
+		int last = -1; //the last child that is kept
+		for(int c = 0; c < root.children.length; c++){
+			if(root.children[c] != null){
+				if(trimNodes(root.children[c])){
+					values = true;
+					last = c;
+				}
+				else{
+					root.children[c] = null; //nothing below but null nodes
+				}
+			}
+		}
+		if(compact && last + 1 < root.children.length){
+			root.children = (last < 0) ? (Node<E>[])NO_CHILDREN : Arrays.copyOf(root.children, last + 1);
+		}
+		return values;
+	}
+	
+	/**
+	 * This method supports the graft() method.
+	 * @param root the root of a subtree, or null.
+	 * @param k the branching factor k.
+	 * @return true if any node of the subtree has a value.
+	 */
+	private static boolean holdsValues(Node<?> root, int k){
+		
+		if(root == null){ //base case
+			return false;
+		}
+		if(root.data != null){
+			return true;
+		}
+		for(int c = 0; c < k; c++){
+			if(holdsValues(root.child(c), k)){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Return the copy of the tree stored in level order.
+	 * @return the copy of the tree stored in level order, return an empty array if there are no elements.
+	 */
+	public Object[] toArray(){
+		
+		Object[] toReturn = new Object[slotCount(0, this.height())]; //number of nodes of a perfect tree
+		
+		exportTo(toReturn, 0); //add values in the nodes to the array representation
+		
+		return toReturn;
+	}
+	
+	/**
+	 * Return the number of slots the levels of the tree take in level order.
+	 * @param fromLevel the first level, 0 for the root.
+	 * @param toLevel the last level, inclusive.
+	 * @return the number of slots, 0 if toLevel is less than fromLevel.
+	 * @throws IllegalArgumentException if fromLevel is negative or toLevel is more than height().
+	 */
+	public int slotCount(int fromLevel, int toLevel){
+		
+		if(fromLevel < 0 || toLevel > this.height()){
+			throw new IllegalArgumentException("Invalid levels " + fromLevel + ".." + toLevel);
+		}
+		
+		return (toLevel < fromLevel) ? 0 : (int)(firstIndex(toLevel + 1) - firstIndex(fromLevel));
+	}
+	
+	/**
+	 * Return the index of the first node of a level if the tree was perfect.
+	 * @param level the level, 0 for the root.
+	 * @return (k^level - 1) / (k - 1).
+	 */
+	private long firstIndex(int level){
+		
+		long first = 0;
+		for(int d = 0; d < level; d++){
+			first = first * kValue + 1; //the first index of the next level is k * first + 1
+		}
+		return first;
+	}
+	
+	/**
+	 * Copy the tree in level order into an existing array, like toArray() without allocating.
+	 * @param dest the array to write to, slots without a value are set to null.
+	 * @param offset the index in dest of the root.
+	 * @return the number of slots written, slotCount(0, height()).
+	 * @throws IndexOutOfBoundsException if dest is too small, nothing is written then.
+	 */
+	public int exportTo(Object[] dest, int offset){
+		
+		return exportLevels(0, this.height(), dest, offset);
+	}
+	
+	/**
+	 * Copy some levels of the tree in level order into an existing array.
+	 * The slot of index i goes to dest[offset + i - first], where first is the index of the first node of fromLevel.
+	 * @param fromLevel the first level, 0 for the root.
+	 * @param toLevel the last level, inclusive.
+	 * @param dest the array to write to, slots without a value are set to null.
+	 * @param offset the index in dest of the first slot.
+	 * @return the number of slots written, slotCount(fromLevel, toLevel).
+	 * @throws IllegalArgumentException if the levels are not in the tree.
+	 * @throws IndexOutOfBoundsException if dest is too small, nothing is written then.
+	 */
+	public int exportLevels(int fromLevel, int toLevel, Object[] dest, int offset){
+		
+		int count = slotCount(fromLevel, toLevel);
+		Objects.checkFromIndexSize(offset, count, dest.length);
+		
+		Arrays.fill(dest, offset, offset + count, null); //a reused buffer may hold an older tree
+		
+		int base = offset - (int)firstIndex(fromLevel);
+		exportNodes(this.root, 0, 0, fromLevel, toLevel, false, (value, index) -> dest[base + index] = value);
+		
+		return count;
+	}
+	
+	/**
+	 * Append some levels of the tree in level order to a list, null for slots without a value.
+	 * @param fromLevel the first level, 0 for the root.
+	 * @param toLevel the last level, inclusive.
+	 * @param dest the list to append to.
+	 * @return the number of slots appended, slotCount(fromLevel, toLevel).
+	 * @throws IllegalArgumentException if the levels are not in the tree.
+	 */
+	public int exportLevels(int fromLevel, int toLevel, List<? super E> dest){
+		
+		return exportSlots(fromLevel, toLevel, dest::add);
+	}
+	
+	/**
+	 * Write some levels of the tree in level order to a buffer.
+	 * The encoder is called once for every slot, with null for slots without a value, and
+	 * must write the value at the position of the buffer.
+	 * @param fromLevel the first level, 0 for the root.
+	 * @param toLevel the last level, inclusive.
+	 * @param dest the buffer to write to.
+	 * @param encoder writes one value, or the marker of an empty slot, to the buffer.
+	 * @return the number of slots written, slotCount(fromLevel, toLevel).
+	 * @throws IllegalArgumentException if the levels are not in the tree.
+	 * @throws BufferOverflowException if the buffer is too small, its position is left unchanged then.
+	 */
+	public int exportLevels(int fromLevel, int toLevel, ByteBuffer dest, BiConsumer<? super E, ByteBuffer> encoder){
+		
+		int start = dest.position();
+		
+		try{
+			return exportSlots(fromLevel, toLevel, value -> encoder.accept(value, dest));
+		}
+		catch(BufferOverflowException e){
+			dest.position(start); //the caller can retry with a larger buffer
+			throw e;
+		}
+	}
+	
+	/**
+	 * This method supports the list and buffer export methods, it passes every slot of the levels in level order.
+	 * @param fromLevel the first level, 0 for the root.
+	 * @param toLevel the last level, inclusive.
+	 * @param slot receives the value of each slot, null for slots without a value.
+	 * @return the number of slots passed on.
+	 */
+	private int exportSlots(int fromLevel, int toLevel, Consumer<? super E> slot){
+		
+		int count = slotCount(fromLevel, toLevel);
+		
+		long[] next = { firstIndex(fromLevel) }; //index of the next slot to pass on
+		for(int level = fromLevel; level <= toLevel; level++){ //one level at a time keeps the values in level order
+			exportNodes(this.root, 0, 0, level, level, false, (value, index) -> {
+				for(; next[0] < index; next[0]++){
+					slot.accept(null); //the slots before this value are empty
+				}
+				slot.accept(value);
+				next[0]++;
+			});
+		}
+		for(long end = firstIndex(toLevel + 1); next[0] < end; next[0]++){
+			slot.accept(null);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Pass the values of some levels of the tree to a consumer, in level order, together with their
+	 * level-order location index. Slots without a value are skipped.
+	 * @param fromLevel the first level, 0 for the root.
+	 * @param toLevel the last level, inclusive.
+	 * @param sink receives each value and its index.
+	 * @return the number of values passed to the consumer.
+	 * @throws IllegalArgumentException if the levels are not in the tree.
+	 */
+	public int exportLevels(int fromLevel, int toLevel, ObjIntConsumer<? super E> sink){
+		
+		slotCount(fromLevel, toLevel); //check the levels
+		
+		int[] values = { 0 };
+		for(int level = fromLevel; level <= toLevel; level++){ //one level at a time keeps the values in level order
+			exportNodes(this.root, 0, 0, level, level, false, (value, index) -> {
+				sink.accept(value, index);
+				values[0]++;
+			});
+		}
+		return values[0];
+	}
+	
+	/**
+	 * Copy a subtree in level order into an existing array, like subtree() without allocating.
+	 * @param i the level-order location index of the root of the subtree.
+	 * @param dest the array to write to, slots without a value are set to null.
+	 * @param offset the index in dest of the root of the subtree.
+	 * @return the number of slots written, 0 if i is not a node in the tree.
+	 * @throws IllegalArgumentException if i is negative.
+	 * @throws IndexOutOfBoundsException if dest is too small, nothing is written then.
+	 */
+	public int subtreeTo(int i, Object[] dest, int offset){
+		
+		if(i < 0){
+			throw new IllegalArgumentException("Invalid Index");
+		}
+		
+		Node<E> toFindNode = (this.root == null) ? null : locate(i); //get the node at the i-th location
+		if(toFindNode == null){
+			return 0;
+		}
+		
+		int depth = depth(i);
+		int count = (int)firstIndex(this.height() - depth + 1); //a perfect tree of the remaining levels
+		Objects.checkFromIndexSize(offset, count, dest.length);
+		
+		Arrays.fill(dest, offset, offset + count, null);
+		exportNodes(toFindNode, 0, 0, 0, this.height() - depth, false, (value, index) -> dest[offset + index] = value);
+		
+		return count;
+	}
+	
+	/**
+	 * Copy the mirror of the tree in level order into an existing array, like mirror() without allocating.
+	 * @param dest the array to write to, slots without a value are set to null.
+	 * @param offset the index in dest of the root.
+	 * @return the number of slots written, slotCount(0, height()).
+	 * @throws IndexOutOfBoundsException if dest is too small, nothing is written then.
+	 */
+	public int mirrorTo(Object[] dest, int offset){
+		
+		int count = slotCount(0, this.height());
+		Objects.checkFromIndexSize(offset, count, dest.length);
+		
+		Arrays.fill(dest, offset, offset + count, null);
+		exportNodes(this.root, 0, 0, 0, this.height(), true, (value, index) -> dest[offset + index] = value);
+		
+		return count;
+	}
+	
+	/**
+	 * This method supports the export methods, it passes the values of the nodes on the levels fromLevel to
+	 * toLevel to the sink in increasing index order within each level.
+	 * @param root the root of the k-ary tree.
+	 * @param index the location index of the node.
+	 * @param depth the level of the node.
+	 * @param fromLevel the first level to pass on.
+	 * @param toLevel the last level to pass on, nothing below it is visited.
+	 * @param mirror true to place the children in reverse order, the index of the mirror of the tree.
+	 * @param sink receives each value and its index.
+	 */
+	private void exportNodes(Node<E> root, int index, int depth, int fromLevel, int toLevel, boolean mirror, ObjIntConsumer<? super E> sink){
+		
+		if(root == null){ //base case
+			return;
+		}
+		
+		if(depth >= fromLevel && root.data != null){
+			sink.accept(root.data, index);
+		}
+		
+		if(depth < toLevel){
+			for(int i = 0, j = 1; i < kValue; i++, j++){
+				int c = mirror ? kValue - 1 - i : i; //the child that goes to the j-th place
+				if(root.child(c) != null){
+					exportNodes(root.child(c), index * kValue + j, depth + 1, fromLevel, toLevel, mirror, sink); //using formula k * index + c-th child of the node
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Return an iterator over the values on one level of the tree, from left to right.
+	 * The iterator goes straight to the first index of the level and skips empty subtrees whole,
+	 * so it never visits the levels above except on the way down.
+	 * @param d the level, 0 for the root.
+	 * @return a lazy iterator over the values on the level, empty if the tree has no such level.
+	 * @throws IllegalArgumentException if d is negative.
+	 */
+	public Iterator<E> level(int d){
+		
+		if(d < 0){
+			throw new IllegalArgumentException("Invalid level " + d);
+		}
+		
+		if(d > this.height()){
+			return new RangeIterator(0, 0);
+		}
+		return new RangeIterator(firstIndex(d), firstIndex(d + 1));
+	}
+	
+	/**
+	 * Return an iterator over the values at the level-order location indices from, inclusive, to to, exclusive.
+	 * Indices without a value are skipped. The cost grows with the size of the range, not the size of the tree.
+	 * @param from the first level-order location index.
+	 * @param to the index after the last one.
+	 * @return a lazy iterator over the values in index order.
+	 * @throws IllegalArgumentException if from is negative or to is less than from.
+	 */
+	public Iterator<E> range(int from, int to){
+		
+		if(from < 0 || to < from){
+			throw new IllegalArgumentException("Invalid range " + from + ".." + to);
+		}
+		
+		return new RangeIterator(from, Math.min(to, firstIndex(this.height() + 1))); //nothing past the last level
+	}
+	
+	/**
+	 * This is the implementation of the level() and range() iterators. It keeps the path from the root to
+	 * the last slot it looked at, and the next slot reuses the part of the path the two slots share.
+	 */
+	private class RangeIterator implements Iterator<E>{
+		
+		private long next; //index of the next slot to look at
+		private final long end; //index after the last slot
+		private int level = -1; //level of the slots the path leads to
+		private long first; //index of the first slot of the level
+		private long[] blocks; //blocks[t] is the number of slots of the level below a node at depth t
+		private Node<E>[] path; //path[t] is the node at depth t above the current slot
+		private long[] pathOffset; //pathOffset[t] is the place of path[t] on its own level
+		private int valid; //number of path entries that still lead towards next
+		private E nextValue; //the value next() returns, null when there are no more
+		
+		/**
+		 * Construct a new RangeIterator.
+		 * @param from the first level-order location index.
+		 * @param end the index after the last one.
+		 */
+		public RangeIterator(long from, long end){
+			this.next = from;
+			this.end = end;
+			if(from < end){
+				int d = 0;
+				while(firstIndex(d + 1) <= from){
+					d++; //the level of the first index
+				}
+				startLevel(d);
+			}
+			advance();
+		}
+		
+		/**
+		 * This method supports the advance() method, it moves the path to a new level.
+		 * @param d the new level.
+		 */
+		@SuppressWarnings("unchecked")
+		private void startLevel(int d){
+			level = d;
+			first = firstIndex(d);
+			blocks = new long[d + 1];
+			blocks[d] = 1;
+			for(int t = d - 1; t >= 0; t--){
+				blocks[t] = blocks[t + 1] * kValue;
+			}
+			path = (Node<E>[])new Node<?>[d + 1];
+			pathOffset = new long[d + 1];
+			valid = 0;
+		}
+		
+		/**
+		 * Find the next slot with a value and keep its value in nextValue.
+		 */
+		private void advance(){
+			
+			nextValue = null;
+			
+			search:
+			while(next < end){
+				
+				if(next >= first + blocks[0]){ //past the last slot of the level
+					startLevel(level + 1);
+				}
+				
+				long offset = next - first;
+				while(valid > 0 && offset / blocks[valid - 1] != pathOffset[valid - 1]){
+					valid--; //this ancestor is not above the next slot
+				}
+				
+				for(int t = valid; t <= level; t++){
+					Node<E> node = (t == 0) ? root : path[t - 1].child((int)(offset / blocks[t] % kValue));
+					if(node == null){
+						next = first + (offset / blocks[t] + 1) * blocks[t]; //skip every slot below the missing node
+						valid = t;
+						continue search;
+					}
+					path[t] = node;
+					pathOffset[t] = offset / blocks[t];
+					valid = t + 1;
+				}
+				
+				next++;
+				if(path[level].data != null){
+					nextValue = path[level].data;
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * Test if there are more items in the range.
+		 * @return true if there are more items in the range.
+		 */
+		public boolean hasNext(){
+			
+			return nextValue != null;
+		}
+		
+		/**
+		 * Obtain the next item in the range.
+		 * @return the next item in the range, return null if no more items in the range.
+		 */
+		public E next(){
+			
+			E toReturn = nextValue;
+			if(toReturn != null){
+				advance();
+			}
+			return toReturn;
+		}
+	}
+	
+	/**
+	 * Output the tree where each level is printed on its own line, each node is separated by a space.
+	 * @return the output of the tree where each level is printed on its own line.
+	 */
+	public String toString(){
+		
+		StringBuilder s = new StringBuilder();
+		
+		for(int i = 1; i <= this.height() + 1; i++){
+			printLevel(s, this.root, i); //print each level, start with level 1 of the tree
+			s.append("\n");
+		}
+		
+		return s.toString();
+	}
+	
+	/**
+	 * This method supports the toString() method.
+	 * @param s the StringBuilder for building a string representation of the tree.
+	 * @param root the root of the k-ary tree.
+	 * @param level each level of the tree.
+	 */
+	private void printLevel(StringBuilder s, Node<E> root, int level){
+						
+		if(root == null){ //base case
+			return;
+		}
+		
+		if(level == 1){
+			s.append(root.data); //append values in the nodes to the StringBuilder s
+			s.append(" ");
+		}
+		else if(level > 1){
+			for(int i = 0; i < kValue; i++){
+				if(root.child(i) == null && compact){
+					printPlaceholder(s, placeholderIndex(root.index, i), level - 1); //print the null nodes the default mode would have
+				}
+				else{
+					printLevel(s, root.child(i), level - 1); //recursively printing values on each level
+				}
+			}
+		}		
+	}
+	
+	/**
+	 * This method supports the printLevel() method for compact trees.
+	 * @param s the StringBuilder for building a string representation of the tree.
+	 * @param index the index of a missing node, or -1.
+	 * @param level each level of the tree.
+	 */
+	private void printPlaceholder(StringBuilder s, int index, int level){
+		
+		if(index < 0 || !placeholders.get(index)){ //the default mode has no node there either
+			return;
+		}
+		
+		if(level == 1){
+			s.append("null ");
+		}
+		else if(level > 1){
+			for(int i = 0; i < kValue; i++){
+				printPlaceholder(s, placeholderIndex(index, i), level - 1);
+			}
+		}
+	}
+	
+	/**
+	 * The DynamicArray implements an array whose capacity can grow and shrink.
+	 * @param <E> the type of the value in the DynamicArray.
+	 */
+	private static class DynamicArray<E>{
+		
+		private static final int INITCAP = 2;	// default initial capacity / minimum capacity
+		private E[] storage;	// underlying array
+		private int numOfElements; //number of elements in the array
+
+		@SuppressWarnings("unchecked")
+		/**
+		 * Constructs an empty Dynamic Array.
+		 */
+		public DynamicArray(){
+			numOfElements = 0;
+			storage = (E[]) new Object[INITCAP];
+		}
+		
+		/**
+		 * Returns the number of elements in the list.
+		 * @return the number of elements in the list.
+		 */
+		public int size() {	  
+			
+			return numOfElements;
+		}
+			
+		/**
+		 * Reports the max number of elements before the next expansion.
+		 * @return the max number of elements the list can hold.
+		 */
+		public int capacity() { 
+
+			return storage.length;
+		}
+		
+		/**
+		 * Returns the item at position index.
+		 * @param index the index of the object.
+		 * @return the item at position index.
+		 * @throws IndexOutOfBoundsException if index is out of range.
+		 */
+		public E get(int index){
+			
+			if(index >= size() || index < 0){
+				throw new IndexOutOfBoundsException(this.toString());
+			}
+			return storage[index];
+		}
+		
+		public boolean add(E value){
+			
+			if(size() == capacity()){
+				this.increaseCapacity(); //doubles the capacity
+			}
+			
+				storage[size()] = value; //place new value into the highest possible index
+				numOfElements++;
+				return true;
+		}
+		
+		@SuppressWarnings("unchecked")
+		/**
+		 * Removes the item at position index, shifts items to remove any gap in the list.
+		 * Halves the capacity if the number of elements falls below 1/3 of the capacity.
+		 * Makes sure the capacity doesn't go below INITCAP.
+		 * @param index the index of the object.
+		 * @return the old item removed from the list.
+		 * @throws IndexOutOfBoundsException if index is out of range.
+		 */
+		public E remove(int index){
+
+			if(index >= size() || index < 0){
+				throw new IndexOutOfBoundsException(this.toString());
+			}
+			else{
+				E old = storage[index];
+				for(int i = index; i < size() - 1; i++){
+						storage[i] = storage[i + 1]; //shifting the elements					
+				}
+				
+				numOfElements--;
+							
+				//size is below 1/3 of capacity and capacity is not below INITCAP
+				if((size() < (double)capacity() / 3) && (capacity()/2 >= INITCAP)){ 
+					E[] newStorage = (E[]) new Object[capacity() / 2]; //halve the capacity
+					
+					for(int i = 0; i < size(); i++){
+						newStorage[i] = storage[i]; //copy each item from old storage to new storage
+					}
+					storage = newStorage;
+				}
+				
+				return old; //return old element
+			}
+		}  
+		
+		@SuppressWarnings("unchecked")
+		/**
+		 * Doubles the capacity if no space is available.
+		 */
+		private void increaseCapacity(){
+			E[] newStorage = (E[]) new Object[capacity() * 2]; //double the capacity of the array;
+			
+			for(int i = 0; i < size(); i++){
+				newStorage[i] = storage[i]; //copy each item from old storage to new storage
+			}
+			storage = newStorage;
+		}
+
+	}
+	
+	/**
+	 * Return an iterator that walks through the tree in level order.
+	 * @return an iterator that walks through the tree in level order.
+	 */
+	public Iterator<E> getLevelOrderIterator(){
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new LevelOrderIterator();
+	}
+	
+	/**
+	 * This is the implementation of the LevelOrderIterator.
+	 */
+	private class LevelOrderIterator implements Iterator<E>{
+		
+		private final DynamicArray<Node<E>> list;
+		
+		/**
+		 * Construct a new LevelOrderIterator.
+		 */
+		public LevelOrderIterator(){
+			list = new DynamicArray<>();
+			list.add(root); //add the root of the tree to the queue
+		}
+		
+		/**
+		 * Test if there are more items in the tree.
+		 * @return true if there are more items in the tree.
+		 */
+		public boolean hasNext(){
+			
+			return !(list.size() == 0);
+		}
+		
+		/**
+		 * Obtain the next item in the tree.
+		 * @return the next item in the tree, return null if no more items in the tree.
+		 */
+		public E next(){
+			
+			if(!hasNext()){
+				return null;
+			}
+							
+			Node<E> nextNode = list.remove(0); //get the front of the queue
+			
+			for(int i = 0; i < kValue; i++){
+				if(nextNode.child(i) != null){
+					if(nextNode.child(i).data != null){ //don't add null nodes to the queue
+						list.add(nextNode.child(i));
+					}
+				}
+			}
+			return nextNode.data;
+		}		
+	}
+	
+	/**
+	 * Return the string representation of the level order walk.
+	 * @return the string representation of the level order walk.
+	 */
+	public String toStringLevelOrder(){
+		
+		long start = (metrics == null) ? 0 : System.nanoTime();
+		
+		StringBuilder s = new StringBuilder();
+		
+		Iterator<E> itr = this.getLevelOrderIterator();
+		
+		while(itr.hasNext()){
+			s.append(itr.next()); //append values in nodes in the queue to the StringBuilder s
+			s.append(" ");
+		}
+		
+		if(metrics != null){
+			metrics.recordOperation(KTreeMetrics.Operation.LEVEL_ORDER, System.nanoTime() - start);
+		}
+		
+		return s.toString();
+	}
+	
+	/**
+	 * The implementation of a Node.
+	 * @author Professors
+	 * @param <E> the type of the value of Node.
+	 */
+	private static class StackNode<E> {
+		private E value;
+		private StackNode<E> next;
+		private StackNode<E> prev;
+		
+		/**
+		 * Create a new node with the specified value.
+		 * @param value the specified value.
+		 */
+		public StackNode(E value) {
+			this.value = value;
+		}
+		
+		/**
+		 * Return the value stored this node.
+		 * @return the value stored this node.
+		 */
+		public E getValue() {
+			return value;
+		}
+		
+		/**
+		 * Set the value stored in this node.
+		 * @param value the (new) value of this node.
+		 */
+		public void setValue(E value) {
+			this.value = value;
+		}
+		
+		/**
+		 * Return the next node after this node.
+		 * @return the node after this node.
+		 */
+		public StackNode<E> getNext() {
+			return this.next;
+		}
+		
+		/**
+		 * Set the next node after this node.
+		 * @param next the (new) next node after this node.
+		 */
+		public void setNext(StackNode<E> next) {
+			this.next = next;
+		}
+		
+		/**
+		 * Return the previous node before this node.
+		 * @return the node before this node.
+		 */
+		public StackNode<E> getPrev() {
+			return this.prev;
+		}
+		
+		/**
+		 * Set the previous node before this node.
+		 * @param previous the previous node before this node.
+		 */
+		public void setPrev(StackNode<E> prev) {
+			this.prev = prev;
+		}
+		
+	}
+	
+	/**
+	 * Linked list implementation of the stack.
+	 * @param <E> the type of the value in the ProgramStack.
+	 */
+	private static class ProgramStack<E>{
+		
+		private StackNode<E> top;
+		private int size;	
+		
+		/**
+		 * Construct an empty stack.
+		 */
+		public ProgramStack() {
+		
+			top = null;
+			size = 0;
+		}
+		
+		/**
+		 * Insert a new item onto the stack.
+		 * @param item the item to insert.
+		 */
+		public void push(E item) {
+			
+			StackNode<E> newNode = new StackNode<E>(item); //create a new node with the item
+			
+			//link the nodes
+			newNode.setNext(top);
+			if(size() != 0){
+				top.setPrev(newNode);
+			}
+			
+			top = newNode; //set the newNode to be the top
+			size++;
+		}
+		
+		/**
+		 * Remove the most recently inserted item from the stack.
+		 * @return the removed item.
+		 * @return null if the stack is empty.
+		 */
+		public E pop() {
+			
+			if(isEmpty()){ //check if the stack is empty
+				return null;
+			}
+			else{
+				E toReturn = top.getValue(); 
+				top = top.getNext(); //set top to be the next item
+				size--;
+				if(size != 0){
+					top.setPrev(null);
+				}
+				return toReturn; //return the old value
+			}
+			
+		}
+		/**
+		 * Get the most recently inserted item in the stack.
+		 * Do not remove the item from the stack.
+		 * @return the most recently inserted item in the stack.
+		 * @return null if the stack is empty.
+		 */
+		public E peek() {
+			
+			if(isEmpty()){ //check if the stack is empty
+				return null;
+			}
+			else{
+				return top.getValue();
+			}
+		}
+		
+		/**
+		 * Return the number of items in the stack.
+		 * @return the size of the stack.
+		 */
+		public int size() {
+			
+			return size;
+		}
+		
+		/**
+		 * Check if the stack is logically empty.
+		 * @return true if empty, false otherwise.
+		 */
+		public boolean isEmpty() {
+			
+			if(size() == 0){ //if the stack is empty
+				return true;
+			}
+			else{
+				return false;
+			}
+		}	
+	}
+		
+	
+	/**
+	 * Return an iterator that walks through the tree using pre-order walk.
+	 * @return an iterator that walks through the tree using pre-order walk.
+	 */
+	public Iterator<E> getPreOrderIterator(){
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new PreOrderIterator();
+	}
+	
+	/**
+	 * This is the implementation of the PreOrderIterator.
+	 */
+	private class PreOrderIterator implements Iterator<E>{
+		
+		private final ProgramStack<Node<E>> stack;
+		
+		/**
+		 * Construct a new PreOrderIterator.
+		 */
+		public PreOrderIterator(){
+			stack = new ProgramStack<>();
+			stack.push(root); //push the root of the tree to the stack
+		}
+		
+		/**
+		 * Test if there are more items in the tree.
+		 * @return true if there are more items in the tree.
+		 */
+		public boolean hasNext(){
+			
+			return !stack.isEmpty();
+		}
+		
+		/**
+		 * Obtain the next item in the tree.
+		 * @return the next item in the tree, return null if no more items in the tree.
+		 */
+		public E next(){
+			
+			if(!hasNext()){
+				return null;
+			}
+							
+			Node<E> nextNode = stack.pop();
+			
+			for(int i = kValue - 1; i >= 0; i--){
+				if(nextNode.child(i) != null){
+					if(nextNode.child(i).data != null){ //don't push null node to the stack
+						stack.push(nextNode.child(i));
+					}
+				}
+			}	
+			return nextNode.data;
+		}
+	}
+	
+	/**
+	 * Return the string representation of the pre-order walk.
+	 * @return the string representation of the pre-order walk.
+	 */
+	public String toStringPreOrder(){
+		
+		long start = (metrics == null) ? 0 : System.nanoTime();
+		
+		StringBuilder s = new StringBuilder();
+		
+		Iterator<E> itr = this.getPreOrderIterator(); 
+		
+		while(itr.hasNext()){
+			s.append(itr.next()); //append values in nodes on the stack to StringBuilder s
+			s.append(" ");
+		}
+		
+		if(metrics != null){
+			metrics.recordOperation(KTreeMetrics.Operation.PRE_ORDER, System.nanoTime() - start);
+		}
+		
+		return s.toString();
+	}
+	
+	/**
+	 * Return an iterator that walks through the tree using post-order walk.
+	 * @return an iterator that walks through the tree using post-order walk.
+	 */
+	public Iterator<E> getPostOrderIterator(){
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new PostOrderIterator();
+	}
+	
+	/**
+	 * This is the implementation of the PostOrderIterator.
+	 */
+	private class PostOrderIterator implements Iterator<E>{
+		
+		private final ProgramStack<Node<E>> stack1;
+		private final ProgramStack<Node<E>> stack2;
+		
+		/**
+		 * Construct a new PostOrderIterator.
+		 */
+		public PostOrderIterator(){
+			stack1 = new ProgramStack<>();
+			stack2 = new ProgramStack<>();
+			stack1.push(root); //push the root of the tree to stack1
+		}
+		
+		/**
+		 * Test if there are more items in the tree.
+		 * @return true if there are more items in the tree.
+		 */
+		public boolean hasNext(){
+			
+			return !stack1.isEmpty();
+		}
+		
+		/**
+		 * Obtain the next item in the tree.
+		 * @return the next item in the tree, return null if no more items in the tree.
+		 */
+		public E next(){
+			
+			if(root == null){
+				return null;
+			}
+			
+			while(hasNext()){
+				
+				Node<E> nextNode = stack1.pop();
+				stack2.push(nextNode);
+				
+				for(int i = 0; i < kValue; i++){
+					if(nextNode.child(i) != null){
+						if(nextNode.child(i).data != null){ //don't push null nodes to the stack1
+							stack1.push(nextNode.child(i));
+						}
+					}
+				}
+			}
+			
+			Node<E> toReturn = stack2.pop();
+				
+			return toReturn.data;
+		}
+	}
+	
+	/**
+	 * Return the string representation of the post-order walk.
+	 * @return the string representation of the post-order walk.
+	 */
+	public String toStringPostOrder(){
+		
+		long start = (metrics == null) ? 0 : System.nanoTime();
+		
+		StringBuilder s = new StringBuilder();
+		
+		Iterator<E> itr = this.getPostOrderIterator();
+		
+		for(int i = 0; i < this.size(); i++){
+			s.append(itr.next()); //append values in nodes in stack2 to the the StringBuilder s
+			s.append(" ");
+		}
+		
+		if(metrics != null){
+			metrics.recordOperation(KTreeMetrics.Operation.POST_ORDER, System.nanoTime() - start);
+		}
+		
+		return s.toString();
+	}
+	
+	/**
+	 * Return an iterator that walks through the tree in level order, skipping every subtree whose root fails a test.
+	 * Children of a skipped node never enter the queue, so the walk only costs the nodes it visits.
+	 * Like the other iterators, nodes without a value are skipped with their subtrees.
+	 * @param filter the test each node has to pass before it or anything below it is visited.
+	 * @return an iterator over the values of the nodes that pass the test and whose ancestors all pass it.
+	 */
+	public Iterator<E> getLevelOrderIterator(NodePredicate<? super E> filter){
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new FilteredLevelOrderIterator(filter);
+	}
+	
+	/**
+	 * Return an iterator that walks through the tree in pre-order, skipping every subtree whose root fails a test.
+	 * Children of a skipped node are never pushed onto the stack.
+	 * @param filter the test each node has to pass before it or anything below it is visited.
+	 * @return an iterator over the values of the nodes that pass the test and whose ancestors all pass it.
+	 */
+	public Iterator<E> getPreOrderIterator(NodePredicate<? super E> filter){
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new FilteredDepthFirstIterator(filter, false, false);
+	}
+	
+	/**
+	 * Return an iterator that walks through the tree in post-order, skipping every subtree whose root fails a test.
+	 * Unlike getPostOrderIterator() the walk is lazy and only keeps the path from the root to the current node.
+	 * @param filter the test each node has to pass before it or anything below it is visited.
+	 * @return an iterator over the values of the nodes that pass the test and whose ancestors all pass it.
+	 */
+	public Iterator<E> getPostOrderIterator(NodePredicate<? super E> filter){
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new FilteredDepthFirstIterator(filter, true, false);
+	}
+	
+	/**
+	 * Return an iterator over the values of the leaves from left to right, the values decode() emits.
+	 * A leaf is a node with a value and no child with a value.
+	 * @return an iterator over the values of the leaves.
+	 */
+	public Iterator<E> getLeafIterator(){
+		
+		return getLeafIterator((index, depth, value) -> true);
+	}
+	
+	/**
+	 * Return an iterator over the values of the leaves from left to right, skipping every subtree whose root fails a test.
+	 * @param filter the test each node has to pass before it or anything below it is visited.
+	 * @return an iterator over the values of the leaves that pass the test and whose ancestors all pass it.
+	 */
+	public Iterator<E> getLeafIterator(NodePredicate<? super E> filter){
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new FilteredDepthFirstIterator(filter, false, true);
+	}
+	
+	/**
+	 * This method supports the filtered iterators.
+	 * @param <E> the type of the values in the tree.
+	 * @param node a node or null.
+	 * @param depth the level of the node.
+	 * @param filter the test of the iterator.
+	 * @return true if the node has a value and passes the test.
+	 */
+	private static <E> boolean accepts(Node<E> node, int depth, NodePredicate<? super E> filter){
+		
+		return node != null && node.data != null && filter.test(node.index, depth, node.data);
+	}
+	
+	/**
+	 * This method supports the getLeafIterator() method.
+	 * @param node a node with a value.
+	 * @return true if no child of the node has a value.
+	 */
+	private boolean isLeafNode(Node<E> node){
+		
+		for(int i = 0; i < node.children.length; i++){
+			if(node.children[i] != null && node.children[i].data != null){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * This is the implementation of the filtered level order iterator.
+	 */
+	private class FilteredLevelOrderIterator implements Iterator<E>{
+		
+		private final NodePredicate<? super E> filter; //the test every visited node passed
+		private final DynamicArray<Node<E>> list; //the nodes that passed the test in level order
+		private int head; //the position in list of the next node
+		private int levelEnd; //the position in list where the level below the next node starts
+		private int depth; //the level of the next node
+		
+		/**
+		 * Construct a new FilteredLevelOrderIterator.
+		 * @param filter the test each node has to pass.
+		 */
+		public FilteredLevelOrderIterator(NodePredicate<? super E> filter){
+			this.filter = filter;
+			this.list = new DynamicArray<>();
+			if(accepts(root, 0, filter)){
+				list.add(root); //add the root of the tree to the queue
+			}
+			this.levelEnd = list.size();
+		}
+		
+		/**
+		 * Test if there are more items in the tree.
+		 * @return true if there are more items in the tree.
+		 */
+		public boolean hasNext(){
+			
+			return head < list.size();
+		}
+		
+		/**
+		 * Obtain the next item in the tree.
+		 * @return the next item in the tree, return null if no more items in the tree.
+		 */
+		public E next(){
+			
+			if(!hasNext()){
+				return null;
+			}
+			
+			if(head == levelEnd){ //every node of the level above has added its children
+				depth++;
+				levelEnd = list.size();
+			}
+			
+			Node<E> nextNode = list.get(head++);
+			
+			for(int i = 0; i < kValue; i++){
+				if(accepts(nextNode.child(i), depth + 1, filter)){ //skipped subtrees never enter the queue
+					list.add(nextNode.child(i));
+				}
+			}
+			return nextNode.data;
+		}
+	}
+	
+	/**
+	 * This is the implementation of the filtered pre-order, post-order and leaf iterators.
+	 * The stacks hold the path from the root to the current node and where each node of the path
+	 * continues with its children.
+	 */
+	private class FilteredDepthFirstIterator implements Iterator<E>{
+		
+		private final NodePredicate<? super E> filter; //the test every visited node passed
+		private final boolean postOrder; //return nodes when they are left instead of entered
+		private final boolean leavesOnly; //only return nodes without children with values
+		private final ProgramStack<Node<E>> path; //the nodes from the root to the current node
+		private final ProgramStack<Integer> cursors; //the next child position of each node on the path
+		private Node<E> nextNode; //the node next() returns, null when there are no more
+		
+		/**
+		 * Construct a new FilteredDepthFirstIterator.
+		 * @param filter the test each node has to pass.
+		 * @param postOrder true to return nodes in post-order, false for pre-order.
+		 * @param leavesOnly true to only return the leaves.
+		 */
+		public FilteredDepthFirstIterator(NodePredicate<? super E> filter, boolean postOrder, boolean leavesOnly){
+			this.filter = filter;
+			this.postOrder = postOrder;
+			this.leavesOnly = leavesOnly;
+			this.path = new ProgramStack<>();
+			this.cursors = new ProgramStack<>();
+			if(accepts(root, 0, filter)){
+				enter(root);
+			}
+			if(nextNode == null){
+				advance();
+			}
+		}
+		
+		/**
+		 * Construct a new FilteredDepthFirstIterator that visits every value and starts at a location,
+		 * as if the walk had just reached it.
+		 * @param postOrder true to return nodes in post-order, false for pre-order.
+		 * @param start the location index of the first value, -1 for an empty iterator.
+		 */
+		public FilteredDepthFirstIterator(boolean postOrder, int start){
+			this.filter = (index, depth, value) -> true;
+			this.postOrder = postOrder;
+			this.leavesOnly = false;
+			this.path = new ProgramStack<>();
+			this.cursors = new ProgramStack<>();
+			if(start >= 0){
+				int[] indices = ancestors(start);
+				Node<E>[] nodes = nodesOn(indices);
+				for(int t = 0; t < indices.length - 1; t++){
+					path.push(nodes[t]);
+					cursors.push((indices[t + 1] - 1) % kValue + 1); //continue after the path
+				}
+				path.push(nodes[indices.length - 1]);
+				cursors.push(postOrder ? kValue : 0); //in post-order its children are done
+				if(postOrder){
+					advance();
+				}
+				else{
+					nextNode = nodes[indices.length - 1];
+				}
+			}
+		}
+		
+		/**
+		 * Push a node onto the path, it is the next node in pre-order.
+		 * @param node the node.
+		 */
+		private void enter(Node<E> node){
+			
+			path.push(node);
+			cursors.push(0);
+			if(!postOrder && (!leavesOnly || isLeafNode(node))){
+				nextNode = node;
+			}
+		}
+		
+		/**
+		 * Move along the path until the next node to return is found.
+		 */
+		private void advance(){
+			
+			nextNode = null;
+			while(nextNode == null && !path.isEmpty()){
+				Node<E> top = path.peek();
+				int c = cursors.pop();
+				while(c < kValue && !accepts(top.child(c), path.size(), filter)){
+					c++; //a skipped subtree is never pushed
+				}
+				if(c < kValue){
+					cursors.push(c + 1); //continue after this child later
+					enter(top.child(c));
+				}
+				else{
+					path.pop(); //every child is done
+					if(postOrder){
+						nextNode = top;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Test if there are more items in the tree.
+		 * @return true if there are more items in the tree.
+		 */
+		public boolean hasNext(){
+			
+			return nextNode != null;
+		}
+		
+		/**
+		 * Obtain the next item in the tree.
+		 * @return the next item in the tree, return null if no more items in the tree.
+		 */
+		public E next(){
+			
+			if(!hasNext()){
+				return null;
+			}
+			
+			E toReturn = nextNode.data;
+			advance();
+			return toReturn;
+		}
+	}
+	
+	/**
+	 * Walk the tree once depth first, calling enter() in pre-order and exit() in post-order.
+	 * Like the iterators, the root is always visited and nodes below a node without a value are skipped.
+	 * @param visitor the callbacks of the walk.
+	 */
+	public void walk(TreeVisitor<? super E> visitor){
+		
+		if(this.root != null){
+			visit(this.root, 0, 0, visitor, null);
+		}
+	}
+	
+	/**
+	 * Walk the tree once depth first like walk(), also collecting the values of each level.
+	 * The levels in order list the values in the same order as the level-order iterator.
+	 * @param visitor the callbacks of the walk, or null to only collect the levels.
+	 * @return the values of each level, the list at index d holds level d from left to right.
+	 */
+	public List<List<E>> walkLevels(TreeVisitor<? super E> visitor){
+		
+		List<List<E>> levels = new ArrayList<>();
+		
+		if(this.root != null){
+			visit(this.root, 0, 0, visitor, levels);
+		}
+		
+		return levels;
+	}
+	
+	/**
+	 * This method supports the walk() and walkLevels() methods.
+	 * @param root the root of the subtree.
+	 * @param index the level-order location index of the root.
+	 * @param depth the level of the root.
+	 * @param visitor the callbacks of the walk, or null.
+	 * @param levels the values of each level, or null if levels are not collected.
+	 */
+	private void visit(Node<E> root, int index, int depth, TreeVisitor<? super E> visitor, List<List<E>> levels){
+		
+		if(visitor != null){
+			visitor.enter(index, root.data, depth);
+		}
+		
+		if(levels != null){
+			if(levels.size() == depth){
+				levels.add(new ArrayList<E>());
+			}
+			levels.get(depth).add(root.data);
+		}
+		
+		for(int i = 0, j = 1; i < kValue; i++, j++){
+			if(root.child(i) != null && root.child(i).data != null){ //skip null nodes like the iterators
+				visit(root.child(i), kValue * index + j, depth + 1, visitor, levels); //using k * index + c-th child of the node
+			}
+		}
+		
+		if(visitor != null){
+			visitor.exit(index, root.data, depth);
+		}
+	}
+	
+	/**
+	 * Return the level-order, pre-order and post-order walks from a single pass over the tree.
+	 * @return the same strings as toStringLevelOrder(), toStringPreOrder() and toStringPostOrder(), in that order.
+	 */
+	public String[] toStringOrders(){
+		
+		StringBuilder pre = new StringBuilder();
+		StringBuilder post = new StringBuilder();
+		
+		List<List<E>> levels = walkLevels(new TreeVisitor<E>(){
+			public void enter(int index, E value, int depth){
+				pre.append(value); //append values in pre-order to the StringBuilder pre
+				pre.append(" ");
+			}
+			
+			public void exit(int index, E value, int depth){
+				post.append(value); //append values in post-order to the StringBuilder post
+				post.append(" ");
+			}
+		});
+		
+		StringBuilder level = new StringBuilder();
+		for(List<E> values : levels){
+			for(E value : values){
+				level.append(value); //append values level by level to the StringBuilder level
+				level.append(" ");
+			}
+		}
+		
+		return new String[]{level.toString(), pre.toString(), post.toString()};
+	}
+	
+	/**
+	 * Subtrees with room for fewer slots than this are aggregated on one thread.
+	 */
+	private static final long AGGREGATE_THRESHOLD = 1 << 14;
+	
+	/**
+	 * Compute an aggregate for every node bottom-up on the common fork-join pool, see aggregate(leafFn, combineFn, pool).
+	 * @param leafFn the aggregate of a node from its own value, the whole aggregate of a leaf.
+	 * @param combineFn folds the aggregate of each child into the aggregate of its parent, children from left to right.
+	 * @return the aggregate of every node by level-order location index, slotCount(0, height()) long.
+	 */
+	public long[] aggregate(ToLongFunction<? super E> leafFn, LongBinaryOperator combineFn){
+		
+		return aggregate(leafFn, combineFn, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Compute an aggregate for every node bottom-up. The aggregate of a node starts as leafFn of its value
+	 * and combineFn then folds in the aggregate of each child in order, so v -> 1 with Long::sum gives
+	 * the subtree sizes and v -> 0 with (a, c) -> Math.max(a, c + 1) the subtree heights.
+	 * Subtrees with room for at least AGGREGATE_THRESHOLD slots are split into one task per child,
+	 * smaller ones are folded by a single recursive walk. Like the iterators, nodes below a node
+	 * without a value are skipped. The functions must not change the tree.
+	 * @param leafFn the aggregate of a node from its own value, the whole aggregate of a leaf.
+	 * @param combineFn folds the aggregate of each child into the aggregate of its parent, children from left to right.
+	 * @param pool the fork-join pool that runs the tasks.
+	 * @return the aggregate of every node by level-order location index, 0 at slots without a value,
+	 * slotCount(0, height()) long.
+	 */
+	public long[] aggregate(ToLongFunction<? super E> leafFn, LongBinaryOperator combineFn, ForkJoinPool pool){
+		
+		long[] result = new long[slotCount(0, this.height())];
+		
+		if(this.root != null && this.root.data != null){
+			int splitDepth = 0; //the first level whose subtrees are folded on one thread
+			while(splitDepth <= this.height() && firstIndex(this.height() - splitDepth + 1) >= AGGREGATE_THRESHOLD){
+				splitDepth++;
+			}
+			pool.invoke(new AggregateTask(this.root, 0, 0, splitDepth, leafFn, combineFn, result));
+		}
+		return result;
+	}
+	
+	/**
+	 * This method supports the aggregate() method, it folds a subtree on the current thread.
+	 * @param root the root of the subtree, it holds a value.
+	 * @param index the level-order location index of the root.
+	 * @param leafFn the aggregate of a node from its own value.
+	 * @param combineFn folds the aggregate of a child into the aggregate of its parent.
+	 * @param result the aggregates by location index.
+	 * @return the aggregate of the root.
+	 */
+	private long fold(Node<E> root, int index, ToLongFunction<? super E> leafFn, LongBinaryOperator combineFn, long[] result){
+		
+		long aggregate = leafFn.applyAsLong(root.data);
+		for(int c = 0, j = 1; c < kValue; c++, j++){
+			Node<E> child = root.child(c);
+			if(child != null && child.data != null){ //skip the null nodes like the iterators
+				aggregate = combineFn.applyAsLong(aggregate, fold(child, kValue * index + j, leafFn, combineFn, result)); //using k * index + c-th child of the node
+			}
+		}
+		result[index] = aggregate;
+		return aggregate;
+	}
+	
+	/**
+	 * This is the fork-join task of the aggregate() method, one per subtree above the split level.
+	 */
+	private class AggregateTask extends RecursiveAction{
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Node<E> node; //the root of the subtree
+		private final int index; //the level-order location index of the root
+		private final int depth; //the level of the root
+		private final int splitDepth; //the first level that is folded on one thread
+		private final ToLongFunction<? super E> leafFn; //the aggregate of a node from its own value
+		private final LongBinaryOperator combineFn; //folds the aggregate of a child into its parent
+		private final long[] result; //the aggregates by location index
+		
+		/**
+		 * Construct a new AggregateTask.
+		 * @param node the root of the subtree, it holds a value.
+		 * @param index the level-order location index of the root.
+		 * @param depth the level of the root.
+		 * @param splitDepth the first level that is folded on one thread.
+		 * @param leafFn the aggregate of a node from its own value.
+		 * @param combineFn folds the aggregate of a child into the aggregate of its parent.
+		 * @param result the aggregates by location index.
+		 */
+		public AggregateTask(Node<E> node, int index, int depth, int splitDepth, ToLongFunction<? super E> leafFn,
+				LongBinaryOperator combineFn, long[] result){
+			this.node = node;
+			this.index = index;
+			this.depth = depth;
+			this.splitDepth = splitDepth;
+			this.leafFn = leafFn;
+			this.combineFn = combineFn;
+			this.result = result;
+		}
+		
+		/**
+		 * Fold the subtree, splitting it into one task per child while it is large.
+		 */
+		protected void compute(){
+			
+			if(depth >= splitDepth){
+				fold(node, index, leafFn, combineFn, result);
+				return;
+			}
+			
+			ArrayList<AggregateTask> tasks = new ArrayList<>(kValue);
+			for(int c = 0, j = 1; c < kValue; c++, j++){
+				Node<E> child = node.child(c);
+				if(child != null && child.data != null){
+					tasks.add(new AggregateTask(child, kValue * index + j, depth + 1, splitDepth, leafFn, combineFn, result));
+				}
+			}
+			invokeAll(tasks);
+			
+			long aggregate = leafFn.applyAsLong(node.data);
+			for(AggregateTask task : tasks){ //children in order, whichever finished first
+				aggregate = combineFn.applyAsLong(aggregate, result[task.index]);
+			}
+			result[index] = aggregate;
+		}
+	}
+	
+	/**
+	 * Turn on subtree counts, which the select and rank methods and the iterators that start at a rank read.
+	 * Ranks count the values the iterators reach, the nodes with values below a root with a value.
+	 * Every set(), prune() and graft() afterwards recounts the path from the root to the change in O(height^2 * k).
+	 * The tree keeps a HashMap entry and an int array of 2 + height of the subtree ints for every such node.
+	 */
+	public void enableSubtreeCounts(){
+		
+		this.subtreeCounts = new HashMap<>();
+		if(this.root != null && this.root.data != null){
+			countSubtree(this.root, 0);
+		}
+	}
+	
+	/**
+	 * Turn off subtree counts and release them.
+	 */
+	public void disableSubtreeCounts(){
+		
+		this.subtreeCounts = null;
+	}
+	
+	/**
+	 * Test if subtree counts are turned on.
+	 * @return true if enableSubtreeCounts() was called and disableSubtreeCounts() was not called since.
+	 */
+	public boolean isCountingSubtrees(){
+		
+		return subtreeCounts != null;
+	}
+	
+	/**
+	 * This method supports the enableSubtreeCounts() and graft() methods, it counts a subtree bottom-up.
+	 * @param root the root of the subtree, it holds a value.
+	 * @param index the level-order location index of the root.
+	 */
+	private void countSubtree(Node<E> root, int index){
+		
+		for(int c = 0, j = 1; c < kValue; c++, j++){
+			if(root.child(c) != null && root.child(c).data != null){ //only what the iterators reach
+				countSubtree(root.child(c), kValue * index + j);
+			}
+		}
+		subtreeCounts.put(index, countsOf(root, index));
+	}
+	
+	/**
+	 * This method supports the changed() method, it recounts the subtrees from a changed node up to the root.
+	 * @param i the level-order location index that changed.
+	 */
+	private void recountPath(int i){
+		
+		int[] indices = ancestors(i);
+		Node<E>[] path = nodesOn(indices);
+		
+		for(int t = indices.length - 1; t >= 0; t--){ //from the node up to the root
+			if(path[t].data == null){
+				subtreeCounts.remove(indices[t]); //the iterators stop here
+			}
+			else{
+				subtreeCounts.put(indices[t], countsOf(path[t], indices[t]));
+			}
+		}
+	}
+	
+	/**
+	 * Combine the counts of the children of a node into the counts of its subtree.
+	 * @param node the node, it holds a value.
+	 * @param index the level-order location index of the node.
+	 * @return the size of the subtree, then the number of values on each level of the subtree from the node down.
+	 */
+	private int[] countsOf(Node<E> node, int index){
+		
+		int[] counts = { 1, 1 };
+		for(int c = 0, j = 1; c < kValue; c++, j++){
+			int[] child = (node.child(c) == null || node.child(c).data == null) ? null : subtreeCounts.get(kValue * index + j);
+			if(child != null){
+				if(child.length + 1 > counts.length){
+					counts = Arrays.copyOf(counts, child.length + 1);
+				}
+				counts[0] += child[0];
+				for(int t = 1; t < child.length; t++){
+					counts[t + 1] += child[t]; //one level further down from the node
+				}
+			}
+		}
+		return counts;
+	}
+	
+	/**
+	 * Return the subtree counts of a location index.
+	 * @param i the level-order location index.
+	 * @return the counts, or null if the iterators do not reach a value there.
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	private int[] countsAt(int i){
+		
+		if(subtreeCounts == null){
+			throw new IllegalStateException("Subtree counts are turned off, see enableSubtreeCounts()");
+		}
+		return subtreeCounts.get(i);
+	}
+	
+	/**
+	 * Return the number of values on a level of the subtree at a location index.
+	 * @param i the level-order location index of the root of the subtree.
+	 * @param level the level below the root, 0 for the root itself.
+	 * @return the number of values the iterators reach on that level.
+	 */
+	private int countOnLevel(int i, int level){
+		
+		int[] counts = subtreeCounts.get(i);
+		return (counts == null || level + 1 >= counts.length) ? 0 : counts[level + 1];
+	}
+	
+	/**
+	 * Return the number of values the iterators reach, the ranks go from 0 to one less.
+	 * @return the number of ranked values.
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public int rankedSize(){
+		
+		int[] counts = countsAt(0);
+		return (counts == null) ? 0 : counts[0];
+	}
+	
+	/**
+	 * Return the location of the value at a rank of the pre-order walk, in O(height * k).
+	 * @param r the rank, 0 for the root.
+	 * @return the level-order location index of the r-th value of the pre-order walk.
+	 * @throws IndexOutOfBoundsException if r is negative or not less than rankedSize().
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public int selectPreOrder(int r){
+		
+		Objects.checkIndex(r, rankedSize());
+		
+		int index = 0;
+		while(r > 0){
+			r--; //past the node itself
+			for(int c = 0, j = 1; c < kValue; c++, j++){
+				int[] child = subtreeCounts.get(kValue * index + j);
+				if(child != null){
+					if(r < child[0]){
+						index = kValue * index + j; //the rank is in this subtree
+						break;
+					}
+					r -= child[0];
+				}
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Return the location of the value at a rank of the post-order walk, in O(height * k).
+	 * @param r the rank, 0 for the leftmost leaf.
+	 * @return the level-order location index of the r-th value of the post-order walk.
+	 * @throws IndexOutOfBoundsException if r is negative or not less than rankedSize().
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public int selectPostOrder(int r){
+		
+		Objects.checkIndex(r, rankedSize());
+		
+		int index = 0;
+		boolean descended = true;
+		while(descended){
+			descended = false;
+			for(int c = 0, j = 1; c < kValue; c++, j++){
+				int[] child = subtreeCounts.get(kValue * index + j);
+				if(child != null){
+					if(r < child[0]){
+						index = kValue * index + j; //the rank is in this subtree
+						descended = true;
+						break;
+					}
+					r -= child[0];
+				}
+			}
+		}
+		return index; //the children came first, r is now 0
+	}
+	
+	/**
+	 * Return the location of the value at a rank of the level order walk, in O(height * k).
+	 * @param r the rank, 0 for the root.
+	 * @return the level-order location index of the r-th value of the level order walk.
+	 * @throws IndexOutOfBoundsException if r is negative or not less than rankedSize().
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public int selectLevelOrder(int r){
+		
+		Objects.checkIndex(r, rankedSize());
+		
+		int[] counts = subtreeCounts.get(0);
+		int level = 0;
+		while(r >= counts[level + 1]){
+			r -= counts[level + 1]; //skip the whole level
+			level++;
+		}
+		
+		int index = 0;
+		for(int t = 0; t < level; t++){
+			for(int c = 0, j = 1; c < kValue; c++, j++){
+				int below = countOnLevel(kValue * index + j, level - t - 1); //values of the level in the child's subtree
+				if(r < below){
+					index = kValue * index + j;
+					break;
+				}
+				r -= below;
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Return the rank of a location in the pre-order walk, the inverse of selectPreOrder(), in O(height * k).
+	 * @param i the level-order location index.
+	 * @return the number of values the pre-order walk returns before the one at i.
+	 * @throws IllegalArgumentException if the iterators do not reach a value at i.
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public int rankPreOrder(int i){
+		
+		int[] indices = rankedPath(i);
+		int rank = 0;
+		for(int t = 0; t < indices.length - 1; t++){
+			rank++; //the ancestor comes first
+			for(int j = kValue * indices[t] + 1; j < indices[t + 1]; j++){
+				int[] sibling = subtreeCounts.get(j);
+				rank += (sibling == null) ? 0 : sibling[0]; //subtrees left of the path
+			}
+		}
+		return rank;
+	}
+	
+	/**
+	 * Return the rank of a location in the post-order walk, the inverse of selectPostOrder(), in O(height * k).
+	 * @param i the level-order location index.
+	 * @return the number of values the post-order walk returns before the one at i.
+	 * @throws IllegalArgumentException if the iterators do not reach a value at i.
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public int rankPostOrder(int i){
+		
+		int[] indices = rankedPath(i);
+		int rank = subtreeCounts.get(i)[0] - 1; //the subtree of i comes first
+		for(int t = 0; t < indices.length - 1; t++){
+			for(int j = kValue * indices[t] + 1; j < indices[t + 1]; j++){
+				int[] sibling = subtreeCounts.get(j);
+				rank += (sibling == null) ? 0 : sibling[0]; //subtrees left of the path
+			}
+		}
+		return rank;
+	}
+	
+	/**
+	 * Return the rank of a location in the level order walk, the inverse of selectLevelOrder(), in O(height * k).
+	 * @param i the level-order location index.
+	 * @return the number of values the level order walk returns before the one at i.
+	 * @throws IllegalArgumentException if the iterators do not reach a value at i.
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public int rankLevelOrder(int i){
+		
+		int[] indices = rankedPath(i);
+		int level = indices.length - 1;
+		int rank = 0;
+		for(int t = 0; t < level; t++){
+			rank += countOnLevel(0, t); //the levels above
+			for(int j = kValue * indices[t] + 1; j < indices[t + 1]; j++){
+				rank += countOnLevel(j, level - t - 1); //the level left of the path
+			}
+		}
+		return rank;
+	}
+	
+	/**
+	 * This method supports the rank methods.
+	 * @param i the level-order location index.
+	 * @return the location indices from the root down to i.
+	 * @throws IllegalArgumentException if the iterators do not reach a value at i.
+	 */
+	private int[] rankedPath(int i){
+		
+		checkIndex(i);
+		countsAt(0); //check that counting is turned on
+		
+		int[] indices = ancestors(i);
+		Node<E> current = root;
+		for(int t = 0; t < indices.length && current != null && current.data != null; t++){
+			if(t == indices.length - 1){
+				return indices;
+			}
+			current = current.child((indices[t + 1] - 1) % kValue);
+		}
+		throw new IllegalArgumentException("No ranked value at index " + i);
+	}
+	
+	/**
+	 * Return an iterator that walks through the tree in pre-order starting at a rank, without walking the values before it.
+	 * @param fromRank the rank of the first value, 0 to rankedSize().
+	 * @return an iterator over the values of the pre-order walk from that rank on.
+	 * @throws IndexOutOfBoundsException if fromRank is negative or more than rankedSize().
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public Iterator<E> getPreOrderIterator(int fromRank){
+		
+		Objects.checkIndex(fromRank, rankedSize() + 1);
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new FilteredDepthFirstIterator(false, (fromRank == rankedSize()) ? -1 : selectPreOrder(fromRank));
+	}
+	
+	/**
+	 * Return an iterator that walks through the tree in post-order starting at a rank, without walking the values before it.
+	 * @param fromRank the rank of the first value, 0 to rankedSize().
+	 * @return an iterator over the values of the post-order walk from that rank on.
+	 * @throws IndexOutOfBoundsException if fromRank is negative or more than rankedSize().
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public Iterator<E> getPostOrderIterator(int fromRank){
+		
+		Objects.checkIndex(fromRank, rankedSize() + 1);
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new FilteredDepthFirstIterator(true, (fromRank == rankedSize()) ? -1 : selectPostOrder(fromRank));
+	}
+	
+	/**
+	 * Return an iterator that walks through the tree in level order starting at a rank, without walking the values before it.
+	 * It keeps only one path of the tree and uses the subtree counts to skip subtrees without values on the current level.
+	 * @param fromRank the rank of the first value, 0 to rankedSize().
+	 * @return an iterator over the values of the level order walk from that rank on.
+	 * @throws IndexOutOfBoundsException if fromRank is negative or more than rankedSize().
+	 * @throws IllegalStateException if subtree counts are turned off.
+	 */
+	public Iterator<E> getLevelOrderIterator(int fromRank){
+		
+		Objects.checkIndex(fromRank, rankedSize() + 1);
+		
+		if(metrics != null){
+			metrics.recordIterator();
+		}
+		
+		return new RankedLevelOrderIterator((fromRank == rankedSize()) ? -1 : selectLevelOrder(fromRank));
+	}
+	
+	/**
+	 * This is the implementation of the level order iterator that starts at a rank.
+	 * It walks down to each value of a level in turn, then starts the next level at the root.
+	 */
+	private class RankedLevelOrderIterator implements Iterator<E>{
+		
+		private final Node<E>[] path; //the nodes from the root to the current node
+		private final int[] indices; //the location index of each node on the path
+		private final int[] cursors; //the next child position of each node on the path
+		private int level; //the level being walked
+		private Node<E> nextNode; //the node next() returns, null when there are no more
+		
+		/**
+		 * Construct a new RankedLevelOrderIterator.
+		 * @param start the location index of the first value, -1 for an empty iterator.
+		 */
+		@SuppressWarnings("unchecked")
+		public RankedLevelOrderIterator(int start){
+			int levels = height() + 1;
+			this.path = (Node<E>[])new Node<?>[levels];
+			this.indices = new int[levels];
+			this.cursors = new int[levels];
+			if(start >= 0){
+				int[] ancestors = ancestors(start);
+				Node<E>[] nodes = nodesOn(ancestors);
+				for(int t = 0; t < ancestors.length; t++){
+					path[t] = nodes[t];
+					indices[t] = ancestors[t];
+					cursors[t] = (t + 1 < ancestors.length) ? (ancestors[t + 1] - 1) % kValue + 1 : 0; //continue after the path
+				}
+				this.level = ancestors.length - 1;
+				this.nextNode = nodes[level];
+			}
+		}
+		
+		/**
+		 * Move to the next value of the level, or to the first value of the next level.
+		 */
+		private void advance(){
+			
+			int top = level - 1; //the parent of the node just returned
+			while(true){
+				while(top >= 0){
+					int c = cursors[top];
+					while(c < kValue && countOnLevel(kValue * indices[top] + c + 1, level - top - 1) == 0){
+						c++; //no values of the level in this subtree
+					}
+					if(c == kValue){
+						top--; //every child is done
+						continue;
+					}
+					cursors[top] = c + 1;
+					path[top + 1] = path[top].child(c);
+					indices[top + 1] = kValue * indices[top] + c + 1;
+					cursors[top + 1] = 0;
+					top++;
+					if(top == level){
+						nextNode = path[top];
+						return;
+					}
+				}
+				
+				level++; //start the next level from the root
+				if(countOnLevel(0, level) == 0){
+					nextNode = null;
+					return;
+				}
+				cursors[0] = 0;
+				top = 0;
+			}
+		}
+		
+		/**
+		 * Test if there are more items in the tree.
+		 * @return true if there are more items in the tree.
+		 */
+		public boolean hasNext(){
+			
+			return nextNode != null;
+		}
+		
+		/**
+		 * Obtain the next item in the tree.
+		 * @return the next item in the tree, return null if no more items in the tree.
+		 */
+		public E next(){
+			
+			if(!hasNext()){
+				return null;
+			}
+			
+			E toReturn = nextNode.data;
+			advance();
+			return toReturn;
+		}
+	}
+	
+	/**
+	 * Receive a decoding tree and an encoded string, then decode the string to get the secret message.
+	 * The value of the leaves will be used to decode the string, the values at internal nodes are ignored.
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded string with the secret message.
+	 * @return the decoded string with the secret message.
+	 */
+	public static String decode(KTree<String> tree, String codedMessage){
+				
+		if(tree.root == null){ //check null root
+			return null;
+		}
+		
+		DecodeCache cache = tree.decodeCache;
+		
+		if(cache != null){
+			long generation = cache.getGeneration(); //before the walk, a change during it drops the result
+			String cached = cache.get(codedMessage);
+			if(cached == null){
+				cached = decodeMessage(tree, codedMessage);
+				cache.put(codedMessage, cached, generation);
+			}
+			return cached;
+		}
+		
+		return decodeMessage(tree, codedMessage);
+	}
+	
+	/**
+	 * This method supports the decode() method, it walks the tree for every instruction.
+	 * @param tree the decoding tree, its root is not null.
+	 * @param codedMessage the encoded string with the secret message.
+	 * @return the decoded string with the secret message.
+	 */
+	private static String decodeMessage(KTree<String> tree, String codedMessage){
+		
+		if(tree.metrics != null){
+			return decodeCounted(tree, codedMessage);
+		}
+		
+		Node<String> current = tree.root;
+				
+		StringBuilder decodedMessage = new StringBuilder();
+		
+		char character = '\0';
+		int number = 0;
+		
+		for(int i = 0; i < codedMessage.length(); i++){ //loop based on the length of the codedMessage
+			
+			character = codedMessage.charAt(i); //get each instruction
+			number = Character.getNumericValue(character);
+			
+			if(number >= tree.kValue && number <= 9){
+				throw new ArrayIndexOutOfBoundsException(number); //the instruction is not a child of any node
+			}
+			
+			switch(number){
+				case 0:
+					current = getEachLetter(current, decodedMessage, tree.root, 0);
+					break;
+				case 1:
+					current = getEachLetter(current, decodedMessage, tree.root, 1);
+					break;
+				case 2:
+					current = getEachLetter(current, decodedMessage, tree.root, 2);
+					break;
+				case 3:
+					current = getEachLetter(current, decodedMessage, tree.root, 3);
+					break;
+				case 4:
+					current = getEachLetter(current, decodedMessage, tree.root, 4);
+					break;
+				case 5:
+					current = getEachLetter(current, decodedMessage, tree.root, 5);
+					break;
+				case 6:
+					current = getEachLetter(current, decodedMessage, tree.root, 6);
+					break;
+				case 7:
+					current = getEachLetter(current, decodedMessage, tree.root, 7);
+					break;
+				case 8:
+					current = getEachLetter(current, decodedMessage, tree.root, 8);
+					break;
+				case 9:
+					current = getEachLetter(current, decodedMessage, tree.root, 9);
+					break;
+			}
+		}
+		
+		return decodedMessage.toString();
+	}
+	
+	/**
+	 * This method supports the decode() method when metrics are turned on.
+	 * It walks the tree exactly like decode() while counting instructions, leaves and resets.
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded string with the secret message.
+	 * @return the decoded string with the secret message.
+	 */
+	private static String decodeCounted(KTree<String> tree, String codedMessage){
+		
+		long start = System.nanoTime();
+		
+		Node<String> current = tree.root;
+		
+		StringBuilder decodedMessage = new StringBuilder();
+		
+		int symbols = 0;
+		int leaves = 0;
+		int resets = 0;
+		
+		for(int i = 0; i < codedMessage.length(); i++){
+			
+			int number = Character.getNumericValue(codedMessage.charAt(i));
+			
+			if(number < 0 || number > 9){ //decode() ignores anything that is not a digit
+				continue;
+			}
+			
+			if(number >= tree.kValue){
+				throw new ArrayIndexOutOfBoundsException(number); //the instruction is not a child of any node
+			}
+			
+			symbols++;
+			
+			if(current.child(number) == null || current.child(number).data == null){
+				resets++; //getEachLetter() will reset back to the root
+			}
+			
+			Node<String> next = getEachLetter(current, decodedMessage, tree.root, number);
+			
+			if(next == tree.root && current.child(number) != null && current.child(number).data != null){
+				leaves++; //a valid move that ends at the root emitted a leaf
+			}
+			current = next;
+		}
+		
+		tree.metrics.recordDecode(symbols, leaves, resets);
+		tree.metrics.recordOperation(KTreeMetrics.Operation.DECODE, System.nanoTime() - start);
+		
+		return decodedMessage.toString();
+	}
+	
+	/**
+	 * This method supports the decode() method.
+	 * @param current the current node during the decoding period.
+	 * @param decodedMessage the decoded string with the secret message.
+	 * @param root the root of the tree.
+	 * @param number the instruction.
+	 * @return the current node during the decoding period, reset back to root if encounters a leaf.
+	 */
+	private static Node<String> getEachLetter(Node<String> current, StringBuilder decodedMessage, Node<String> root, int number){
+						
+		if(current.child(number) == null || current.child(number).data == null){
+			current = root; //reset back to the root if the instruction is wrong
+		}
+		else{
+			
+			current = current.child(number);
+			for(int i = 0; i < current.children.length; i++){ //check to see if the current node is a leaf
+				if(current.child(i) != null){
+					if(current.child(i).data != null){
+						return current; //return the current node if it is not a leaf
+					}
+				}
+			}
+			decodedMessage.append(current.data); //append the value to the decodedMessage if the node is a leaf
+			current = root; //reset back to the root
+		}
+		return current;
+	}
+	
+	/**
+	 * Decode a message written in an instruction alphabet, for trees with more than 10 children per node.
+	 * Leaves and resets work like decode(): characters outside the alphabet are ignored,
+	 * and an instruction of k or more is not a child of any node and throws.
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded message.
+	 * @param alphabet the instruction alphabet, for example SymbolAlphabet.forK(tree.getK()).
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k, like decode().
+	 */
+	public static String decode(KTree<String> tree, CharSequence codedMessage, SymbolAlphabet alphabet){
+		
+		if(tree.root == null){ //check null root
+			return null;
+		}
+		
+		Node<String> current = tree.root;
+		
+		StringBuilder decodedMessage = new StringBuilder();
+		
+		int k = tree.getK();
+		
+		for(int i = 0; i < codedMessage.length(); i++){
+			
+			int number = alphabet.digit(codedMessage.charAt(i)); //table lookup of each instruction
+			
+			if(number < 0){
+				continue; //not an instruction
+			}
+			
+			if(number >= k){
+				throw new ArrayIndexOutOfBoundsException(number); //the instruction is not a child of any node
+			}
+			current = getEachLetter(current, decodedMessage, tree.root, number);
+		}
+		
+		return decodedMessage.toString();
+	}
+	
+	/**
+	 * Decode a message where every byte is one instruction, for trees with up to 256 children per node.
+	 * Leaves and resets work like decode(), a byte of k or more is not a child of any node and throws.
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded bytes, read as unsigned values 0-255.
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws ArrayIndexOutOfBoundsException if a byte is not less than k, like decode().
+	 */
+	public static String decodeBytes(KTree<String> tree, byte[] codedMessage){
+		
+		return decodeBytes(tree, codedMessage, 0, codedMessage.length);
+	}
+	
+	/**
+	 * Decode part of a byte array where every byte is one instruction, see decodeBytes(KTree, byte[]).
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded bytes, read as unsigned values 0-255.
+	 * @param offset the index of the first instruction.
+	 * @param length the number of instructions.
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws ArrayIndexOutOfBoundsException if a byte is not less than k, like decode().
+	 */
+	public static String decodeBytes(KTree<String> tree, byte[] codedMessage, int offset, int length){
+		
+		if(tree.root == null){ //check null root
+			return null;
+		}
+		
+		Node<String> current = tree.root;
+		
+		StringBuilder decodedMessage = new StringBuilder();
+		
+		int k = tree.getK();
+		
+		for(int i = offset; i < offset + length; i++){
+			
+			int number = codedMessage[i] & 0xFF;
+			
+			if(number >= k){
+				throw new ArrayIndexOutOfBoundsException(number); //the instruction is not a child of any node
+			}
+			current = getEachLetter(current, decodedMessage, tree.root, number);
+		}
+		
+		return decodedMessage.toString();
+	}
+	
+	/**
+	 * Instructions decodeDigits() translates in one call to DigitTranslator.
+	 */
+	private static final int DIGIT_BLOCK = 8192;
+	
+	/**
+	 * Decode a message of ASCII digits, the same message decode() reads as a String.
+	 * The digits are checked and translated into child indices 8 at a time by DigitTranslator
+	 * before the tree walk, instead of one Character.getNumericValue() call per instruction.
+	 * Bytes that are not digits are ignored like decode() ignores them.
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded digits.
+	 * @param offset the index of the first instruction.
+	 * @param length the number of bytes to decode.
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws ArrayIndexOutOfBoundsException if a digit is not less than k, like decode().
+	 */
+	public static String decodeDigits(KTree<String> tree, byte[] codedMessage, int offset, int length){
+		
+		if(tree.root == null){ //check null root
+			return null;
+		}
+		
+		Node<String> current = tree.root;
+		
+		StringBuilder decodedMessage = new StringBuilder();
+		
+		byte[] numbers = new byte[Math.min(length, DIGIT_BLOCK)];
+		
+		int end = offset + length;
+		
+		for(int i = offset; i < end;){
+			
+			int block = Math.min(end - i, numbers.length);
+			int count = DigitTranslator.translate(codedMessage, i, numbers, 0, block, tree.kValue);
+			
+			for(int n = 0; n < count; n++){
+				current = getEachLetter(current, decodedMessage, tree.root, numbers[n]);
+			}
+			i += count;
+			
+			if(count < block){ //the translation stopped at a byte that is not a digit less than k
+				if(codedMessage[i] >= '0' && codedMessage[i] <= '9'){
+					throw new ArrayIndexOutOfBoundsException(codedMessage[i] - '0'); //the instruction is not a child of any node
+				}
+				i++;
+			}
+		}
+		
+		return decodedMessage.toString();
+	}
+	
+	/**
+	 * Decode a message of digit characters through DigitTranslator, with the same result as decode()
+	 * but without the cache and metrics. '0' to '9' are translated with one compare per character,
+	 * only the other characters go through Character.getNumericValue().
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded string with the secret message.
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws ArrayIndexOutOfBoundsException if a digit is not less than k, like decode().
+	 */
+	public static String decodeDigits(KTree<String> tree, CharSequence codedMessage){
+		
+		if(tree.root == null){ //check null root
+			return null;
+		}
+		
+		Node<String> current = tree.root;
+		
+		StringBuilder decodedMessage = new StringBuilder();
+		
+		byte[] numbers = new byte[Math.min(codedMessage.length(), DIGIT_BLOCK)];
+		
+		int end = codedMessage.length();
+		
+		for(int i = 0; i < end;){
+			
+			int block = Math.min(end - i, numbers.length);
+			int count = DigitTranslator.translate(codedMessage, i, numbers, 0, block, tree.kValue);
+			
+			for(int n = 0; n < count; n++){
+				current = getEachLetter(current, decodedMessage, tree.root, numbers[n]);
+			}
+			i += count;
+			
+			if(count < block){ //the translation stopped at a character that is not a digit less than k
+				char character = codedMessage.charAt(i++);
+				if(DigitTranslator.isOutOfRange(character, tree.kValue)){
+					throw new ArrayIndexOutOfBoundsException(Character.getNumericValue(character)); //the instruction is not a child of any node
+				}
+				int number = Character.getNumericValue(character);
+				if(number >= 0 && number <= 9){ //a digit from another script, decode() accepts those too
+					current = getEachLetter(current, decodedMessage, tree.root, number);
+				}
+			}
+		}
+		
+		return decodedMessage.toString();
+	}
+	
+	/**
+	 * A resumable decoder that keeps the current node of the walk between calls, so a message
+	 * can be decoded chunk by chunk as it arrives. Leaves and resets work like
+	 * decode(tree, message, alphabet), and an instruction of k or more throws the same
+	 * ArrayIndexOutOfBoundsException, leaving the walk where it was. Decoders only read the tree,
+	 * so many decoders may share one tree from different threads as long as nobody changes the tree.
+	 */
+	public static class Decoder{
+		
+		private final Node<String> root; //the root of the decoding tree
+		private final int k; //branching factor of the tree
+		private final SymbolAlphabet alphabet; //instruction characters
+		private Node<String> current; //the current node during the decoding period
+		
+		/**
+		 * Construct a decoder using the smallest built-in alphabet for the tree, digits when k is 10 or less.
+		 * @param tree the decoding tree.
+		 * @throws IllegalArgumentException if the tree is empty or k is more than 64.
+		 */
+		public Decoder(KTree<String> tree){
+			
+			this(tree, SymbolAlphabet.forK(tree.getK()));
+		}
+		
+		/**
+		 * Construct a decoder that reads instructions in the given alphabet.
+		 * @param tree the decoding tree.
+		 * @param alphabet the instruction alphabet.
+		 * @throws IllegalArgumentException if the tree is empty.
+		 */
+		public Decoder(KTree<String> tree, SymbolAlphabet alphabet){
+			
+			if(tree.root == null){
+				throw new IllegalArgumentException("Empty tree");
+			}
+			
+			this.root = tree.root;
+			this.k = tree.getK();
+			this.alphabet = alphabet;
+			this.current = root;
+		}
+		
+		/**
+		 * Decode the next chunk of a message.
+		 * @param chunk the next instructions.
+		 * @param decodedMessage the builder the emitted leaves are appended to.
+		 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k, like decode().
+		 */
+		public void feed(CharSequence chunk, StringBuilder decodedMessage){
+			
+			for(int i = 0; i < chunk.length(); i++){
+				step(alphabet.digit(chunk.charAt(i)), decodedMessage);
+			}
+		}
+		
+		/**
+		 * Decode the next chunk of a message from part of a char array.
+		 * @param chunk the buffer holding the next instructions.
+		 * @param offset the index of the first instruction.
+		 * @param length the number of characters.
+		 * @param decodedMessage the builder the emitted leaves are appended to.
+		 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k, like decode().
+		 */
+		public void feed(char[] chunk, int offset, int length, StringBuilder decodedMessage){
+			
+			for(int i = offset; i < offset + length; i++){
+				step(alphabet.digit(chunk[i]), decodedMessage);
+			}
+		}
+		
+		/**
+		 * Decode the next chunk of a message where every byte is one instruction, like decodeBytes().
+		 * @param chunk the buffer holding the next instructions.
+		 * @param offset the index of the first instruction.
+		 * @param length the number of bytes.
+		 * @param decodedMessage the builder the emitted leaves are appended to.
+		 * @throws ArrayIndexOutOfBoundsException if a byte is not less than k, like decodeBytes().
+		 */
+		public void feedBytes(byte[] chunk, int offset, int length, StringBuilder decodedMessage){
+			
+			for(int i = offset; i < offset + length; i++){
+				step(chunk[i] & 0xFF, decodedMessage);
+			}
+		}
+		
+		/**
+		 * Decode the remaining bytes of a buffer where every byte is one instruction, like decodeBytes().
+		 * The position of the buffer is advanced to its limit.
+		 * @param chunk the buffer holding the next instructions.
+		 * @param decodedMessage the builder the emitted leaves are appended to.
+		 * @throws ArrayIndexOutOfBoundsException if a byte is not less than k, like decodeBytes().
+		 */
+		public void feedBytes(ByteBuffer chunk, StringBuilder decodedMessage){
+			
+			if(chunk.hasArray()){ //read heap buffers through their array
+				feedBytes(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining(), decodedMessage);
+				chunk.position(chunk.limit());
+				return;
+			}
+			
+			while(chunk.hasRemaining()){
+				step(chunk.get() & 0xFF, decodedMessage);
+			}
+		}
+		
+		/**
+		 * This method supports the feed() and feedBytes() methods.
+		 * @param number the instruction, -1 if the character was not in the alphabet.
+		 * @param decodedMessage the builder the emitted leaves are appended to.
+		 * @throws ArrayIndexOutOfBoundsException if the instruction is not less than k.
+		 */
+		private void step(int number, StringBuilder decodedMessage){
+			
+			if(number < 0){
+				return; //not an instruction
+			}
+			if(number >= k){
+				throw new ArrayIndexOutOfBoundsException(number); //the instruction is not a child of any node
+			}
+			current = getEachLetter(current, decodedMessage, root, number);
+		}
+		
+		/**
+		 * Test if the decoder is between leaves, so no partial path is pending.
+		 * @return true if the walk is at the root.
+		 */
+		public boolean isAtRoot(){
+			
+			return current == root;
+		}
+		
+		/**
+		 * Drop any partial path and start again from the root.
+		 */
+		public void reset(){
+			
+			current = root;
+		}
+	}
+	
+	/**
+	 * Decode a packed message made by PackedDigits.pack(), reading ceil(log2 k) bits per instruction.
+	 * Leaves and resets work like decode(). PackedDigits.pack() never writes an instruction of k or more,
+	 * but a damaged message can hold one, and it throws like decode().
+	 * @param tree the decoding tree.
+	 * @param packed the packed message.
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws IllegalArgumentException if the message is shorter than its header says.
+	 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k.
+	 */
+	public static String decodePacked(KTree<String> tree, byte[] packed){
+		
+		return decodePacked(tree, ByteBuffer.wrap(packed));
+	}
+	
+	/**
+	 * Decode a packed message from the remaining bytes of a buffer, see decodePacked(KTree, byte[]).
+	 * The position of the buffer is advanced past the message.
+	 * @param tree the decoding tree.
+	 * @param packed the buffer holding the packed message.
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws IllegalArgumentException if the message is shorter than its header says.
+	 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k.
+	 */
+	public static String decodePacked(KTree<String> tree, ByteBuffer packed){
+		
+		if(tree.root == null){ //check null root
+			return null;
+		}
+		
+		if(packed.remaining() < PackedDigits.HEADER_BYTES){
+			throw new IllegalArgumentException("Truncated packed message");
+		}
+		
+		byte[] header = new byte[PackedDigits.HEADER_BYTES];
+		packed.get(header);
+		
+		PackedWalk walk = new PackedWalk(tree, PackedDigits.readCount(header));
+		walk.consume(packed);
+		
+		if(!walk.isDone()){
+			throw new IllegalArgumentException("Truncated packed message");
+		}
+		
+		return walk.decodedMessage.toString();
+	}
+	
+	/**
+	 * Decode a packed message read from a stream, see decodePacked(KTree, byte[]).
+	 * Only the bytes of the message are read, the stream is not closed.
+	 * @param tree the decoding tree.
+	 * @param in the stream holding the packed message.
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws IOException if reading fails or the stream ends before the message does.
+	 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k.
+	 */
+	public static String decodePacked(KTree<String> tree, InputStream in) throws IOException{
+		
+		if(tree.root == null){ //check null root
+			return null;
+		}
+		
+		byte[] buffer = new byte[8192];
+		
+		readFully(in, buffer, PackedDigits.HEADER_BYTES);
+		
+		PackedWalk walk;
+		try{
+			walk = new PackedWalk(tree, PackedDigits.readCount(buffer));
+		}
+		catch(IllegalArgumentException e){
+			throw new IOException(e.getMessage());
+		}
+		
+		while(!walk.isDone()){
+			int n = in.read(buffer, 0, (int)Math.min(buffer.length, walk.bytesLeft)); //never read past the message
+			if(n < 0){
+				throw new EOFException("Truncated packed message");
+			}
+			walk.consume(ByteBuffer.wrap(buffer, 0, n));
+		}
+		
+		return walk.decodedMessage.toString();
+	}
+	
+	/**
+	 * This method supports the decodePacked() method.
+	 * @param in the stream to read from.
+	 * @param buffer the buffer to fill.
+	 * @param length the number of bytes to read.
+	 * @throws IOException if reading fails or the stream ends first.
+	 */
+	private static void readFully(InputStream in, byte[] buffer, int length) throws IOException{
+		
+		int read = 0;
+		while(read < length){
+			int n = in.read(buffer, read, length - read);
+			if(n < 0){
+				throw new EOFException("Truncated packed message");
+			}
+			read += n;
+		}
+	}
+	
+	/**
+	 * The state of decoding one packed message, it can be fed the message in several chunks.
+	 */
+	private static class PackedWalk{
+		
+		private final Node<String> root;
+		private final int k;
+		private final int bits; //bits per instruction
+		private final int mask;
+		private final StringBuilder decodedMessage;
+		private Node<String> current; //the current node during the decoding period
+		private long remaining; //instructions still to decode
+		private long bytesLeft; //bytes of the message still to read
+		private long acc; //bits read but not yet decoded
+		private int accBits;
+		
+		/**
+		 * Start decoding a packed message.
+		 * @param tree the decoding tree, its root is not null.
+		 * @param count the number of instructions in the message.
+		 */
+		public PackedWalk(KTree<String> tree, int count){
+			this.root = tree.root;
+			this.k = tree.getK();
+			this.bits = PackedDigits.bitsPerSymbol(k);
+			this.mask = (1 << bits) - 1;
+			this.decodedMessage = new StringBuilder();
+			this.current = root;
+			this.remaining = count;
+			this.bytesLeft = PackedDigits.packedLength(count, k) - PackedDigits.HEADER_BYTES;
+		}
+		
+		/**
+		 * Decode the instructions in the remaining bytes of a buffer, stopping at the end of the message.
+		 * @param buffer the next bytes of the message.
+		 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k.
+		 */
+		public void consume(ByteBuffer buffer){
+			
+			while(bytesLeft > 0 && buffer.hasRemaining()){
+				acc = (acc << 8) | (buffer.get() & 0xFF);
+				accBits += 8;
+				bytesLeft--;
+				
+				while(accBits >= bits && remaining > 0){
+					accBits -= bits;
+					remaining--;
+					int number = (int)(acc >>> accBits) & mask;
+					if(number >= k){
+						throw new ArrayIndexOutOfBoundsException(number); //the instruction is not a child of any node
+					}
+					current = getEachLetter(current, decodedMessage, root, number);
+				}
+				acc &= (1L << accBits) - 1;
+			}
+		}
+		
+		/**
+		 * Test if the whole message has been decoded.
+		 * @return true if every byte of the message has been read.
+		 */
+		public boolean isDone(){
+			
+			return bytesLeft == 0;
+		}
+	}
+	
+	/**
+	 * Decode a message like decode() using lookahead tables that consume several instructions per step.
+	 * The tables are built on first use and kept until the tree changes.
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded string with the secret message.
+	 * @return the decoded string with the secret message, the same as decode() returns.
+	 */
+	public static String decodeLookahead(KTree<String> tree, String codedMessage){
+		
+		LookaheadDecoder decoder = tree.lookahead;
+		
+		if(decoder == null){
+			decoder = new LookaheadDecoder(tree);
+			tree.lookahead = decoder;
+		}
+		
+		return decoder.decode(codedMessage);
+	}
+	
+	/**
+	 * A table-driven decoder that consumes m instructions per table lookup, like fast Huffman decoders.
+	 * The states are the root and every node with a value that is not a leaf. For each state and each
+	 * group of m instructions the tables hold the leaves emitted by the group and the state it ends in,
+	 * following the same leaf and reset-to-root rules as getEachLetter().
+	 * The decoder is a snapshot, it does not follow later changes to the tree.
+	 */
+	public static class LookaheadDecoder{
+		
+		private static final int MAX_GROUP_ENTRIES = 4096; //table entries per state
+		private static final int MAX_TABLE_ENTRIES = 1 << 20; //table entries for all states
+		
+		private final boolean empty; //the tree had no root
+		private final int k; //branching factor of the tree
+		private final int width; //instructions consumed per table lookup
+		private final int groups; //k^width, table entries per state
+		private final int[] next; //state reached after a group, indexed by state * groups + group
+		private final String[] emit; //leaves emitted by a group, null if none
+		private final int[] nextOne; //state reached after one instruction, indexed by state * k + digit
+		private final String[] emitOne; //leaf emitted by one instruction, null if none
+		
+		/**
+		 * Build the lookahead tables of a decoding tree.
+		 * @param tree the decoding tree.
+		 */
+		public LookaheadDecoder(KTree<String> tree){
+			
+			this.k = tree.getK();
+			this.empty = (tree.root == null);
+			
+			//number the states in level order, the root is state 0
+			IdentityHashMap<Node<String>, Integer> states = new IdentityHashMap<>();
+			DynamicArray<Node<String>> order = new DynamicArray<>();
+			if(!empty){
+				states.put(tree.root, 0);
+				order.add(tree.root);
+			}
+			for(int s = 0; s < order.size(); s++){
+				Node<String> node = order.get(s);
+				for(int d = 0; d < k; d++){
+					Node<String> child = node.child(d);
+					if(child != null && child.data != null && !isLeaf(child, k)){
+						states.put(child, order.size());
+						order.add(child);
+					}
+				}
+			}
+			
+			int count = Math.max(order.size(), 1);
+			
+			//single instruction tables, the same moves getEachLetter() makes
+			this.nextOne = new int[count * k];
+			this.emitOne = new String[count * k];
+			for(int s = 0; s < order.size(); s++){
+				Node<String> node = order.get(s);
+				for(int d = 0; d < k; d++){
+					Node<String> child = node.child(d);
+					if(child != null && child.data != null){
+						if(isLeaf(child, k)){
+							emitOne[s * k + d] = child.data; //emit the leaf and reset back to the root
+						}
+						else{
+							nextOne[s * k + d] = states.get(child);
+						}
+					}
+				}
+			}
+			
+			//choose the widest group that fits in the table budget and is no deeper than the tree
+			int w = 1;
+			long size = k;
+			while(w < Math.max(tree.height(), 1) && size * k <= MAX_GROUP_ENTRIES && count * size * k <= MAX_TABLE_ENTRIES){
+				w++;
+				size *= k;
+			}
+			this.width = w;
+			this.groups = (int)size;
+			
+			//extend the tables one instruction at a time, group g * k + d is group g followed by d
+			int[] curNext = nextOne.clone();
+			String[] curEmit = emitOne.clone();
+			int curGroups = k;
+			for(int step = 1; step < width; step++){
+				int[] newNext = new int[count * curGroups * k];
+				String[] newEmit = new String[count * curGroups * k];
+				for(int s = 0; s < count; s++){
+					for(int g = 0; g < curGroups; g++){
+						int mid = curNext[s * curGroups + g];
+						String before = curEmit[s * curGroups + g];
+						for(int d = 0; d < k; d++){
+							int entry = (s * curGroups + g) * k + d;
+							String after = emitOne[mid * k + d];
+							newNext[entry] = nextOne[mid * k + d];
+							if(before == null){
+								newEmit[entry] = after;
+							}
+							else{
+								newEmit[entry] = (after == null) ? before : before + after;
+							}
+						}
+					}
+				}
+				curNext = newNext;
+				curEmit = newEmit;
+				curGroups *= k;
+			}
+			this.next = curNext;
+			this.emit = curEmit;
+		}
+		
+		/**
+		 * This method supports the LookaheadDecoder constructor.
+		 * @param node a node with a value.
+		 * @param k the branching factor.
+		 * @return true if no child of the node holds a value.
+		 */
+		private static boolean isLeaf(Node<String> node, int k){
+			
+			for(int i = 0; i < k; i++){
+				if(node.child(i) != null && node.child(i).data != null){
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Return the number of instructions consumed per table lookup.
+		 * @return the lookahead width m.
+		 */
+		public int getWidth(){
+			
+			return width;
+		}
+		
+		/**
+		 * Return the number of entries in the lookahead table.
+		 * @return the number of states times k^m.
+		 */
+		public int getTableSize(){
+			
+			return next.length;
+		}
+		
+		/**
+		 * Decode a message, the result is the same as decode() on the tree the tables were built from.
+		 * Characters that are not digits are ignored and a digit of k or more throws, like decode().
+		 * @param codedMessage the encoded string with the secret message.
+		 * @return the decoded string with the secret message, or null if the tree was empty.
+		 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k.
+		 */
+		public String decode(String codedMessage){
+			
+			if(empty){
+				return null;
+			}
+			
+			StringBuilder decodedMessage = new StringBuilder();
+			
+			int state = 0;
+			int group = 0; //instructions of the current group as a base k number
+			int pending = 0; //number of instructions in the group
+			
+			for(int i = 0; i < codedMessage.length(); i++){
+				
+				char character = codedMessage.charAt(i);
+				int number = (character >= '0' && character <= '9') ? character - '0' : Character.getNumericValue(character);
+				
+				if(number < 0 || number > 9){ //decode() ignores anything that is not a digit
+					continue;
+				}
+				if(number >= k){
+					throw new ArrayIndexOutOfBoundsException(number); //decode() fails on the same instruction
+				}
+				
+				group = group * k + number;
+				pending++;
+				
+				if(pending == width){
+					int entry = state * groups + group;
+					if(emit[entry] != null){
+						decodedMessage.append(emit[entry]);
+					}
+					state = next[entry];
+					group = 0;
+					pending = 0;
+				}
+			}
+			
+			//finish a partial group one instruction at a time, most significant digit first
+			for(int p = pending - 1; p >= 0; p--){
+				int divisor = 1;
+				for(int j = 0; j < p; j++){
+					divisor *= k;
+				}
+				int entry = state * k + (group / divisor) % k;
+				if(emitOne[entry] != null){
+					decodedMessage.append(emitOne[entry]);
+				}
+				state = nextOne[entry];
+			}
+			
+			return decodedMessage.toString();
+		}
+	}
+	
+	/**
+	 * Decode a message like decode() with code generated for this tree, see CompiledDecoder.
+	 * The decoder is compiled on first use and kept until the tree changes, so every version
+	 * of the tree is compiled at most once. Like decodeDigits(), it skips the cache and metrics.
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded string with the secret message.
+	 * @return the decoded string with the secret message, the same as decode() returns.
+	 * @throws ArrayIndexOutOfBoundsException if a digit is not less than k, like decode().
+	 */
+	public static String decodeCompiled(KTree<String> tree, CharSequence codedMessage){
+		
+		return compiledDecoder(tree).decode(codedMessage);
+	}
+	
+	/**
+	 * Decode a message of ASCII digits like decodeDigits() with code generated for this tree, see CompiledDecoder.
+	 * @param tree the decoding tree.
+	 * @param codedMessage the encoded digits.
+	 * @param offset the index of the first instruction.
+	 * @param length the number of bytes to decode.
+	 * @return the decoded string with the secret message, or null if the tree is empty.
+	 * @throws ArrayIndexOutOfBoundsException if a digit is not less than k, like decode().
+	 */
+	public static String decodeCompiled(KTree<String> tree, byte[] codedMessage, int offset, int length){
+		
+		return compiledDecoder(tree).decode(codedMessage, offset, length);
+	}
+	
+	/**
+	 * This method supports the decodeCompiled() methods, it returns the decoder of the current version.
+	 * @param tree the decoding tree.
+	 * @return the compiled decoder of the tree.
+	 */
+	private static CompiledDecoder compiledDecoder(KTree<String> tree){
+		
+		CompiledDecoder decoder = tree.compiledDecoder;
+		
+		if(decoder == null){
+			decoder = new CompiledDecoder(tree);
+			tree.compiledDecoder = decoder;
+		}
+		
+		return decoder;
+	}
+	
+	/**
+	 * A decoder that runs code generated for one decoding tree by DecoderCompiler, where every node
+	 * is a block of bytecode and every move is a jump, instead of walking the nodes like decode().
+	 * Digits go through DigitTranslator first, like decodeDigits(). The jumps follow the message, so the code
+	 * is fastest on messages the branch predictor learns, like encoded text, while random instructions
+	 * mispredict most jumps and are better served by the tables of LookaheadDecoder.
+	 * Trees whose code would be too long for the JIT to compile are decoded from the same
+	 * single instruction tables LookaheadDecoder uses, see isCompiled().
+	 * The decoder is a snapshot, it does not follow later changes to the tree.
+	 */
+	public static class CompiledDecoder{
+		
+		private final boolean empty; //the tree had no root
+		private final int k; //branching factor of the tree
+		private final long version; //version of the tree the decoder was built from
+		private final int[] next; //state reached after one instruction, indexed by state * k + digit
+		private final String[] emit; //leaf emitted by one instruction, null if none
+		private final DecoderProgram program; //generated code, null if the tree is too large
+		
+		/**
+		 * Compile a decoding tree.
+		 * @param tree the decoding tree.
+		 */
+		public CompiledDecoder(KTree<String> tree){
+			
+			this.k = tree.getK();
+			this.empty = (tree.root == null);
+			this.version = tree.getVersion();
+			
+			//number the states in level order, the root is state 0
+			IdentityHashMap<Node<String>, Integer> states = new IdentityHashMap<>();
+			DynamicArray<Node<String>> order = new DynamicArray<>();
+			if(!empty){
+				states.put(tree.root, 0);
+				order.add(tree.root);
+			}
+			for(int s = 0; s < order.size(); s++){
+				Node<String> node = order.get(s);
+				for(int d = 0; d < k; d++){
+					Node<String> child = node.child(d);
+					if(child != null && child.data != null && !LookaheadDecoder.isLeaf(child, k)){
+						states.put(child, order.size());
+						order.add(child);
+					}
+				}
+			}
+			
+			//the same moves getEachLetter() makes
+			this.next = new int[Math.max(order.size(), 1) * k];
+			this.emit = new String[next.length];
+			for(int s = 0; s < order.size(); s++){
+				Node<String> node = order.get(s);
+				for(int d = 0; d < k; d++){
+					Node<String> child = node.child(d);
+					if(child != null && child.data != null){
+						if(LookaheadDecoder.isLeaf(child, k)){
+							emit[s * k + d] = child.data; //emit the leaf and reset back to the root
+						}
+						else{
+							next[s * k + d] = states.get(child);
+						}
+					}
+				}
+			}
+			
+			this.program = empty ? null : DecoderCompiler.compile(k, next, emit);
+		}
+		
+		/**
+		 * Test if the decoder runs generated code.
+		 * @return false if the tree was empty or too large to compile, then the tables are interpreted.
+		 */
+		public boolean isCompiled(){
+			
+			return program != null;
+		}
+		
+		/**
+		 * Return the version of the tree the decoder was built from.
+		 * @return the version of the tree, see KTree.getVersion().
+		 */
+		public long getVersion(){
+			
+			return version;
+		}
+		
+		/**
+		 * Decode a message, the result is the same as decode() on the tree the decoder was built from.
+		 * @param codedMessage the encoded string with the secret message.
+		 * @return the decoded string with the secret message, or null if the tree was empty.
+		 * @throws ArrayIndexOutOfBoundsException if a digit is not less than k, like decode().
+		 */
+		public String decode(CharSequence codedMessage){
+			
+			if(empty){
+				return null;
+			}
+			
+			StringBuilder decodedMessage = new StringBuilder();
+			
+			byte[] numbers = new byte[Math.min(codedMessage.length(), DIGIT_BLOCK)];
+			
+			int state = 0;
+			int end = codedMessage.length();
+			
+			for(int i = 0; i < end;){
+				
+				int block = Math.min(end - i, numbers.length);
+				int count = DigitTranslator.translate(codedMessage, i, numbers, 0, block, k);
+				
+				state = run(numbers, count, decodedMessage, state);
+				i += count;
+				
+				if(count < block){ //the translation stopped at a character that is not a digit less than k
+					char character = codedMessage.charAt(i++);
+					if(DigitTranslator.isOutOfRange(character, k)){
+						throw new ArrayIndexOutOfBoundsException(Character.getNumericValue(character)); //decode() fails on the same instruction
+					}
+					int number = Character.getNumericValue(character);
+					if(number >= 0 && number <= 9){ //a digit from another script, decode() accepts those too
+						numbers[0] = (byte)number;
+						state = run(numbers, 1, decodedMessage, state);
+					}
+				}
+			}
+			
+			return decodedMessage.toString();
+		}
+		
+		/**
+		 * Decode a message of ASCII digits, the result is the same as decodeDigits() on the tree the decoder was built from.
+		 * @param codedMessage the encoded digits.
+		 * @param offset the index of the first instruction.
+		 * @param length the number of bytes to decode.
+		 * @return the decoded string with the secret message, or null if the tree was empty.
+		 * @throws ArrayIndexOutOfBoundsException if a digit is not less than k, like decode().
+		 */
+		public String decode(byte[] codedMessage, int offset, int length){
+			
+			if(empty){
+				return null;
+			}
+			
+			StringBuilder decodedMessage = new StringBuilder();
+			
+			byte[] numbers = new byte[Math.min(length, DIGIT_BLOCK)];
+			
+			int state = 0;
+			int end = offset + length;
+			
+			for(int i = offset; i < end;){
+				
+				int block = Math.min(end - i, numbers.length);
+				int count = DigitTranslator.translate(codedMessage, i, numbers, 0, block, k);
+				
+				state = run(numbers, count, decodedMessage, state);
+				i += count;
+				
+				if(count < block){ //the translation stopped at a byte that is not a digit less than k
+					if(codedMessage[i] >= '0' && codedMessage[i] <= '9'){
+						throw new ArrayIndexOutOfBoundsException(codedMessage[i] - '0'); //decode() fails on the same instruction
+					}
+					i++;
+				}
+			}
+			
+			return decodedMessage.toString();
+		}
+		
+		/**
+		 * This method supports the decode() methods, it runs the generated code or interprets the tables.
+		 * @param numbers the child indices.
+		 * @param count the number of child indices.
+		 * @param decodedMessage the decoded string with the secret message.
+		 * @param state the state the walk starts in.
+		 * @return the state the walk ends in.
+		 */
+		private int run(byte[] numbers, int count, StringBuilder decodedMessage, int state){
+			
+			if(program != null){
+				return program.run(numbers, 0, count, decodedMessage, state);
+			}
+			
+			for(int n = 0; n < count; n++){
+				int entry = state * k + numbers[n];
+				if(emit[entry] != null){
+					decodedMessage.append(emit[entry]);
+				}
+				state = next[entry];
+			}
+			return state;
+		}
+	}
+	
+	/**
+	 * Return a read-only copy of the tree where the k children of every node sit in one contiguous block.
+	 * @param vanEmdeBoas true to place the blocks in van Emde Boas order, false for level order.
+	 * @return the block layout of the tree.
+	 */
+	public BlockLayout<E> toBlockLayout(boolean vanEmdeBoas){
+		
+		return new BlockLayout<E>(this, vanEmdeBoas);
+	}
+	
+	/**
+	 * Decode a message with a block layout of a decoding tree, the result is the same as decode() on the tree.
+	 * @param layout the block layout of the decoding tree.
+	 * @param codedMessage the encoded string with the secret message.
+	 * @return the decoded string with the secret message, or null if the tree was empty.
+	 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k, like decode().
+	 */
+	public static String decode(BlockLayout<String> layout, String codedMessage){
+		
+		if(layout.values.length == 0){ //check null root
+			return null;
+		}
+		
+		Object[] values = layout.values;
+		int[] firstChild = layout.firstChild;
+		int k = layout.k;
+		
+		StringBuilder decodedMessage = new StringBuilder();
+		
+		int current = 0; //slot of the current node, the root is slot 0
+		
+		for(int i = 0; i < codedMessage.length(); i++){
+			
+			int number = Character.getNumericValue(codedMessage.charAt(i));
+			
+			if(number < 0 || number > 9){ //decode() ignores anything that is not a digit
+				continue;
+			}
+			if(number >= k){
+				throw new ArrayIndexOutOfBoundsException(number); //decode() fails on the same instruction
+			}
+			
+			int block = firstChild[current];
+			
+			if(block < 0 || values[block + number] == null){
+				current = 0; //reset back to the root if the instruction is wrong
+			}
+			else if(firstChild[block + number] < 0){
+				decodedMessage.append(values[block + number]); //append the value if the node is a leaf
+				current = 0; //reset back to the root
+			}
+			else{
+				current = block + number;
+			}
+		}
+		
+		return decodedMessage.toString();
+	}
+	
+	/**
+	 * A read-only copy of a k-ary tree stored in two flat arrays instead of linked nodes.
+	 * Slot 0 holds the root, and the k children of every node that has children with values sit
+	 * in one contiguous block of k slots, so a step from a node to its child is one array read.
+	 * Blocks are placed in level order, so walks read the arrays front to back, or in van Emde Boas
+	 * order, so every subtree of a few levels sits close together.
+	 * Like the iterators, nodes below a node without a value are not copied.
+	 * @param <E> the type of the value in the tree.
+	 */
+	public static class BlockLayout<E> implements TreeIterable<E>{
+		
+		private final int k; //branching factor of the tree
+		private final Object[] values; //value of every slot, null for empty children
+		private final int[] firstChild; //first slot of the children block of every slot, -1 for leaves
+		private final int size; //number of values
+		
+		/**
+		 * Copy a tree into a block layout.
+		 * @param tree the tree to copy.
+		 * @param vanEmdeBoas true to place the blocks in van Emde Boas order, false for level order.
+		 */
+		public BlockLayout(KTree<E> tree, boolean vanEmdeBoas){
+			
+			this.k = tree.getK();
+			
+			//the nodes that own a children block, in the order their blocks are placed
+			ArrayList<Node<E>> owners = new ArrayList<>();
+			if(tree.root != null){
+				if(vanEmdeBoas){
+					vanEmdeBoasOrder(tree.root, ownerHeight(tree.root), owners);
+				}
+				else{
+					if(ownsBlock(tree.root)){
+						owners.add(tree.root);
+					}
+					for(int i = 0; i < owners.size(); i++){ //the list doubles as the breadth-first queue
+						Node<E> owner = owners.get(i);
+						for(int c = 0; c < k; c++){
+							if(owner.child(c) != null && owner.child(c).data != null && ownsBlock(owner.child(c))){
+								owners.add(owner.child(c));
+							}
+						}
+					}
+				}
+			}
+			
+			IdentityHashMap<Node<E>, Integer> blockStart = new IdentityHashMap<>();
+			int slots = (tree.root == null) ? 0 : 1;
+			for(Node<E> owner : owners){
+				blockStart.put(owner, slots);
+				slots += k;
+			}
+			
+			this.values = new Object[slots];
+			this.firstChild = new int[slots];
+			java.util.Arrays.fill(firstChild, -1);
+			
+			int count = 0;
+			if(tree.root != null){
+				values[0] = tree.root.data;
+				count += (tree.root.data != null) ? 1 : 0;
+				Integer rootBlock = blockStart.get(tree.root);
+				firstChild[0] = (rootBlock == null) ? -1 : rootBlock;
+			}
+			for(Node<E> owner : owners){
+				int start = blockStart.get(owner);
+				for(int c = 0; c < k; c++){
+					Node<E> child = owner.child(c);
+					if(child != null && child.data != null){
+						values[start + c] = child.data;
+						count++;
+						Integer childBlock = blockStart.get(child);
+						firstChild[start + c] = (childBlock == null) ? -1 : childBlock;
+					}
+				}
+			}
+			this.size = count;
+		}
+		
+		/**
+		 * This method supports the BlockLayout constructor.
+		 * @param node a node of the tree.
+		 * @return true if the node has a child with a value, so it needs a children block.
+		 */
+		private boolean ownsBlock(Node<E> node){
+			
+			for(int c = 0; c < k; c++){
+				if(node.child(c) != null && node.child(c).data != null){
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * This method supports the BlockLayout constructor.
+		 * @param node a node that may own a block.
+		 * @return the number of levels of block owners from the node down, 0 if the node owns no block.
+		 */
+		private int ownerHeight(Node<E> node){
+			
+			if(!ownsBlock(node)){
+				return 0;
+			}
+			int levels = 0;
+			for(int c = 0; c < k; c++){
+				if(node.child(c) != null && node.child(c).data != null){
+					levels = Math.max(levels, ownerHeight(node.child(c)));
+				}
+			}
+			return levels + 1;
+		}
+		
+		/**
+		 * This method supports the BlockLayout constructor, it lists the block owners of the top
+		 * levels of a subtree in van Emde Boas order: the top half of the levels first, then every
+		 * subtree hanging below the top half, each one recursively.
+		 * @param node the root of the subtree.
+		 * @param levels the number of owner levels of the subtree to list.
+		 * @param owners the list the block owners are added to.
+		 */
+		private void vanEmdeBoasOrder(Node<E> node, int levels, ArrayList<Node<E>> owners){
+			
+			if(levels <= 0 || !ownsBlock(node)){
+				return;
+			}
+			if(levels == 1){
+				owners.add(node);
+				return;
+			}
+			
+			int top = levels / 2;
+			vanEmdeBoasOrder(node, top, owners);
+			
+			ArrayList<Node<E>> bottoms = new ArrayList<>();
+			collectDepth(node, top, bottoms);
+			for(Node<E> bottom : bottoms){
+				vanEmdeBoasOrder(bottom, levels - top, owners);
+			}
+		}
+		
+		/**
+		 * This method supports the vanEmdeBoasOrder() method.
+		 * @param node the root of the subtree.
+		 * @param depth how many levels below the node to look.
+		 * @param found the list the block owners at that depth are added to, from left to right.
+		 */
+		private void collectDepth(Node<E> node, int depth, ArrayList<Node<E>> found){
+			
+			if(depth == 0){
+				if(ownsBlock(node)){
+					found.add(node);
+				}
+				return;
+			}
+			for(int c = 0; c < k; c++){
+				if(node.child(c) != null && node.child(c).data != null){
+					collectDepth(node.child(c), depth - 1, found);
+				}
+			}
+		}
+		
+		/**
+		 * Return the branching factor k of the tree.
+		 * @return the branching factor k.
+		 */
+		public int getK(){
+			
+			return k;
+		}
+		
+		/**
+		 * Return the number of values in the layout.
+		 * @return the number of values.
+		 */
+		public int size(){
+			
+			return size;
+		}
+		
+		/**
+		 * Return the number of slots of the layout, one for the root and k for every block.
+		 * @return the number of slots.
+		 */
+		public int slots(){
+			
+			return values.length;
+		}
+		
+		/**
+		 * Return the value at a level-order location index, following one block per level.
+		 * @param i the level-order location index of the node if the tree was perfect.
+		 * @return the value at the location index.
+		 * @throws IllegalArgumentException if the location i is not a node in the layout.
+		 */
+		@SuppressWarnings("unchecked")
+		public E get(int i){
+			
+			if(i < 0 || values.length == 0){
+				throw new IllegalArgumentException();
+			}
+			
+			//the offset of i in its level, written in base k, spells the children from the root down
+			long levelStart = 0;
+			long levelWidth = 1;
+			while(levelStart + levelWidth <= i){
+				levelStart += levelWidth;
+				levelWidth *= k;
+			}
+			long offset = i - levelStart;
+			
+			int slot = 0;
+			for(long divisor = levelWidth / k; divisor > 0; divisor /= k){
+				int block = firstChild[slot];
+				if(block < 0){
+					throw new IllegalArgumentException("Invalid Index");
+				}
+				slot = block + (int)(offset / divisor % k);
+			}
+			
+			if(values[slot] == null){
+				throw new IllegalArgumentException("Invalid Index");
+			}
+			return (E)values[slot];
+		}
+		
+		/**
+		 * Return an iterator that walks through the layout in level order.
+		 * @return an iterator that walks through the layout in level order.
+		 */
+		public Iterator<E> getLevelOrderIterator(){
+			
+			return new SlotIterator(0);
+		}
+		
+		/**
+		 * Return an iterator that walks through the layout using pre-order walk.
+		 * @return an iterator that walks through the layout using pre-order walk.
+		 */
+		public Iterator<E> getPreOrderIterator(){
+			
+			return new SlotIterator(1);
+		}
+		
+		/**
+		 * Return an iterator that walks through the layout using post-order walk.
+		 * @return an iterator that walks through the layout using post-order walk.
+		 */
+		public Iterator<E> getPostOrderIterator(){
+			
+			return new SlotIterator(2);
+		}
+		
+		/**
+		 * An iterator over the slots of the layout, using an int queue for level order
+		 * and an int stack for pre-order and post-order.
+		 */
+		private class SlotIterator implements Iterator<E>{
+			
+			private final int order; //0 level order, 1 pre-order, 2 post-order
+			private final int[] pending; //queue or stack of slots, post-order marks expanded slots as ~slot
+			private int head; //front of the queue
+			private int tail; //back of the queue or top of the stack
+			
+			/**
+			 * Construct a new SlotIterator.
+			 * @param order 0 for level order, 1 for pre-order, 2 for post-order.
+			 */
+			public SlotIterator(int order){
+				this.order = order;
+				this.pending = new int[Math.max(values.length, 1)];
+				if(values.length > 0){
+					pending[tail++] = 0; //start at the root
+				}
+			}
+			
+			/**
+			 * Test if there are more items in the layout.
+			 * @return true if there are more items in the layout.
+			 */
+			public boolean hasNext(){
+				
+				return head < tail;
+			}
+			
+			/**
+			 * Obtain the next item in the layout.
+			 * @return the next item in the layout, return null if no more items in the layout.
+			 */
+			@SuppressWarnings("unchecked")
+			public E next(){
+				
+				if(!hasNext()){
+					return null;
+				}
+				
+				if(order == 0){
+					int slot = pending[head++];
+					pushChildren(slot, false);
+					return (E)values[slot];
+				}
+				
+				if(order == 1){
+					int slot = pending[--tail];
+					pushChildren(slot, true);
+					return (E)values[slot];
+				}
+				
+				while(pending[tail - 1] >= 0){ //expand until the top slot has had its children pushed
+					int slot = pending[tail - 1];
+					pending[tail - 1] = ~slot;
+					pushChildren(slot, true);
+				}
+				return (E)values[~pending[--tail]];
+			}
+			
+			/**
+			 * This method supports the next() method.
+			 * @param slot the slot whose children are added.
+			 * @param reverse true to push the children last to first for a stack.
+			 */
+			private void pushChildren(int slot, boolean reverse){
+				
+				int block = firstChild[slot];
+				if(block < 0){
+					return;
+				}
+				for(int c = 0; c < k; c++){
+					int child = reverse ? block + k - 1 - c : block + c;
+					if(values[child] != null){ //don't add empty slots
+						pending[tail++] = child;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Return a read-only copy of the tree where identical subtrees are stored once and shared.
+	 * @return the shared copy of the tree.
+	 */
+	public SharedTree<E> toSharedTree(){
+		
+		return new SharedTree<E>(this);
+	}
+	
+	/**
+	 * Decode a message with a shared copy of a decoding tree, the result is the same as decode() on the tree.
+	 * @param shared the shared copy of the decoding tree.
+	 * @param codedMessage the encoded string with the secret message.
+	 * @return the decoded string with the secret message, or null if the tree was empty.
+	 * @throws ArrayIndexOutOfBoundsException if an instruction is not less than k, like decode().
+	 */
+	public static String decode(SharedTree<String> shared, String codedMessage){
+		
+		if(shared.root < 0){ //check null root
+			return null;
+		}
+		
+		Object[] values = shared.values;
+		int[] children = shared.children;
+		int k = shared.k;
+		
+		StringBuilder decodedMessage = new StringBuilder();
+		
+		int current = shared.root; //the current subtree during the decoding period
+		
+		for(int i = 0; i < codedMessage.length(); i++){
+			
+			int number = Character.getNumericValue(codedMessage.charAt(i));
+			
+			if(number < 0 || number > 9){ //decode() ignores anything that is not a digit
+				continue;
+			}
+			if(number >= k){
+				throw new ArrayIndexOutOfBoundsException(number); //decode() fails on the same instruction
+			}
+			
+			int child = children[current * k + number];
+			
+			if(child < 0 || values[child] == null){
+				current = shared.root; //reset back to the root if the instruction is wrong
+			}
+			else if(shared.isLeaf(child)){
+				decodedMessage.append(values[child]); //append the value if the node is a leaf
+				current = shared.root; //reset back to the root
+			}
+			else{
+				current = child;
+			}
+		}
+		
+		return decodedMessage.toString();
+	}
+	
+	/**
+	 * A read-only copy of a k-ary tree where structurally identical subtrees, the same values in the
+	 * same places, are stored once and shared, turning the tree into a directed acyclic graph.
+	 * Every distinct subtree gets an id, with its value in values[id] and the ids of its k children
+	 * in children[id * k] to children[id * k + k - 1], so memory grows with the number of distinct
+	 * subtrees instead of the number of nodes. Subtrees without values are not copied.
+	 * @param <E> the type of the value in the tree.
+	 */
+	public static class SharedTree<E> implements TreeIterable<E>{
+		
+		private final int k; //branching factor of the tree
+		private final int height; //height of the tree the copy was made from
+		private final Object[] values; //value of every distinct subtree
+		private final int[] children; //ids of the children of every distinct subtree, -1 for empty children
+		private final int root; //id of the root, -1 for an empty tree
+		private final int size; //number of values counting every copy
+		private final long nodes; //number of nodes counting every copy
+		
+		/**
+		 * Copy a tree into a shared tree.
+		 * @param tree the tree to copy.
+		 */
+		public SharedTree(KTree<E> tree){
+			
+			this.k = tree.getK();
+			this.height = tree.height();
+			
+			HashMap<SharedKey, Integer> ids = new HashMap<>(); //every distinct subtree seen so far
+			ArrayList<SharedKey> distinct = new ArrayList<>();
+			long[] counts = new long[2]; //values and nodes counting every copy
+			
+			this.root = (tree.root == null) ? -1 : share(tree.root, true, ids, distinct, counts);
+			
+			this.values = new Object[distinct.size()];
+			this.children = new int[distinct.size() * k];
+			for(int id = 0; id < distinct.size(); id++){
+				values[id] = distinct.get(id).value;
+				System.arraycopy(distinct.get(id).children, 0, children, id * k, k);
+			}
+			this.size = (int)counts[0];
+			this.nodes = counts[1];
+		}
+		
+		/**
+		 * This method supports the SharedTree constructor, it finds the id of a subtree, children first.
+		 * @param node the root of the subtree.
+		 * @param keep true to give the subtree an id even if it holds no values.
+		 * @param ids the id of every distinct subtree seen so far.
+		 * @param distinct the distinct subtrees in id order.
+		 * @param counts the number of values and nodes copied so far.
+		 * @return the id of the subtree, or -1 if it holds no values and keep is false.
+		 */
+		private int share(Node<E> node, boolean keep, HashMap<SharedKey, Integer> ids, ArrayList<SharedKey> distinct, long[] counts){
+			
+			int[] childIds = new int[k];
+			boolean empty = (node.data == null);
+			for(int c = 0; c < k; c++){
+				Node<E> child = node.child(c);
+				childIds[c] = (child == null) ? -1 : share(child, false, ids, distinct, counts);
+				empty &= (childIds[c] < 0);
+			}
+			
+			if(empty && !keep){
+				return -1; //null nodes without values below them are not copied
+			}
+			
+			counts[0] += (node.data != null) ? 1 : 0;
+			counts[1]++;
+			
+			SharedKey key = new SharedKey(node.data, childIds);
+			Integer id = ids.get(key);
+			if(id == null){
+				id = distinct.size(); //the first copy of this subtree
+				ids.put(key, id);
+				distinct.add(key);
+			}
+			return id;
+		}
+		
+		/**
+		 * The value and child ids of a subtree, equal for identical subtrees because identical children have the same id.
+		 */
+		private static final class SharedKey{
+			
+			private final Object value; //value of the root of the subtree
+			private final int[] children; //ids of the children
+			private final int hash; //hash code of the key
+			
+			/**
+			 * Create a new key.
+			 * @param value the value of the root of the subtree.
+			 * @param children the ids of the children.
+			 */
+			public SharedKey(Object value, int[] children){
+				this.value = value;
+				this.children = children;
+				this.hash = 31 * Objects.hashCode(value) + Arrays.hashCode(children);
+			}
+			
+			public boolean equals(Object o){
+				return o instanceof SharedKey && Objects.equals(value, ((SharedKey)o).value) && Arrays.equals(children, ((SharedKey)o).children);
+			}
+			
+			public int hashCode(){
+				return hash;
+			}
+		}
+		
+		/**
+		 * This method supports the decode() method.
+		 * @param id the id of a subtree.
+		 * @return true if the root of the subtree has no children with values.
+		 */
+		private boolean isLeaf(int id){
+			
+			for(int c = id * k; c < id * k + k; c++){
+				if(children[c] >= 0 && values[children[c]] != null){
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Return the branching factor k of the tree.
+		 * @return the branching factor k.
+		 */
+		public int getK(){
+			
+			return k;
+		}
+		
+		/**
+		 * Return the number of values in the tree, counting every copy of a shared subtree.
+		 * @return the number of values.
+		 */
+		public int size(){
+			
+			return size;
+		}
+		
+		/**
+		 * Return the number of subtrees stored, one for every distinct subtree.
+		 * @return the number of distinct subtrees.
+		 */
+		public int distinctNodes(){
+			
+			return values.length;
+		}
+		
+		/**
+		 * Return how many nodes of the tree share each stored subtree on average.
+		 * @return the number of nodes divided by the number of distinct subtrees, 1 if nothing is shared.
+		 */
+		public double compressionRatio(){
+			
+			return (values.length == 0) ? 1 : (double)nodes / values.length;
+		}
+		
+		/**
+		 * Return the value at a level-order location index, following one child per level.
+		 * @param i the level-order location index of the node if the tree was perfect.
+		 * @return the value at the location index.
+		 * @throws IllegalArgumentException if the location i is not a node in the tree.
+		 */
+		@SuppressWarnings("unchecked")
+		public E get(int i){
+			
+			if(i < 0 || root < 0){
+				throw new IllegalArgumentException();
+			}
+			
+			//the offset of i in its level, written in base k, spells the children from the root down
+			long levelStart = 0;
+			long levelWidth = 1;
+			while(levelStart + levelWidth <= i){
+				levelStart += levelWidth;
+				levelWidth *= k;
+			}
+			long offset = i - levelStart;
+			
+			int id = root;
+			for(long divisor = levelWidth / k; divisor > 0 && id >= 0; divisor /= k){
+				id = children[id * k + (int)(offset / divisor % k)];
+			}
+			
+			if(id < 0 || values[id] == null){
+				throw new IllegalArgumentException("Invalid Index");
+			}
+			return (E)values[id];
+		}
+		
+		/**
+		 * Return the copy of the tree stored in level order, the same array toArray() of the tree returns.
+		 * @return the copy of the tree stored in level order.
+		 */
+		public Object[] toArray(){
+			
+			Object[] toReturn = new Object[(height < 0) ? 0 : (int)((Math.pow(k, height + 1) - 1) / (k - 1))]; //number of nodes of a perfect tree
+			
+			if(root >= 0){
+				addToArray(root, toReturn, 0);
+			}
+			return toReturn;
+		}
+		
+		/**
+		 * This method supports the toArray() method.
+		 * @param id the id of a subtree.
+		 * @param toReturn the copy of the tree stored in level order.
+		 * @param index the location index of the subtree.
+		 */
+		private void addToArray(int id, Object[] toReturn, int index){
+			
+			if(index >= toReturn.length){ //only null nodes below the height
+				return;
+			}
+			toReturn[index] = values[id];
+			
+			for(int c = 0, j = 1; c < k; c++, j++){
+				if(children[id * k + c] >= 0){
+					addToArray(children[id * k + c], toReturn, index * k + j); //using formula k * index + c-th child of the node
+				}
+			}
+		}
+		
+		/**
+		 * Return an iterator that walks through the tree in level order.
+		 * @return an iterator that walks through the tree in level order.
+		 */
+		public Iterator<E> getLevelOrderIterator(){
+			
+			return new SharedIterator(0);
+		}
+		
+		/**
+		 * Return an iterator that walks through the tree using pre-order walk.
+		 * @return an iterator that walks through the tree using pre-order walk.
+		 */
+		public Iterator<E> getPreOrderIterator(){
+			
+			return new SharedIterator(1);
+		}
+		
+		/**
+		 * Return an iterator that walks through the tree using post-order walk.
+		 * @return an iterator that walks through the tree using post-order walk.
+		 */
+		public Iterator<E> getPostOrderIterator(){
+			
+			return new SharedIterator(2);
+		}
+		
+		/**
+		 * An iterator over the shared tree, using an int queue of subtree ids for level order and an int stack
+		 * for pre-order and post-order. A shared subtree is walked once for every place it appears.
+		 */
+		private class SharedIterator implements Iterator<E>{
+			
+			private final int order; //0 level order, 1 pre-order, 2 post-order
+			private int[] pending; //queue or stack of ids, post-order marks expanded ids as ~id
+			private int head; //front of the queue
+			private int tail; //back of the queue or top of the stack
+			
+			/**
+			 * Construct a new SharedIterator.
+			 * @param order 0 for level order, 1 for pre-order, 2 for post-order.
+			 */
+			public SharedIterator(int order){
+				this.order = order;
+				this.pending = new int[Math.max(k, 16)];
+				if(root >= 0){
+					pending[tail++] = root; //start at the root
+				}
+			}
+			
+			/**
+			 * Test if there are more items in the tree.
+			 * @return true if there are more items in the tree.
+			 */
+			public boolean hasNext(){
+				
+				return head < tail;
+			}
+			
+			/**
+			 * Obtain the next item in the tree.
+			 * @return the next item in the tree, return null if no more items in the tree.
+			 */
+			@SuppressWarnings("unchecked")
+			public E next(){
+				
+				if(!hasNext()){
+					return null;
+				}
+				
+				if(order == 0){
+					int id = pending[head++];
+					pushChildren(id, false);
+					return (E)values[id];
+				}
+				
+				if(order == 1){
+					int id = pending[--tail];
+					pushChildren(id, true);
+					return (E)values[id];
+				}
+				
+				while(pending[tail - 1] >= 0){ //expand until the top id has had its children pushed
+					int id = pending[tail - 1];
+					pending[tail - 1] = ~id;
+					pushChildren(id, true);
+				}
+				return (E)values[~pending[--tail]];
+			}
+			
+			/**
+			 * This method supports the next() method.
+			 * @param id the id whose children are added.
+			 * @param reverse true to push the children last to first for a stack.
+			 */
+			private void pushChildren(int id, boolean reverse){
+				
+				if(tail + k > pending.length && head > pending.length / 2){ //reuse the space in front of the queue
+					System.arraycopy(pending, head, pending, 0, tail - head);
+					tail -= head;
+					head = 0;
+				}
+				if(tail + k > pending.length){
+					pending = Arrays.copyOf(pending, pending.length * 2 + k);
+				}
+				for(int c = 0; c < k; c++){
+					int child = children[id * k + (reverse ? k - 1 - c : c)];
+					if(child >= 0 && values[child] != null){ //skip null nodes like the iterators of the tree
+						pending[tail++] = child;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Return an array representation of a subtree where the location index is the root.
+	 * @param i the level-order location index of the node if the tree was perfect.
+	 * @return an array representation of a subtree.
+	 */
+	@SuppressWarnings("unchecked")
+	public E[] subtree(int i){
+		
+		if(i < 0){ //check for valid index
+			return null;
+		}
+
+		E[] toReturn = (E[]) new Object[slotCount(0, this.height())]; //number of nodes of perfect tree 
+						
+		subtreeTo(i, toReturn, 0); //add values in nodes to the return array
+		
+		return toReturn;
+	}
+	
+	/**
+	 * Return the mirror of the k-ary tree in array format, the tree itself is not changed.
+	 * @return the mirror of the k-ary tree in array format.
+	 */
+	@SuppressWarnings("unchecked")
+	public E[] mirror(){ 
+				
+		E[] toReturn = (E[]) new Object[slotCount(0, this.height())]; //number of nodes of perfect tree
+		
+		mirrorTo(toReturn, 0); //add values in mirrored places to the return array
+		
+		return toReturn;
+	}	
+	
+	/**
+	 * Compare two trees and return the changes that turn the first into the second.
+	 * When both trees have hashing turned on with the same value hasher, subtrees with equal hashes
+	 * are skipped without visiting them, so the walk only follows the paths that changed, in
+	 * O(changes * k * height). See enableHashing() for the chance that a hash collision hides a change.
+	 * Otherwise the two trees are walked in lockstep and every value is compared, in O(n).
+	 * @param <E> the type of the values in the trees.
+	 * @param a the old tree.
+	 * @param b the new tree.
+	 * @return the patch that apply() uses to turn a into b.
+	 * @throws IllegalArgumentException if the trees have different branching factors.
+	 */
+	public static <E> TreePatch<E> diff(KTree<E> a, KTree<E> b){
+		
+		if(a.kValue != b.kValue){
+			throw new IllegalArgumentException("Trees with different k");
+		}
+		
+		ToLongFunction<Node<E>> hashA = null; //null for the lockstep walk
+		ToLongFunction<Node<E>> hashB = null;
+		if(a.hashes != null && b.hashes != null && a.valueHasher == b.valueHasher){ //hashes made the same way
+			hashA = node -> a.hashes.get(node.index);
+			hashB = node -> b.hashes.get(node.index);
+		}
+		
+		List<TreePatch.Operation> operations = new ArrayList<>();
+		List<Integer> indices = new ArrayList<>();
+		List<E> values = new ArrayList<>();
+		diffNodes(a.root, b.root, 0, a.kValue, hashA, hashB, operations, indices, values);
+		
+		return new TreePatch<E>(a.kValue, operations, indices, values);
+	}
+	
+	/**
+	 * This method supports the diff(), hashing and equality methods, it computes the hash of every subtree.
+	 * A subtree without values hashes to 0, the same as a missing one.
+	 * @param <E> the type of the values in the tree.
+	 * @param root the root of the subtree.
+	 * @param k the branching factor k.
+	 * @param valueHasher the 64-bit hash of one value.
+	 * @param sink receives every node and the hash of its subtree, or null.
+	 * @return the hash of the subtree.
+	 */
+	private static <E> long subtreeHash(Node<E> root, int k, ToLongFunction<? super E> valueHasher, ObjLongConsumer<Node<E>> sink){
+		
+		if(root == null){ //base case
+			return 0;
+		}
+		
+		long hash = valueHash(root.data, valueHasher);
+		for(int i = 0; i < k; i++){
+			hash = hash * 0x9E3779B97F4A7C15L + subtreeHash(root.child(i), k, valueHasher, sink); //children in order
+		}
+		hash = mix(hash);
+		
+		if(sink != null && hash != 0){
+			sink.accept(root, hash);
+		}
+		return hash;
+	}
+	
+	/**
+	 * The default 64-bit value hash of enableHashing(). Strings are hashed from all of their characters,
+	 * Long and Double values from all 64 bits, and other values from hashCode(), so values of other
+	 * types whose hashCode() collides hash alike. Pass a value hasher to enableHashing(valueHasher) for them.
+	 */
+	public static final ToLongFunction<Object> VALUE_HASH = KTree::defaultValueHash;
+	
+	/**
+	 * This method supports the VALUE_HASH value hasher.
+	 * @param value the value.
+	 * @return the 64-bit hash of the value.
+	 */
+	private static long defaultValueHash(Object value){
+		
+		if(value instanceof String){
+			String s = (String)value;
+			long hash = s.length();
+			for(int i = 0; i < s.length(); i++){
+				hash = (hash + s.charAt(i)) * 0x9E3779B97F4A7C15L; //every character, not the 32-bit hashCode()
+			}
+			return mix(hash);
+		}
+		if(value instanceof Long){
+			return mix((Long)value);
+		}
+		if(value instanceof Double){
+			return mix(Double.doubleToLongBits((Double)value));
+		}
+		return mix(value.hashCode());
+	}
+	
+	/**
+	 * Return the part of a subtree hash that comes from the value of its root.
+	 * @param <E> the type of the value.
+	 * @param data the value, or null.
+	 * @param valueHasher the 64-bit hash of one value.
+	 * @return 0 for no value, a value never hashes like no value.
+	 */
+	private static <E> long valueHash(E data, ToLongFunction<? super E> valueHasher){
+		
+		if(data == null){
+			return 0;
+		}
+		long hash = valueHasher.applyAsLong(data);
+		return (hash == 0) ? 1 : hash;
+	}
+	
+	/**
+	 * Scramble the bits of a hash, the finalizer of SplitMix64. It maps 0 to 0.
+	 * @param z the hash.
+	 * @return the scrambled hash.
+	 */
+	private static long mix(long z){
+		
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * This method supports the diff() method, it compares two subtrees at the same location.
+	 * @param <E> the type of the values in the trees.
+	 * @param x the node of the old tree, or null.
+	 * @param y the node of the new tree, or null.
+	 * @param index the location index of both nodes.
+	 * @param k the branching factor k.
+	 * @param hashX the hash of a subtree of the old tree, or null to compare every value.
+	 * @param hashY the hash of a subtree of the new tree, or null to compare every value.
+	 * @param operations the kinds of the changes found so far.
+	 * @param indices the locations of the changes found so far.
+	 * @param values the new values of the changes found so far.
+	 */
+	private static <E> void diffNodes(Node<E> x, Node<E> y, int index, int k, ToLongFunction<Node<E>> hashX, ToLongFunction<Node<E>> hashY,
+			List<TreePatch.Operation> operations, List<Integer> indices, List<E> values){
+		
+		if(hashX != null){
+			long hx = (x == null) ? 0 : hashX.applyAsLong(x);
+			long hy = (y == null) ? 0 : hashY.applyAsLong(y);
+			if(hx == hy){
+				return; //the subtrees hold the same values
+			}
+		}
+		
+		E vx = (x == null) ? null : x.data;
+		E vy = (y == null) ? null : y.data;
+		if(vx == null && vy != null){
+			operations.add(TreePatch.Operation.INSERT);
+		}
+		else if(vx != null && vy == null){
+			operations.add(TreePatch.Operation.REMOVE);
+		}
+		else if(vx != null && !vx.equals(vy)){
+			operations.add(TreePatch.Operation.UPDATE);
+		}
+		if(operations.size() > indices.size()){
+			indices.add(index);
+			values.add(vy);
+		}
+		
+		for(int i = 0, j = 1; i < k; i++, j++){
+			Node<E> cx = (x == null) ? null : x.child(i);
+			Node<E> cy = (y == null) ? null : y.child(i);
+			if(cx != null || cy != null){
+				diffNodes(cx, cy, index * k + j, k, hashX, hashY, operations, indices, values); //using k * index + c-th child of the node
+			}
+		}
+	}
+	
+	/**
+	 * Apply the changes of a patch made by diff(a, b) to this tree, which should hold the values of a.
+	 * Removes go from the deepest index up and inserts from the root down, so no step makes the tree invalid.
+	 * @param patch the changes.
+	 * @throws IllegalArgumentException if the patch has another k or a change does not fit this tree,
+	 * the changes before it have been applied then.
+	 */
+	public void apply(TreePatch<? extends E> patch){
+		
+		if(patch.getK() != kValue){
+			throw new IllegalArgumentException("Patch for k = " + patch.getK());
+		}
+		
+		for(int n = 0; n < patch.size(); n++){
+			int i = patch.getIndex(n);
+			if(!set(i, patch.getValue(n))){ //set() checks the parent and the children of i
+				throw new IllegalArgumentException("The patch does not fit the tree at index " + i);
+			}
+		}
+	}
+	
+	/****************************************/
+	/* EDIT THIS MAIN METHOD FOR TESTS. PUT */
+	/* HELPER TEST METHODS IN THIS SECTION  */
+	/* AS WELL. TESTS REQUIRED FOR FULL     */
+    /* CREDIT.                              */
+	/****************************************/
+	
+	/**
+	 * A main method to test/demo
+	 * @param args not used
+	 */
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) {
+		//change this method around to test!
+		//methodSigCheck();
+		//benchmarkDecode();
+		//loadTestDecodeService(10_000);
+		//benchmarkLayout();
+		//benchmarkAggregate();
+		//benchmarkDigits();
+		//benchmarkCompiled();
+		demoMetrics();
+		demoStatistics();
+		demoDecodeCache();
+		demoLookahead();
+		demoPacked();
+		demoAlphabet();
+		demoStreaming();
+		demoProcessor();
+		demoWalk();
+		demoBlockLayout();
+		demoCompact();
+		demoExport();
+		demoLevelRange();
+		demoIndexQueries();
+		demoDiff();
+		demoEquals();
+		demoSharedTree();
+		demoPruneGraft();
+		demoTrim();
+		demoReverseIndex();
+		demoFilteredIterators();
+		demoAggregate();
+		demoSelectRank();
+		demoDigits();
+		demoCompiled();
+		
+				
+//		String[] strings2 = { "a", "b", "c", null, "e", "f", null, "h", "i", "j", "k", "l", "m", null, null,
+//				null, null, "r", "s", null, null, "v", "w", "x", "y", null, null, null, null, null, null, null, null,
+//				null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+//				null, null, null, null, null, null, null, null,null, null, null, null,null, null, null, null,null, null, null, null,
+//				null, null, null, "z", null, null, null, null, null, null, null, null, 
+//				null, null, null, null};
+//		
+//		KTree<String> tree10 = new KTree<>(strings2, 4);
+//		
+//		System.out.println(tree10.size()); //18
+//		System.out.println(tree10.height()); //3
+//		System.out.println(tree10.numberOfNodes); //85
+//		System.out.println(tree10.getK()); //4
+//		System.out.println(tree10.get(0)); //a
+//		System.out.println(tree10.get(1)); //b
+////		System.out.println(tree10.get(3)); //IllegalArgumentException
+////		System.out.println(tree10.get(67)); //IllegalArgumentException
+//		System.out.println(tree10.get(4)); //e
+//		System.out.println(tree10.get(7)); //h
+//		System.out.println(tree10.get(17)); //r
+//		System.out.println(tree10.get(24)); //y
+//		System.out.println(tree10.get(72)); //z
+//		System.out.println();
+				
+//		System.out.println(tree10.set(0, "A")); //true
+//		System.out.println(tree10.set(13, "n")); //InvalidTreeException
+//		System.out.println(tree10.set(84, "hi")); //InvalidTreeException
+//		System.out.println(tree10.set(20, null)); //false
+//		System.out.println(tree10.set(5, null)); //false
+//		System.out.println(tree10.set(24, null)); //true
+//		System.out.println(tree10.set(85, "hey")); //true
+//		System.out.println(tree10.get(24)); //InvalidTreeException
+//		System.out.println(tree10.set(17, null)); //false
+//		System.out.println(tree10.get(17)); //still r
+//		System.out.println(tree10.height); //4
+//		System.out.println(tree10.numberOfNodes); //341
+//		System.out.println(tree10.set(-1, "ha")); //false
+
+//		Object o10[] = tree10.toArray();
+//		System.out.println(o10[0]); //a
+//		System.out.println(o10[3]); //null
+//		System.out.println(o10[12]); //m
+//		System.out.println(o10[72]); //z
+//		System.out.println(o10[84]); //null
+		
+//		String s10 = tree10.toString();
+//		System.out.println(s10); //walla long
+		
+//		Iterator<String> it10 = tree10.getLevelOrderIterator();
+//		System.out.println(it10.next());//a
+//		System.out.println(it10.next());//b
+//		System.out.println(it10.next());//c
+//		System.out.println(tree10.toStringLevelOrder()); 
+//
+//		Iterator<String> it10_1 = tree10.getPreOrderIterator();
+//		System.out.println(it10_1.next());//a
+//		System.out.println(it10_1.next());//b
+//		System.out.println(it10_1.next());//f
+//		System.out.println(tree10.toStringPreOrder());
+//		
+//		Iterator<String> it10_2 = tree10.getPostOrderIterator();
+//		System.out.println(it10_2.next());//v
+//		System.out.println(it10_2.next());//w
+//		System.out.println(it10_2.next());//x
+//		System.out.println(tree10.toStringPostOrder());
+		
+		//System.out.println(tree10.get(72));
+		
+//		String sDecode = decode(tree10, "0203001020031300331020030203"); //0203001020031300331020030203 
+//		System.out.println(sDecode); // hiwhymyshyhi
+		
+//		Object[] subtree10 = tree10.subtree(1);
+//		System.out.println(subtree10[0]); //b
+//		System.out.println(subtree10[1]); //f
+//		System.out.println(subtree10[2]); //null
+//		System.out.println(subtree10[4]); //i
+//		System.out.println(subtree10[8]); //y
+		
+//		Object[] mirror10 = tree10.mirror();
+//		System.out.println(mirror10[1]); //e
+//		System.out.println(mirror10[2]); //null
+//		System.out.println(mirror10[3]); //c
+//		System.out.println(mirror10[4]); //b
+//		System.out.println(mirror10[5]); //null
+//		System.out.println(mirror10[8]); //r
+//		System.out.println(mirror10[15]); //k
+//		System.out.println(mirror10[18]); //h
+//		System.out.println(mirror10[82]); //x
+//		System.out.println(mirror10[84]); //v
+
+
+		
+//		String[] strings = { "_", "_", "A", "B", "N", null, null };
+//		KTree<String> tree = new KTree<>(strings, 2);
+		
+//		boolean b = tree.set(0, "x"); //should set the root to "x"
+//		
+//		Object[] o = tree.toArray(); //should return [ "x", "_", "A", "B", "N", null, null ]
+//		System.out.println(o[0]); //x
+//		System.out.println(o[1]); //_
+//		System.out.println(o[2]); //A
+//		System.out.println(o[3]); //B
+//		System.out.println(o[4]); //N
+//		System.out.println(o[5]); //null
+//		System.out.println(o[6]); //null
+//		System.out.println();
+
+		
+//		System.out.println(tree.getK()); //2
+//		System.out.println(tree.size()); //5
+//		System.out.println(tree.height()); //2
+//		System.out.println(tree.get(0)); //_
+//		System.out.println(tree.get(3)); //B
 //		System.out.println(tree.get(2)); //A
 //		System.out.println(tree.get(4)); //N
 		//System.out.println(tree.get(6)); //Invalid
 
-//		Integer[] integers = { 1,2,3,4,5,6,7,8,9,10,11,12,13};
-//		KTree<Integer> tree2 = new KTree<>(integers, 3);
+//		Integer[] integers = { 1,2,3,4,5,6,7,8,9,10,11,12,13};
+//		KTree<Integer> tree2 = new KTree<>(integers, 3);
+		
+		//System.out.println(tree2.root.children[2].children[2].parent.parent.data);
+
+//		
+//		System.out.println(tree2.get(0)); //1
+//		System.out.println(tree2.get(2)); //3
+//		System.out.println(tree2.get(3)); //4
+//		System.out.println(tree2.get(6)); //7
+//		System.out.println(tree2.get(7)); //8
+//		System.out.println(tree2.get(8)); //9
+//		System.out.println(tree2.get(9)); //10
+//		System.out.println(tree2.get(11)); //12
+//		System.out.println(tree2.get(12)); //13
+
+//		System.out.println(tree2.getK()); //3
+//		System.out.println(tree2.size()); //13
+//		System.out.println(tree2.height()); //2
+
+//		Integer[] inputs = {0, null, 2, null, null, 5, 6};
+//		KTree<Integer> tree3 = new KTree<>(inputs, 2);
+		
+		//System.out.println(tree3.get(3));
+		
+//		System.out.println(tree3.set(4, 3)); //throws InvalidTreeException because 3 would not have a parent
+//		System.out.println(tree3.set(14, 14)); //but this should work and return true
+//		System.out.println(tree3.set(11, 11)); //but this should work and return true
+//		System.out.println(tree3.set(30, 30)); //but this should work and return true
+//		System.out.println(tree3.set(2, null)); //this should return false (2 has children)
+//		System.out.println(tree.set(-1, null)); //returns false due to invalid index
+		
+//		System.out.println(tree3.size());
+//		System.out.println(tree3.numberOfNodes);
+//		System.out.println(tree3.height());
+		//System.out.println(tree3.nodesCount());
+//		System.out.println();
+//		
+//		Object[] o1 = tree3.toArray(); //should return [ "0", "null", "2", null, null, "5", "6", ]
+//		System.out.println(o1[0]); //0
+//		System.out.println(o1[1]); //null
+//		System.out.println(o1[2]); //2
+//		System.out.println(o1[3]); //null
+//		System.out.println(o1[4]); //null
+//		System.out.println(o1[5]); //5
+//		System.out.println(o1[6]); //6
+//		System.out.println();
+		
+//		System.out.println(tree3.get(0)); //0
+//		System.out.println(tree3.get(1)); //invalid
+//		System.out.println(tree3.get(6)); //6
+//		System.out.println(tree3.get(11)); //invalid
+
+//		Object[] output = tree3.toArray();
+//		System.out.println(output[0]);
+		
+//		System.out.println(tree3.toString());
+		//tree2.toString();
+		
+//		Iterator<String> it = tree.getPreOrderIterator();
+//		System.out.println(it.next()); //_
+//		System.out.println(it.next()); //_
+//		System.out.println(it.next()); //A
+//		System.out.println(it.next()); //B
+//		System.out.println(it.next()); //N
+//		System.out.println(it.next()); //null
+		
+//		String s1 = tree.toStringLevelOrder();
+//		System.out.println(s1);
+//		
+//		String s1_5 = tree.toStringPreOrder();
+//		System.out.println(s1_5);
+//		
+//		String s1_6 = tree.toStringPostOrder();
+//		System.out.println(s1_6);
+		
+//
+//		Iterator<Integer> it3 = tree3.getPreOrderIterator();
+//		System.out.println(it3.next()); //0
+//		System.out.println(it3.next()); //2
+//		System.out.println(it3.next()); //5
+//		System.out.println(it3.next()); //6
+		
+//		Iterator<Integer> it2 = tree2.getPreOrderIterator();
+//		System.out.println(it2.next()); //1
+//		System.out.println(it2.next()); //2
+//		System.out.println(it2.next()); //5
+//		System.out.println(it2.next()); //6
+//		System.out.println(it2.next()); //7
+//		System.out.println(it2.next()); //3
+//		System.out.println(it2.next()); //8
+		
+//		Integer[] input4 = {0, 1, 2, null, 4, 5, null};
+//		KTree<Integer> tree4 = new KTree<>(input4, 2);
+//		Iterator<Integer> it4 = tree4.getPreOrderIterator();
+//		System.out.println(it4.next()); //0
+//		System.out.println(it4.next()); //1
+//		System.out.println(it4.next()); //4
+//		System.out.println(it4.next()); //2
+//		System.out.println(it4.next()); //5
+//		System.out.println();
+//		
+//		String s5_1 = tree4.toStringPreOrder();
+//		System.out.println(s5_1);
+//		
+//		Iterator<Integer> it5 = tree4.getLevelOrderIterator();
+//		System.out.println(it5.next()); //0
+//		System.out.println(it5.next()); //1
+//		System.out.println(it5.next()); //2
+//		System.out.println(it5.next()); //4
+//		System.out.println(it5.next()); //5
+//		System.out.println();
+//		
+//		String s5 = tree4.toStringLevelOrder();
+//		System.out.println(s5);
+//		
+//		Iterator<Integer> it10 = tree4.getPostOrderIterator();
+//		System.out.println(it10.next()); //4
+//		System.out.println(it10.next()); //1
+//		System.out.println(it10.next()); //5
+//		System.out.println(it10.next()); //2
+//		System.out.println(it10.next()); //0
+//		System.out.println();
+//		
+//		String s5_2 = tree4.toStringPostOrder();
+//		System.out.println(s5_2);
+//		
+//		Iterator<Integer> it6 = tree2.getLevelOrderIterator();
+//		System.out.println(it6.next()); //1
+//		System.out.println(it6.next()); //2
+//		System.out.println(it6.next()); //3
+//		System.out.println(it6.next()); //4
+//		System.out.println(it6.next()); //5
+//		System.out.println(it6.next()); //6
+//		System.out.println(it6.next()); //7
+//		
+//		String s6 = tree2.toStringLevelOrder();
+//		System.out.println(s6);
+//		String s6_1 = tree2.toStringPreOrder();
+//		System.out.println(s6_1);
+//		String s6_2 = tree2.toStringPostOrder();
+//		System.out.println(s6_2);
+		
+//		String s6 = decode(tree, "001011011"); //should be "BANANA"
+//		
+//		System.out.println(s6); //BANANA
+		
+//		Object[] o = tree.toArray(); //should return [ "_", "_", "A", "B", "N", null, null ]
+//		System.out.println(o[0]); //_
+//		System.out.println(o[1]); //_
+//		System.out.println(o[2]); //A
+//		System.out.println(o[3]); //B
+//		System.out.println(o[4]); //N
+//		System.out.println(o[5]); //null
+//		System.out.println(o[6]); //null
+//		System.out.println();
+//		
+//		Object[] o1 = tree3.toArray(); //should return [ "0", "null", "2", null, null, "5", "6", ]
+//		System.out.println(o1[0]); //0
+//		System.out.println(o1[1]); //null
+//		System.out.println(o1[2]); //2
+//		System.out.println(o1[3]); //null
+//		System.out.println(o1[4]); //null
+//		System.out.println(o1[5]); //5
+//		System.out.println(o1[6]); //6
+//		System.out.println();
+//
+//		Object[] o2 = tree2.toArray(); //should return [ 1 2 3 4 5 6 7 8 9 10 11 12 13 ]
+//		System.out.println(o2[0]); //1
+//		System.out.println(o2[1]); //2
+//		System.out.println(o2[2]); //3
+//		System.out.println(o2[3]); //4
+//		System.out.println(o2[4]); //5
+//		System.out.println(o2[5]); //6
+//		System.out.println(o2[6]); //7
+//		System.out.println(o2[7]); //8
+//		System.out.println(o2[8]); //9
+//		System.out.println(o2[9]); //10
+//		System.out.println(o2[10]); //11
+//		System.out.println(o2[11]); //12
+//		System.out.println(o2[12]); //13
+		
+//		Object[] sub1 = tree.subtree(1); //should return [ "_", "B", "N" ]
+//		System.out.println(sub1[0]); //_
+//		System.out.println(sub1[1]); //B
+//		System.out.println(sub1[2]); //N
+//		System.out.println();
+//		
+//		Object[] sub2 = tree2.subtree(2); //should return [3 8 9 10]
+//		System.out.println(sub2[0]); //3
+//		System.out.println(sub2[1]); //8
+//		System.out.println(sub2[2]); //9
+//		System.out.println(sub2[3]); //10
+		
+//		Object[] mirror1 = tree.mirror(); //should return [ "_", "A", "_", null, null, "N", "B" ]
+//		System.out.println(mirror1[0]); //_
+//		System.out.println(mirror1[1]); //A
+//		System.out.println(mirror1[2]); //_
+//		System.out.println(mirror1[3]); //null
+//		System.out.println(mirror1[4]); //null
+//		System.out.println(mirror1[5]); //N
+//		System.out.println(mirror1[6]); //B
+//		System.out.println();
+//		
+//		Object[] mirror2 = tree2.mirror(); //should return [ 1 4 3 2 13 12 11 10 9 8 7 6 5]
+//		//System.out.println(mirror2.length);
+//		System.out.println(mirror2[0]); //1
+//		System.out.println(mirror2[1]); //4
+//		System.out.println(mirror2[2]); //3
+//		System.out.println(mirror2[3]); //2
+//		System.out.println(mirror2[4]); //13
+//		System.out.println(mirror2[5]); //12
+//		System.out.println(mirror2[6]); //11
+//		System.out.println(mirror2[7]); //10
+//		System.out.println(mirror2[8]); //9
+//		System.out.println(mirror2[9]); //8
+//		System.out.println(mirror2[10]); //7
+//		System.out.println(mirror2[11]); //6
+//		System.out.println(mirror2[12]); //5
+//		System.out.println();
+		
+		String[] s100 = {"_", "A", "P", "O", "E", "L"};
+		KTree<String> tree100 = new KTree<String>(s100, 5);
+				
+		//System.out.println(tree100.toStringLevelOrder());
+		System.out.println(tree100.toString());
+		
+		String[] s101 = {"_", "Q", "W", null, "R"};
+		KTree<String> tree101 = new KTree<String>(s101, 4);
+
+		//System.out.println(tree101.toStringLevelOrder());
+		System.out.println(tree101.toString());
+
+		
+		String[] s102 = {"_","_", "_", "_", "E", null, "V", null, "I", "L", "S", null, null};
+		KTree<String> tree102 = new KTree<String>(s102, 3);
+
+		//System.out.println(tree102.toStringLevelOrder());
+		System.out.println(tree102.toString());
+
+		
+		String[] s103 = {null, null, null};
+		KTree<String> tree103 = new KTree<String>(s103, 2);
+
+		//System.out.println(tree103.toStringLevelOrder());
+		System.out.println(tree103.toString());
+		Object[] a103 = tree103.toArray();
+		System.out.println(a103.length);
+		System.out.println(tree103.height);
+		
+		String[] s104 = {"A","B","C","D","E",null,null};
+		KTree<String> tree104 = new KTree<String>(s104, 2);
+
+		System.out.println(tree104.toStringLevelOrder());
+		
+		Integer[] s105 = {1,2,3,4,null,null,null,5,6,7,null,null,null,null,null,null,null,null,null,null,null};
+		KTree<Integer> tree105 = new KTree<Integer>(s105, 4);
+		System.out.println(tree105.toStringPreOrder());
+
+	}
+	
+	/**
+	 * Compare the throughput of decode() and decodeLookahead() on Huffman trees of the alphabet for several k.
+	 */
+	public static void benchmarkDecode(){
+		
+		java.util.Random random = new java.util.Random(310);
+		
+		for(int k : new int[]{2, 3, 4, 8, 10}){
+			
+			java.util.Map<String, Integer> frequencies = new java.util.LinkedHashMap<>();
+			for(char c = 'A'; c <= 'Z'; c++){
+				frequencies.put(String.valueOf(c), 1 + random.nextInt(100));
+			}
+			KTree<String> tree = KTreeAdvisor.optimalTree(frequencies, k, "_");
+			
+			StringBuilder message = new StringBuilder();
+			for(int i = 0; i < 1_000_000; i++){
+				message.append((char)('0' + random.nextInt(k)));
+			}
+			String codedMessage = message.toString();
+			
+			if(!decode(tree, codedMessage).equals(decodeLookahead(tree, codedMessage))){
+				throw new IllegalStateException("decodeLookahead() differs from decode() for k = " + k);
+			}
+			
+			long plain = Long.MAX_VALUE;
+			long table = Long.MAX_VALUE;
+			for(int round = 0; round < 10; round++){ //best of 10 after warming up above
+				long start = System.nanoTime();
+				decode(tree, codedMessage);
+				plain = Math.min(plain, System.nanoTime() - start);
+				start = System.nanoTime();
+				decodeLookahead(tree, codedMessage);
+				table = Math.min(table, System.nanoTime() - start);
+			}
+			
+			System.out.printf("k=%d width=%d decode %.1f M instr/s, lookahead %.1f M instr/s%n", k, tree.lookahead.getWidth(),
+					codedMessage.length() * 1e3 / plain, codedMessage.length() * 1e3 / table);
+		}
+	}
+	
+	/**
+	 * Compare decode() and a pre-order walk on the linked nodes and on both block layouts
+	 * of a perfect 4-ary tree with about 1.4 million nodes, far larger than the CPU caches.
+	 */
+	public static void benchmarkLayout(){
+		
+		int k = 4;
+		String[] strings = new String[(int)(Math.pow(k, 11) - 1) / (k - 1)]; //perfect tree of height 10
+		int firstLeaf = (int)(Math.pow(k, 10) - 1) / (k - 1);
+		for(int i = 0; i < strings.length; i++){
+			strings[i] = (i < firstLeaf) ? "_" : String.valueOf((char)('a' + i % 26));
+		}
+		KTree<String> tree = new KTree<>(strings, k);
+		BlockLayout<String> levelLayout = tree.toBlockLayout(false);
+		BlockLayout<String> vebLayout = tree.toBlockLayout(true);
+		
+		java.util.Random random = new java.util.Random(310);
+		StringBuilder message = new StringBuilder();
+		for(int i = 0; i < 10_000_000; i++){
+			message.append((char)('0' + random.nextInt(k)));
+		}
+		String codedMessage = message.toString();
+		
+		long[] best = new long[6];
+		java.util.Arrays.fill(best, Long.MAX_VALUE);
+		for(int round = 0; round < 5; round++){ //best of 5
+			long start = System.nanoTime();
+			String expected = decode(tree, codedMessage);
+			best[0] = Math.min(best[0], System.nanoTime() - start);
+			start = System.nanoTime();
+			String level = decode(levelLayout, codedMessage);
+			best[1] = Math.min(best[1], System.nanoTime() - start);
+			start = System.nanoTime();
+			String veb = decode(vebLayout, codedMessage);
+			best[2] = Math.min(best[2], System.nanoTime() - start);
+			if(!expected.equals(level) || !expected.equals(veb)){
+				throw new IllegalStateException("Block layout decode differs from decode()");
+			}
+			
+			Iterator<?>[] walks = {tree.getPreOrderIterator(), levelLayout.getPreOrderIterator(), vebLayout.getPreOrderIterator()};
+			for(int w = 0; w < walks.length; w++){
+				start = System.nanoTime();
+				while(walks[w].hasNext()){
+					walks[w].next();
+				}
+				best[3 + w] = Math.min(best[3 + w], System.nanoTime() - start);
+			}
+		}
+		
+		System.out.printf("decode: nodes %d ms, level blocks %d ms, vEB blocks %d ms%n", best[0] / 1_000_000, best[1] / 1_000_000, best[2] / 1_000_000);
+		System.out.printf("pre-order walk: nodes %d ms, level blocks %d ms, vEB blocks %d ms%n", best[3] / 1_000_000, best[4] / 1_000_000, best[5] / 1_000_000);
+	}
+	
+	/**
+	 * Decode many concurrent streams with one DecodeService over loopback sockets, one connection per stream.
+	 * One writer thread sends BANANA to every stream in turn while the main thread drains every session.
+	 * Every stream takes two file descriptors, so the open file limit has to allow twice the streams.
+	 * @param streams the number of concurrent streams.
+	 */
+	public static void loadTestDecodeService(int streams){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		int rounds = 20;
+		
+		try(DecodeService service = new DecodeService(tree, 4);
+				java.net.ServerSocket server = new java.net.ServerSocket(0, streams, java.net.InetAddress.getLoopbackAddress())){
+			
+			java.net.Socket[] senders = new java.net.Socket[streams];
+			DecodeService.Session[] sessions = new DecodeService.Session[streams];
+			for(int i = 0; i < streams; i++){
+				senders[i] = new java.net.Socket(server.getInetAddress(), server.getLocalPort());
+				java.net.Socket accepted = server.accept();
+				sessions[i] = service.open(new java.io.InputStreamReader(accepted.getInputStream(), java.nio.charset.StandardCharsets.US_ASCII));
+			}
+			
+			long start = System.nanoTime();
+			
+			Thread sender = new Thread(() -> {
+				try{
+					byte[] message = "001011011".getBytes(java.nio.charset.StandardCharsets.US_ASCII); //BANANA
+					for(int round = 0; round < rounds; round++){
+						for(java.net.Socket socket : senders){
+							socket.getOutputStream().write(message);
+						}
+					}
+					for(java.net.Socket socket : senders){
+						socket.close();
+					}
+				}
+				catch(IOException e){
+					throw new IllegalStateException(e);
+				}
+			});
+			sender.start();
+			
+			long decoded = 0;
+			int open = streams;
+			while(open > 0){
+				for(DecodeService.Session session : sessions){
+					if(!session.isEnded()){
+						String chunk = session.poll(0, java.util.concurrent.TimeUnit.MILLISECONDS);
+						if(chunk != null){
+							decoded += chunk.length();
+						}
+						else if(session.isEnded()){
+							open--;
+						}
+					}
+				}
+			}
+			sender.join();
+			
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("%d streams, %d letters decoded (expected %d) in %.2f s%n", streams, decoded,
+					6L * rounds * streams, elapsed / 1e9);
+		}
+		catch(IOException | InterruptedException e){
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Compare aggregate() on one thread and on the common fork-join pool, computing subtree sizes
+	 * and subtree weight sums of a perfect binary tree with about 16.7 million nodes.
+	 */
+	public static void benchmarkAggregate(){
 		
-		//System.out.println(tree2.root.children[2].children[2].parent.parent.data);
-
-//		
-//		System.out.println(tree2.get(0)); //1
-//		System.out.println(tree2.get(2)); //3
-//		System.out.println(tree2.get(3)); //4
-//		System.out.println(tree2.get(6)); //7
-//		System.out.println(tree2.get(7)); //8
-//		System.out.println(tree2.get(8)); //9
-//		System.out.println(tree2.get(9)); //10
-//		System.out.println(tree2.get(11)); //12
-//		System.out.println(tree2.get(12)); //13
-
-//		System.out.println(tree2.getK()); //3
-//		System.out.println(tree2.size()); //13
-//		System.out.println(tree2.height()); //2
-
-//		Integer[] inputs = {0, null, 2, null, null, 5, 6};
-//		KTree<Integer> tree3 = new KTree<>(inputs, 2);
+		int k = 2;
+		Integer[] weights = new Integer[(1 << 24) - 1]; //perfect tree of height 23
+		for(int i = 0; i < weights.length; i++){
+			weights[i] = i % 100;
+		}
+		KTree<Integer> tree = new KTree<>(weights, k);
+		ForkJoinPool single = new ForkJoinPool(1);
+		
+		long[] best = new long[2];
+		java.util.Arrays.fill(best, Long.MAX_VALUE);
+		for(int round = 0; round < 5; round++){ //best of 5
+			long start = System.nanoTime();
+			long[] sizes = tree.aggregate(v -> 1, Long::sum, single);
+			long[] sums = tree.aggregate(v -> v, Long::sum, single);
+			best[0] = Math.min(best[0], System.nanoTime() - start);
+			start = System.nanoTime();
+			long[] parallelSizes = tree.aggregate(v -> 1, Long::sum);
+			long[] parallelSums = tree.aggregate(v -> v, Long::sum);
+			best[1] = Math.min(best[1], System.nanoTime() - start);
+			if(sizes[0] != weights.length || !java.util.Arrays.equals(sizes, parallelSizes) || !java.util.Arrays.equals(sums, parallelSums)){
+				throw new IllegalStateException("Parallel aggregate differs from one thread");
+			}
+		}
+		single.shutdown();
 		
-		//System.out.println(tree3.get(3));
+		System.out.printf("aggregate: 1 thread %d ms, %d threads %d ms (%.1fx)%n", best[0] / 1_000_000,
+				ForkJoinPool.commonPool().getParallelism(), best[1] / 1_000_000, (double)best[0] / best[1]);
+	}
+	
+	/**
+	 * Compare the DigitTranslator front end 8 bytes at a time against one byte at a time,
+	 * and decode() against decodeDigits() on the same 16 million digit message.
+	 */
+	public static void benchmarkDigits(){
 		
-//		System.out.println(tree3.set(4, 3)); //throws InvalidTreeException because 3 would not have a parent
-//		System.out.println(tree3.set(14, 14)); //but this should work and return true
-//		System.out.println(tree3.set(11, 11)); //but this should work and return true
-//		System.out.println(tree3.set(30, 30)); //but this should work and return true
-//		System.out.println(tree3.set(2, null)); //this should return false (2 has children)
-//		System.out.println(tree.set(-1, null)); //returns false due to invalid index
+		java.util.Random random = new java.util.Random(49);
+		
+		for(int k : new int[]{2, 4, 10}){
+			
+			java.util.Map<String, Integer> frequencies = new java.util.LinkedHashMap<>();
+			for(char c = 'A'; c <= 'Z'; c++){
+				frequencies.put(String.valueOf(c), 1 + random.nextInt(100));
+			}
+			KTree<String> tree = KTreeAdvisor.optimalTree(frequencies, k, "_");
+			
+			byte[] digits = new byte[1 << 24];
+			for(int i = 0; i < digits.length; i++){
+				digits[i] = (byte)('0' + random.nextInt(k));
+			}
+			String codedMessage = new String(digits, java.nio.charset.StandardCharsets.ISO_8859_1);
+			byte[] numbers = new byte[digits.length];
+			
+			if(!decode(tree, codedMessage).equals(decodeDigits(tree, digits, 0, digits.length))
+					|| !decode(tree, codedMessage).equals(decodeDigits(tree, codedMessage))){
+				throw new IllegalStateException("decodeDigits() differs from decode() for k = " + k);
+			}
+			
+			long[] best = new long[5];
+			java.util.Arrays.fill(best, Long.MAX_VALUE);
+			for(int round = 0; round < 10; round++){ //best of 10 after warming up above
+				long start = System.nanoTime();
+				DigitTranslator.translate(digits, 0, numbers, 0, digits.length, k);
+				best[0] = Math.min(best[0], System.nanoTime() - start);
+				start = System.nanoTime();
+				DigitTranslator.translateScalar(digits, 0, numbers, 0, digits.length, k);
+				best[1] = Math.min(best[1], System.nanoTime() - start);
+				start = System.nanoTime();
+				decodeMessage(tree, codedMessage);
+				best[2] = Math.min(best[2], System.nanoTime() - start);
+				start = System.nanoTime();
+				decodeDigits(tree, codedMessage);
+				best[3] = Math.min(best[3], System.nanoTime() - start);
+				start = System.nanoTime();
+				decodeDigits(tree, digits, 0, digits.length);
+				best[4] = Math.min(best[4], System.nanoTime() - start);
+			}
+			
+			System.out.printf("k=%d translate %.0f MB/s, scalar %.0f MB/s; decode %.1f, decodeDigits(String) %.1f, decodeDigits(byte[]) %.1f M instr/s%n", k,
+					digits.length * 1e3 / best[0], digits.length * 1e3 / best[1], digits.length * 1e3 / best[2],
+					digits.length * 1e3 / best[3], digits.length * 1e3 / best[4]);
+		}
+	}
+	
+	/**
+	 * Compare decode(), decodeLookahead(), decodeDigits() and decodeCompiled() on 16 million instructions,
+	 * once random and once encoding text made of a few hundred words. decodeDigits() shares the front end
+	 * of decodeCompiled(), so the difference between those two is the generated code against the node walk.
+	 */
+	public static void benchmarkCompiled(){
+		
+		java.util.Random random = new java.util.Random(50);
+		
+		for(int k : new int[]{2, 4, 10}){
+			
+			java.util.Map<String, Integer> frequencies = new java.util.LinkedHashMap<>();
+			for(char c = 'A'; c <= 'Z'; c++){
+				frequencies.put(String.valueOf(c), 1 + random.nextInt(100));
+			}
+			KTree<String> tree = KTreeAdvisor.optimalTree(frequencies, k, "_");
+			
+			String[] codes = new String[26]; //instructions of every letter, from its location index
+			for(char c = 'A'; c <= 'Z'; c++){
+				StringBuilder code = new StringBuilder();
+				for(int i = tree.indexOf(String.valueOf(c)); i > 0; i = (i - 1) / k){
+					code.append((char)('0' + (i - 1) % k));
+				}
+				codes[c - 'A'] = code.reverse().toString();
+			}
+			String[] words = new String[300];
+			for(int w = 0; w < words.length; w++){
+				StringBuilder word = new StringBuilder();
+				for(int n = 3 + random.nextInt(6); n > 0; n--){
+					word.append(codes[random.nextInt(26)]);
+				}
+				words[w] = word.toString();
+			}
+			
+			byte[][] messages = new byte[2][1 << 24];
+			for(int i = 0; i < messages[0].length; i++){
+				messages[0][i] = (byte)('0' + random.nextInt(k));
+			}
+			for(int i = 0; i < messages[1].length;){
+				String word = words[random.nextInt(words.length)];
+				for(int n = 0; n < word.length() && i < messages[1].length; n++){
+					messages[1][i++] = (byte)word.charAt(n);
+				}
+			}
+			
+			for(byte[] digits : messages){
+				
+				String codedMessage = new String(digits, java.nio.charset.StandardCharsets.ISO_8859_1);
+				
+				String expected = decode(tree, codedMessage);
+				if(!expected.equals(decodeCompiled(tree, digits, 0, digits.length)) || !expected.equals(decodeCompiled(tree, codedMessage))
+						|| !expected.equals(decodeLookahead(tree, codedMessage))){
+					throw new IllegalStateException("decodeCompiled() differs from decode() for k = " + k);
+				}
+				
+				long[] best = new long[4];
+				java.util.Arrays.fill(best, Long.MAX_VALUE);
+				for(int round = 0; round < 10; round++){ //best of 10 after warming up above
+					long start = System.nanoTime();
+					decodeMessage(tree, codedMessage);
+					best[0] = Math.min(best[0], System.nanoTime() - start);
+					start = System.nanoTime();
+					decodeLookahead(tree, codedMessage);
+					best[1] = Math.min(best[1], System.nanoTime() - start);
+					start = System.nanoTime();
+					decodeDigits(tree, digits, 0, digits.length);
+					best[2] = Math.min(best[2], System.nanoTime() - start);
+					start = System.nanoTime();
+					decodeCompiled(tree, digits, 0, digits.length);
+					best[3] = Math.min(best[3], System.nanoTime() - start);
+				}
+				
+				System.out.printf("k=%d %s compiled=%b decode %.1f, lookahead %.1f, decodeDigits %.1f, decodeCompiled %.1f M instr/s%n", k,
+						(digits == messages[0]) ? "random" : "words ", tree.compiledDecoder.isCompiled(), digits.length * 1e3 / best[0],
+						digits.length * 1e3 / best[1], digits.length * 1e3 / best[2], digits.length * 1e3 / best[3]);
+			}
+		}
+	}
+	
+	/**
+	 * Demo of the operation metrics and a metrics listener, see enableMetrics().
+	 */
+	public static void demoMetrics(){
+		
+		String[] strings = { "_", "_", "A", null, "N" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		KTreeMetrics metrics = tree.enableMetrics();
+		int[] resets = new int[1];
+		metrics.addListener(new KTreeListener(){
+			public void messageDecoded(int symbols, int leaves, int resetCount){
+				resets[0] += resetCount;
+			}
+		});
+		
+		System.out.println(decode(tree, "0001")); //N
+		System.out.println(tree.get(2)); //A
+		System.out.println(metrics.getDecodeCount()); //1
+		System.out.println(metrics.getSymbolsDecoded()); //4
+		System.out.println(metrics.getLeavesEmitted()); //1
+		System.out.println(metrics.getRootResets()); //1
+		System.out.println(resets[0]); //1
+		System.out.println(metrics.getGetCount()); //1
+		
+		tree.setMetrics(null); //nothing is counted any more
+		tree.get(2);
+		System.out.println(metrics.getGetCount()); //1
+	}
+	
+	/**
+	 * Demo of the shape statistics and the Huffman tree advisor, see statistics() and KTreeAdvisor.
+	 */
+	public static void demoStatistics(){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		KTreeStatistics statistics = tree.statistics();
+		
+		System.out.println(statistics.getLeafCount()); //3
+		System.out.println(Arrays.toString(statistics.getLevelOccupancy())); //[1, 2, 2]
+		System.out.println(Arrays.toString(statistics.getLeafDepthHistogram())); //[0, 1, 2]
+		System.out.println(statistics.getPerfectSize()); //7
+		System.out.println(statistics.getAverageLeafDepth() * 3); //5.0
+		
+		HashMap<String, Integer> frequencies = new HashMap<>();
+		frequencies.put("B", 5);
+		frequencies.put("A", 1);
+		frequencies.put("N", 1);
+		System.out.println(KTreeAdvisor.averageCodeLength(tree, frequencies) * 7); //13.0
+		KTree<String> optimal = KTreeAdvisor.optimalTree(frequencies, 2, "_");
+		System.out.println(KTreeAdvisor.averageCodeLength(optimal, frequencies) * 7); //9.0
+		System.out.println(optimal.get(1)); //B
+	}
+	
+	/**
+	 * Demo of the decode cache and its invalidation when the tree changes, see enableDecodeCache().
+	 */
+	public static void demoDecodeCache(){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		DecodeCache cache = tree.enableDecodeCache(1 << 20);
+		
+		System.out.println(decode(tree, "001011011")); //BANANA
+		System.out.println(decode(tree, "001011011")); //BANANA
+		System.out.println(cache.getHits()); //1
+		System.out.println(cache.getMisses()); //1
+		System.out.println(cache.size()); //1
+		
+		tree.set(3, "C"); //the cached BANANA is out of date now
+		System.out.println(cache.getInvalidations()); //1
+		System.out.println(cache.size()); //0
+		System.out.println(decode(tree, "001011011")); //CANANA
+		System.out.println(cache.getMisses()); //2
+	}
+	
+	/**
+	 * Demo of decoding with lookahead tables, see decodeLookahead().
+	 */
+	public static void demoLookahead(){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		String message = "001011011".repeat(3) + "0"; //ends partway down the tree
+		
+		System.out.println(decodeLookahead(tree, message)); //BANANABANANABANANA
+		System.out.println(decodeLookahead(tree, message).equals(decode(tree, message))); //true
+		
+		tree.set(4, "M"); //the tables are rebuilt after a change
+		System.out.println(decodeLookahead(tree, "001011011")); //BAMAMA
+	}
+	
+	/**
+	 * Demo of packing a message into bits and decoding it back, see decodePacked().
+	 */
+	public static void demoPacked(){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		byte[] packed = PackedDigits.pack("001011011", 2); //one bit per instruction
+		System.out.println(packed.length); //6
+		System.out.println(PackedDigits.readCount(packed)); //9
+		System.out.println(Arrays.toString(PackedDigits.unpack(packed, 2))); //[0, 0, 1, 0, 1, 1, 0, 1, 1]
+		System.out.println(decodePacked(tree, packed)); //BANANA
+		
+		String[] strings3 = { "_", "A", "B", "C" };
+		KTree<String> tree3 = new KTree<>(strings3, 3);
+		byte[] packed3 = PackedDigits.pack("2101", 3); //two bits per instruction
+		System.out.println(decodePacked(tree3, packed3)); //CBAB
+		
+		packed3[PackedDigits.HEADER_BYTES] = (byte)0xC0; //a damaged first instruction of 3
+		try{
+			decodePacked(tree3, packed3);
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			System.out.println(e.getClass().getSimpleName()); //ArrayIndexOutOfBoundsException
+		}
+	}
+	
+	/**
+	 * Demo of decoding with an instruction alphabet and with bytes for k above 10, see decode(KTree, CharSequence, SymbolAlphabet).
+	 */
+	public static void demoAlphabet(){
+		
+		String[] strings = { "_", "A", "B", "C", "D", "E", "F", "G", "H", "I", "J", "K", "L" };
+		KTree<String> tree = new KTree<>(strings, 12);
+		SymbolAlphabet alphabet = SymbolAlphabet.forK(tree.getK());
+		
+		System.out.println(alphabet); //0123456789abcdef
+		System.out.println(decode(tree, "b0a", alphabet)); //LAK
+		System.out.println(decode(tree, "B-0-A", alphabet)); //LAK
+		System.out.println(decodeBytes(tree, new byte[] { 11, 0, 10 })); //LAK
+		
+		try{
+			decode(tree, "b0c", alphabet); //c is child 12, past the last child
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			System.out.println(e.getClass().getSimpleName()); //ArrayIndexOutOfBoundsException
+		}
+		try{
+			decodeBytes(tree, new byte[] { 11, 0, 12 });
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			System.out.println(e.getClass().getSimpleName()); //ArrayIndexOutOfBoundsException
+		}
+	}
+	
+	/**
+	 * Demo of decoding a message that arrives in chunks, see Decoder and DecodeService.
+	 */
+	public static void demoStreaming(){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		Decoder decoder = new Decoder(tree);
+		StringBuilder decoded = new StringBuilder();
+		decoder.feed("0010", decoded); //ends partway down the tree
+		System.out.println(decoded); //BA
+		System.out.println(decoder.isAtRoot()); //false
+		decoder.feed("110", decoded);
+		decoder.feedBytes(new byte[] { 1, 1 }, 0, 2, decoded); //bytes are instructions, not digits
+		System.out.println(decoded); //BANANA
+		System.out.println(decoder.isAtRoot()); //true
+		
+		DecodeService service = new DecodeService(tree, 4);
+		try{
+			DecodeService.Session session = service.open(new java.io.StringReader("001011011"));
+			System.out.println(session.take()); //BANANA
+			System.out.println(session.take()); //null
+			
+			DecodeService.Session failing = service.open(new java.io.StringReader("0012")); //2 is not a child
+			try{
+				failing.take();
+			}
+			catch(IOException e){
+				System.out.println(e.getCause().getClass().getSimpleName()); //ArrayIndexOutOfBoundsException
+			}
+		}
+		catch(IOException | InterruptedException e){
+			throw new IllegalStateException(e);
+		}
+		finally{
+			service.close();
+		}
+	}
+	
+	/**
+	 * Demo of a decoding stage between two Flow publishers, see DecodeProcessor.
+	 */
+	public static void demoProcessor(){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		java.util.concurrent.SubmissionPublisher<CharSequence> source = new java.util.concurrent.SubmissionPublisher<>();
+		DecodeProcessor<CharSequence> processor = DecodeProcessor.forCharacters(tree, 4);
+		source.subscribe(processor);
+		List<String> batches = new ArrayList<>();
+		java.util.concurrent.CompletableFuture<Void> done = processor.consume(batches::add);
+		source.submit("0010");
+		source.submit("110");
+		source.submit("11");
+		source.close();
+		done.join();
+		System.out.println(batches); //[BANA, NA]
+		
+		java.util.concurrent.SubmissionPublisher<CharSequence> badSource = new java.util.concurrent.SubmissionPublisher<>();
+		DecodeProcessor<CharSequence> failing = DecodeProcessor.forCharacters(tree, 4);
+		badSource.subscribe(failing);
+		java.util.concurrent.CompletableFuture<Void> failed = failing.consume(batch -> {});
+		badSource.submit("0012"); //2 is not a child
+		badSource.close();
+		try{
+			failed.join();
+		}
+		catch(java.util.concurrent.CompletionException e){
+			System.out.println(e.getCause().getClass().getSimpleName()); //ArrayIndexOutOfBoundsException
+		}
+	}
+	
+	/**
+	 * Demo of the single pass walk that gives every traversal order, see walk() and toStringOrders().
+	 */
+	public static void demoWalk(){
+		
+		String[] strings = { "a", "b", "c", "d", "e", null, "g" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		StringBuilder entered = new StringBuilder();
+		StringBuilder exited = new StringBuilder();
+		tree.walk(new TreeVisitor<String>(){
+			public void enter(int index, String value, int depth){
+				entered.append(value).append(index).append('@').append(depth).append(' '); //value, location index and depth
+			}
+			
+			public void exit(int index, String value, int depth){
+				exited.append(value).append(index).append(' ');
+			}
+		});
+		System.out.println(entered.toString().trim()); //a0@0 b1@1 d3@2 e4@2 c2@1 g6@2
+		System.out.println(exited.toString().trim()); //d3 e4 b1 g6 c2 a0
+		System.out.println(tree.walkLevels(null)); //[[a], [b, c], [d, e, g]]
+		
+		String[] orders = tree.toStringOrders();
+		System.out.println(orders[0].trim()); //a b c d e g
+		System.out.println(orders[1].trim()); //a b d e c g
+		System.out.println(orders[2].trim()); //d e b g c a
+		System.out.println(orders[0].equals(tree.toStringLevelOrder())); //true
+		System.out.println(orders[1].equals(tree.toStringPreOrder())); //true
+		System.out.println(orders[2].equals(tree.toStringPostOrder())); //true
+	}
+	
+	/**
+	 * Demo of the block layout with contiguous child blocks, see toBlockLayout().
+	 */
+	public static void demoBlockLayout(){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		BlockLayout<String> layout = tree.toBlockLayout(false); //blocks in level order
+		System.out.println(layout.slots()); //5
+		System.out.println(layout.size()); //5
+		System.out.println(layout.get(4)); //N
+		System.out.println(decode(layout, "001011011")); //BANANA
+		
+		BlockLayout<String> vebLayout = tree.toBlockLayout(true); //blocks in van Emde Boas order
+		System.out.println(vebLayout.get(4)); //N
+		System.out.println(decode(vebLayout, "001011011")); //BANANA
+		
+		StringBuilder pre = new StringBuilder();
+		Iterator<String> it = vebLayout.getPreOrderIterator();
+		while(it.hasNext()){
+			pre.append(it.next());
+		}
+		System.out.println(pre); //__BNA
+	}
+	
+	/**
+	 * Demo of the compact mode, the placement of new nodes by set() and the non-mutating mirror(), see KTree(arrayTree, k, compact).
+	 */
+	public static void demoCompact(){
+		
+		String[] strings = { "a", "b", "c", null, "e", null, "g" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		KTree<String> compactTree = new KTree<>(strings, 2, true);
+		
+		System.out.println(compactTree.isCompact()); //true
+		System.out.println(compactTree.size()); //5
+		System.out.println(compactTree.height()); //2
+		System.out.println(compactTree.toString().equals(tree.toString())); //true
+		System.out.println(Arrays.equals(compactTree.toArray(), tree.toArray())); //true
+		
+		//a new node at i becomes child (i - 1) % k of (i - 1) / k
+		System.out.println(compactTree.set(3, "d")); //true
+		System.out.println(compactTree.set(5, "f")); //true
+		System.out.println(compactTree.get(3)); //d
+		System.out.println(compactTree.toStringPreOrder().trim()); //a b d e c f g
+		tree.set(3, "d");
+		tree.set(5, "f");
+		System.out.println(compactTree.toString().equals(tree.toString())); //true
+		
+		System.out.println(Arrays.toString(compactTree.mirror())); //[a, c, b, g, f, e, d]
+		System.out.println(compactTree.get(1)); //b
+		
+		String[] banana = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> compactBanana = new KTree<>(banana, 2, true);
+		System.out.println(decode(compactBanana, "001011011")); //BANANA
+		try{
+			decode(compactBanana, "002"); //2 is not a child in either mode
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			System.out.println(e.getClass().getSimpleName()); //ArrayIndexOutOfBoundsException
+		}
+	}
+	
+	/**
+	 * Demo of exporting levels into buffers the caller owns, see exportLevels().
+	 */
+	public static void demoExport(){
+		
+		String[] strings = { "a", "b", "c", null, "e", null, "g" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		System.out.println(tree.slotCount(1, 2)); //6
+		Object[] buffer = new Object[8];
+		System.out.println(tree.exportLevels(1, 2, buffer, 1)); //6
+		System.out.println(Arrays.toString(buffer)); //[null, b, c, null, e, null, g, null]
+		
+		List<String> list = new ArrayList<>();
+		System.out.println(tree.exportLevels(2, 2, list)); //4
+		System.out.println(list); //[null, e, null, g]
+		
+		StringBuilder indexed = new StringBuilder();
+		System.out.println(tree.exportLevels(1, 2, (value, index) -> indexed.append(value).append(index))); //4
+		System.out.println(indexed); //b1c2e4g6
+		
+		BiConsumer<String, ByteBuffer> encoder = (value, bytes) -> bytes.put((byte)(value == null ? '-' : value.charAt(0)));
+		ByteBuffer bytes = ByteBuffer.allocate(7);
+		System.out.println(tree.exportLevels(0, 2, bytes, encoder)); //7
+		System.out.println(new String(bytes.array(), java.nio.charset.StandardCharsets.US_ASCII)); //abc-e-g
+		ByteBuffer small = ByteBuffer.allocate(3);
+		try{
+			tree.exportLevels(0, 2, small, encoder);
+		}
+		catch(BufferOverflowException e){
+			System.out.println(small.position()); //0
+		}
+		
+		Object[] subtree = new Object[3];
+		System.out.println(tree.subtreeTo(1, subtree, 0)); //3
+		System.out.println(Arrays.toString(subtree)); //[b, null, e]
+		Object[] mirrored = new Object[7];
+		System.out.println(tree.mirrorTo(mirrored, 0)); //7
+		System.out.println(Arrays.toString(mirrored)); //[a, c, b, g, null, e, null]
+	}
+	
+	/**
+	 * Demo of the lazy level and index range queries, see level() and range().
+	 */
+	public static void demoLevelRange(){
+		
+		String[] strings = { "a", "b", "c", null, "e", null, "g" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		Iterator<String> level = tree.level(2); //empty slots are skipped
+		System.out.println(level.next()); //e
+		System.out.println(level.next()); //g
+		System.out.println(level.hasNext()); //false
+		System.out.println(tree.level(3).hasNext()); //false
+		
+		Iterator<String> range = tree.range(2, 5);
+		System.out.println(range.next()); //c
+		System.out.println(range.next()); //e
+		System.out.println(range.hasNext()); //false
+		
+		String[] chain = new String[(1 << 17) - 1]; //a chain of first children 16 levels deep
+		for(int i = 0, depth = 0; i < chain.length; i = 2 * i + 1, depth++){
+			chain[i] = "d" + depth;
+		}
+		KTree<String> chainTree = new KTree<>(chain, 2);
+		System.out.println(chainTree.level(16).next()); //d16
+		System.out.println(chainTree.range(7, 1 << 16).next()); //d3
+	}
+	
+	/**
+	 * Demo of the index queries, see parent(), depth(), pathTo(), lca() and isAncestor().
+	 */
+	public static void demoIndexQueries(){
+		
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		System.out.println(tree.parent(4)); //1
+		System.out.println(tree.parent(0)); //-1
+		System.out.println(tree.depth(4)); //2
+		System.out.println(tree.depth(10)); //3
+		System.out.println(tree.lca(3, 4)); //1
+		System.out.println(tree.lca(3, 2)); //0
+		System.out.println(tree.lca(1, 9)); //1
+		System.out.println(tree.isAncestor(1, 9)); //true
+		System.out.println(tree.isAncestor(2, 9)); //false
+		
+		//the path to a leaf is its code
+		System.out.println(tree.pathTo(4)); //01
+		System.out.println(decode(tree, tree.pathTo(3) + tree.pathTo(2) + tree.pathTo(4))); //BAN
+		
+		String[] letters = { "_", "A", "B", "C", "D", "E", "F", "G", "H", "I", "J", "K", "L" };
+		KTree<String> wide = new KTree<>(letters, 12);
+		System.out.println(wide.pathTo(11, SymbolAlphabet.HEX)); //a
+	}
+	
+	/**
+	 * Demo of comparing two trees and applying the changes, see diff() and apply().
+	 */
+	public static void demoDiff(){
+		
+		String[] before = { "a", "b", "c", null, "e", null, "g" };
+		String[] after = { "a", "B", "c", "d", null, null, null };
+		KTree<String> a = new KTree<>(before, 2);
+		KTree<String> b = new KTree<>(after, 2);
+		
+		TreePatch<String> patch = diff(a, b); //removes deepest first, inserts last
+		System.out.println(patch); //-6 -4 ~1=B +3=d
+		KTree<String> copy = new KTree<>(before, 2);
+		copy.apply(patch);
+		System.out.println(Arrays.toString(copy.toArray())); //[a, B, c, d, null, null, null]
+		System.out.println(diff(copy, b).isEmpty()); //true
+		
+		a.enableHashing(); //equal subtree hashes are skipped
+		b.enableHashing();
+		System.out.println(diff(a, b)); //-6 -4 ~1=B +3=d
+		
+		String[] aa = { "Aa" };
+		String[] bb = { "BB" };
+		KTree<String> x = new KTree<>(aa, 2);
+		KTree<String> y = new KTree<>(bb, 2);
+		x.enableHashing();
+		y.enableHashing();
+		System.out.println("Aa".hashCode() == "BB".hashCode()); //true
+		System.out.println(diff(x, y)); //~0=BB
+	}
+	
+	/**
+	 * Demo of comparing trees and tracking changes, see equals(), subtreeEquals() and getVersion().
+	 */
+	public static void demoEquals(){
+		
+		String[] strings = { "a", "b", "c", null, "e", null, "g" };
+		String[] padded = Arrays.copyOf(strings, 15); //a perfect level of nulls more
+		KTree<String> a = new KTree<>(strings, 2);
+		KTree<String> b = new KTree<>(padded, 2, true);
+		
+		System.out.println(a.equals(b)); //true
+		System.out.println(a.hashCode() == b.hashCode()); //true
+		System.out.println(a.hash() == b.hash()); //true
+		String[] subtree = { "b", null, "e" };
+		System.out.println(a.subtreeEquals(1, new KTree<>(subtree, 2))); //true
+		System.out.println(a.subtreeEquals(2, new KTree<>(subtree, 2))); //false
+		
+		a.enableHashing(); //equals() now compares two hashes
+		b.enableHashing();
+		long version = a.getVersion();
+		System.out.println(a.hasChangedSince(version)); //false
+		a.set(6, "G");
+		System.out.println(a.hasChangedSince(version)); //true
+		System.out.println(a.equals(b)); //false
+		System.out.println(a.subtreeEquals(1, new KTree<>(subtree, 2))); //true
+		b.set(6, "G");
+		System.out.println(a.equals(b)); //true
+		System.out.println(a.hashCode() == b.hashCode()); //true
+	}
+	
+	/**
+	 * Demo of storing identical subtrees once, see toSharedTree().
+	 */
+	public static void demoSharedTree(){
+		
+		String[] strings = { "x", "y", "y", "a", "b", "a", "b" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		SharedTree<String> shared = tree.toSharedTree();
+		
+		System.out.println(shared.size()); //7
+		System.out.println(shared.distinctNodes()); //4
+		System.out.println(shared.compressionRatio()); //1.75
+		System.out.println(shared.get(5)); //a
+		System.out.println(Arrays.equals(shared.toArray(), tree.toArray())); //true
+		System.out.println(shared.getPostOrderIterator().next()); //a
+		
+		String[] banana = { "_", "_", "A", "B", "N", null, null };
+		System.out.println(decode(new KTree<>(banana, 2).toSharedTree(), "001011011")); //BANANA
+	}
+	
+	/**
+	 * Demo of removing and moving whole subtrees, see prune() and graft().
+	 */
+	public static void demoPruneGraft(){
+		
+		String[] strings = { "a", "b", "c", null, "e", null, "g" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		
+		System.out.println(tree.prune(1)); //2
+		System.out.println(tree.size()); //3
+		System.out.println(tree.height()); //2
+		System.out.println(tree.prune(2)); //2
+		System.out.println(tree.height()); //0
+		System.out.println(tree.prune(2)); //0
+		
+		String[] branch = { "b", null, "e" };
+		KTree<String> donor = new KTree<>(branch, 2);
+		System.out.println(tree.graft(1, donor)); //2
+		System.out.println(donor.size()); //0
+		System.out.println(Arrays.toString(tree.toArray())); //[a, b, null, null, e, null, null]
+		
+		String[] leaf = { "z" };
+		System.out.println(tree.graft(9, new KTree<>(leaf, 2))); //1
+		System.out.println(tree.height()); //3
+		System.out.println(decode(tree, "010")); //z
+		try{
+			tree.graft(1, new KTree<>(leaf, 2)); //1 already holds values
+		}
+		catch(IllegalArgumentException e){
+			System.out.println(tree.get(1)); //b
+		}
+	}
+	
+	/**
+	 * Demo of the height after removals and trimming null nodes, see height() and trimToSize().
+	 */
+	public static void demoTrim(){
+		
+		String[] strings = Arrays.copyOf(new String[]{ "a", "b", "c", null, "e", null, "g" }, 15);
+		KTree<String> tree = new KTree<>(strings, 2);
 		
-//		System.out.println(tree3.size());
-//		System.out.println(tree3.numberOfNodes);
-//		System.out.println(tree3.height());
-		//System.out.println(tree3.nodesCount());
-//		System.out.println();
-//		
-//		Object[] o1 = tree3.toArray(); //should return [ "0", "null", "2", null, null, "5", "6", ]
-//		System.out.println(o1[0]); //0
-//		System.out.println(o1[1]); //null
-//		System.out.println(o1[2]); //2
-//		System.out.println(o1[3]); //null
-//		System.out.println(o1[4]); //null
-//		System.out.println(o1[5]); //5
-//		System.out.println(o1[6]); //6
-//		System.out.println();
+		System.out.println(tree.height()); //2
+		System.out.println(tree.set(6, null)); //true
+		System.out.println(tree.set(4, null)); //true
+		System.out.println(tree.height()); //1
+		System.out.println(tree.size()); //3
+		System.out.println(Arrays.toString(tree.toArray())); //[a, b, c]
+		
+		long version = tree.getVersion();
+		tree.trimToSize(); //frees the null nodes left by set(), the values stay the same
+		System.out.println(tree.hasChangedSince(version)); //false
+		System.out.println(tree.set(3, "d")); //true
+		System.out.println(tree.height()); //2
+		
+		String[] nulls = { null, null, null };
+		KTree<String> empty = new KTree<>(nulls, 2);
+		System.out.println(empty.height()); //-1
+		System.out.println(empty.toArray().length); //0
+	}
+	
+	/**
+	 * Demo of looking up the locations of values, see enableReverseIndex() and indicesOf().
+	 */
+	public static void demoReverseIndex(){
 		
-//		System.out.println(tree3.get(0)); //0
-//		System.out.println(tree3.get(1)); //invalid
-//		System.out.println(tree3.get(6)); //6
-//		System.out.println(tree3.get(11)); //invalid
-
-//		Object[] output = tree3.toArray();
-//		System.out.println(output[0]);
+		String[] strings = { "x", "y", "y", "a", "b", "a", "b" };
+		KTree<String> tree = new KTree<>(strings, 2);
 		
-//		System.out.println(tree3.toString());
-		//tree2.toString();
+		System.out.println(tree.indexOf("a")); //3
+		System.out.println(Arrays.toString(tree.indicesOf("b"))); //[4, 6]
+		System.out.println(tree.contains("z")); //false
+		
+		tree.enableReverseIndex(); //the same answers without a walk
+		System.out.println(tree.isReverseIndexed()); //true
+		System.out.println(tree.indexOf("a")); //3
+		System.out.println(Arrays.toString(tree.indicesOf("b"))); //[4, 6]
+		
+		tree.set(3, "b");
+		System.out.println(Arrays.toString(tree.indicesOf("b"))); //[3, 4, 6]
+		System.out.println(tree.indexOf("a")); //5
+		tree.prune(2);
+		System.out.println(Arrays.toString(tree.indicesOf("b"))); //[3, 4]
+		System.out.println(tree.contains("a")); //false
+		System.out.println(tree.indexOf("y")); //1
+	}
+	
+	/**
+	 * Demo of traversals that skip whole subtrees and of the leaf iterator, see getPreOrderIterator(filter) and getLeafIterator().
+	 */
+	public static void demoFilteredIterators(){
 		
-//		Iterator<String> it = tree.getPreOrderIterator();
-//		System.out.println(it.next()); //_
-//		System.out.println(it.next()); //_
-//		System.out.println(it.next()); //A
-//		System.out.println(it.next()); //B
-//		System.out.println(it.next()); //N
-//		System.out.println(it.next()); //null
+		String[] strings = { "a", "b", "c", null, "e", null, "g" };
+		KTree<String> tree = new KTree<>(strings, 2);
 		
-//		String s1 = tree.toStringLevelOrder();
-//		System.out.println(s1);
-//		
-//		String s1_5 = tree.toStringPreOrder();
-//		System.out.println(s1_5);
-//		
-//		String s1_6 = tree.toStringPostOrder();
-//		System.out.println(s1_6);
+		StringBuilder levels = new StringBuilder();
+		tree.getLevelOrderIterator(NodePredicate.maxDepth(1)).forEachRemaining(levels::append);
+		System.out.println(levels); //abc
 		
-//
-//		Iterator<Integer> it3 = tree3.getPreOrderIterator();
-//		System.out.println(it3.next()); //0
-//		System.out.println(it3.next()); //2
-//		System.out.println(it3.next()); //5
-//		System.out.println(it3.next()); //6
+		StringBuilder pre = new StringBuilder();
+		tree.getPreOrderIterator((index, depth, value) -> !value.equals("b")).forEachRemaining(pre::append);
+		System.out.println(pre); //acg
 		
-//		Iterator<Integer> it2 = tree2.getPreOrderIterator();
-//		System.out.println(it2.next()); //1
-//		System.out.println(it2.next()); //2
-//		System.out.println(it2.next()); //5
-//		System.out.println(it2.next()); //6
-//		System.out.println(it2.next()); //7
-//		System.out.println(it2.next()); //3
-//		System.out.println(it2.next()); //8
+		StringBuilder post = new StringBuilder();
+		NodePredicate<String> notC = (index, depth, value) -> index != 2;
+		tree.getPostOrderIterator(notC).forEachRemaining(post::append);
+		System.out.println(post); //eba
 		
-//		Integer[] input4 = {0, 1, 2, null, 4, 5, null};
-//		KTree<Integer> tree4 = new KTree<>(input4, 2);
-//		Iterator<Integer> it4 = tree4.getPreOrderIterator();
-//		System.out.println(it4.next()); //0
-//		System.out.println(it4.next()); //1
-//		System.out.println(it4.next()); //4
-//		System.out.println(it4.next()); //2
-//		System.out.println(it4.next()); //5
-//		System.out.println();
-//		
-//		String s5_1 = tree4.toStringPreOrder();
-//		System.out.println(s5_1);
-//		
-//		Iterator<Integer> it5 = tree4.getLevelOrderIterator();
-//		System.out.println(it5.next()); //0
-//		System.out.println(it5.next()); //1
-//		System.out.println(it5.next()); //2
-//		System.out.println(it5.next()); //4
-//		System.out.println(it5.next()); //5
-//		System.out.println();
-//		
-//		String s5 = tree4.toStringLevelOrder();
-//		System.out.println(s5);
-//		
-//		Iterator<Integer> it10 = tree4.getPostOrderIterator();
-//		System.out.println(it10.next()); //4
-//		System.out.println(it10.next()); //1
-//		System.out.println(it10.next()); //5
-//		System.out.println(it10.next()); //2
-//		System.out.println(it10.next()); //0
-//		System.out.println();
-//		
-//		String s5_2 = tree4.toStringPostOrder();
-//		System.out.println(s5_2);
-//		
-//		Iterator<Integer> it6 = tree2.getLevelOrderIterator();
-//		System.out.println(it6.next()); //1
-//		System.out.println(it6.next()); //2
-//		System.out.println(it6.next()); //3
-//		System.out.println(it6.next()); //4
-//		System.out.println(it6.next()); //5
-//		System.out.println(it6.next()); //6
-//		System.out.println(it6.next()); //7
-//		
-//		String s6 = tree2.toStringLevelOrder();
-//		System.out.println(s6);
-//		String s6_1 = tree2.toStringPreOrder();
-//		System.out.println(s6_1);
-//		String s6_2 = tree2.toStringPostOrder();
-//		System.out.println(s6_2);
+		StringBuilder leaves = new StringBuilder();
+		tree.getLeafIterator().forEachRemaining(leaves::append);
+		System.out.println(leaves); //eg
 		
-//		String s6 = decode(tree, "001011011"); //should be "BANANA"
-//		
-//		System.out.println(s6); //BANANA
+		StringBuilder filteredLeaves = new StringBuilder();
+		tree.getLeafIterator(notC.and(NodePredicate.maxDepth(2))).forEachRemaining(filteredLeaves::append);
+		System.out.println(filteredLeaves); //e
+	}
+	
+	/**
+	 * Demo of the bottom-up aggregates, checked against a brute-force fold over toArray(), see aggregate().
+	 */
+	public static void demoAggregate(){
 		
-//		Object[] o = tree.toArray(); //should return [ "_", "_", "A", "B", "N", null, null ]
-//		System.out.println(o[0]); //_
-//		System.out.println(o[1]); //_
-//		System.out.println(o[2]); //A
-//		System.out.println(o[3]); //B
-//		System.out.println(o[4]); //N
-//		System.out.println(o[5]); //null
-//		System.out.println(o[6]); //null
-//		System.out.println();
-//		
-//		Object[] o1 = tree3.toArray(); //should return [ "0", "null", "2", null, null, "5", "6", ]
-//		System.out.println(o1[0]); //0
-//		System.out.println(o1[1]); //null
-//		System.out.println(o1[2]); //2
-//		System.out.println(o1[3]); //null
-//		System.out.println(o1[4]); //null
-//		System.out.println(o1[5]); //5
-//		System.out.println(o1[6]); //6
-//		System.out.println();
-//
-//		Object[] o2 = tree2.toArray(); //should return [ 1 2 3 4 5 6 7 8 9 10 11 12 13 ]
-//		System.out.println(o2[0]); //1
-//		System.out.println(o2[1]); //2
-//		System.out.println(o2[2]); //3
-//		System.out.println(o2[3]); //4
-//		System.out.println(o2[4]); //5
-//		System.out.println(o2[5]); //6
-//		System.out.println(o2[6]); //7
-//		System.out.println(o2[7]); //8
-//		System.out.println(o2[8]); //9
-//		System.out.println(o2[9]); //10
-//		System.out.println(o2[10]); //11
-//		System.out.println(o2[11]); //12
-//		System.out.println(o2[12]); //13
+		String[] strings = { "a", "b", "c", null, "e", null, "g" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		System.out.println(Arrays.toString(tree.aggregate(v -> 1, Long::sum))); //[5, 2, 2, 0, 1, 0, 1]
+		System.out.println(Arrays.toString(tree.aggregate(v -> 0, (a, c) -> Math.max(a, c + 1)))); //[2, 1, 1, 0, 0, 0, 0]
+		
+		//a tree large enough to be split into fork-join tasks, with an order-sensitive fold
+		java.util.Random random = new java.util.Random(47);
+		Integer[] values = new Integer[29524]; //a perfect 3-ary tree of height 9, (3^10 - 1) / 2 slots
+		for(int i = 0; i < values.length; i++){
+			if((i == 0 || values[(i - 1) / 3] != null) && random.nextInt(10) < 9){
+				values[i] = random.nextInt(1000);
+			}
+		}
+		KTree<Integer> big = new KTree<>(values, 3);
+		ToLongFunction<Integer> leafFn = v -> v;
+		LongBinaryOperator combineFn = (a, c) -> a * 31 + c;
+		
+		Object[] slots = big.toArray();
+		long[] expected = new long[slots.length];
+		for(int i = slots.length - 1; i >= 0; i--){ //children before their parent
+			if(slots[i] != null){
+				expected[i] = leafFn.applyAsLong((Integer)slots[i]);
+				for(long j = 3L * i + 1; j <= 3L * i + 3 && j < slots.length; j++){
+					if(slots[(int)j] != null){
+						expected[i] = combineFn.applyAsLong(expected[i], expected[(int)j]);
+					}
+				}
+			}
+		}
+		System.out.println(slots.length >= AGGREGATE_THRESHOLD); //true
+		System.out.println(Arrays.equals(big.aggregate(leafFn, combineFn), expected)); //true
+	}
+	
+	/**
+	 * Demo of finding values by their rank in a walk and starting a walk at a rank, see enableSubtreeCounts().
+	 */
+	public static void demoSelectRank(){
 		
-//		Object[] sub1 = tree.subtree(1); //should return [ "_", "B", "N" ]
-//		System.out.println(sub1[0]); //_
-//		System.out.println(sub1[1]); //B
-//		System.out.println(sub1[2]); //N
-//		System.out.println();
-//		
-//		Object[] sub2 = tree2.subtree(2); //should return [3 8 9 10]
-//		System.out.println(sub2[0]); //3
-//		System.out.println(sub2[1]); //8
-//		System.out.println(sub2[2]); //9
-//		System.out.println(sub2[3]); //10
+		String[] strings = { "a", "b", "c", null, "e", null, "g" };
+		KTree<String> tree = new KTree<>(strings, 2);
+		tree.enableSubtreeCounts();
+		
+		System.out.println(tree.rankedSize()); //5
+		System.out.println(tree.selectPreOrder(2)); //4
+		System.out.println(tree.selectPostOrder(2)); //6
+		System.out.println(tree.selectLevelOrder(3)); //4
+		System.out.println(tree.rankPreOrder(2)); //3
+		System.out.println(tree.rankPostOrder(2)); //3
+		System.out.println(tree.rankLevelOrder(6)); //4
+		
+		StringBuilder pre = new StringBuilder();
+		tree.getPreOrderIterator(3).forEachRemaining(pre::append);
+		System.out.println(pre); //cg
+		StringBuilder post = new StringBuilder();
+		tree.getPostOrderIterator(1).forEachRemaining(post::append);
+		System.out.println(post); //bgca
+		StringBuilder level = new StringBuilder();
+		tree.getLevelOrderIterator(2).forEachRemaining(level::append);
+		System.out.println(level); //ceg
+		
+		tree.set(3, "d"); //only the counts on the path to 3 change
+		System.out.println(tree.selectPreOrder(2)); //3
+		boolean inverse = true;
+		for(int r = 0; r < tree.rankedSize(); r++){
+			inverse &= tree.rankPreOrder(tree.selectPreOrder(r)) == r && tree.rankPostOrder(tree.selectPostOrder(r)) == r
+					&& tree.rankLevelOrder(tree.selectLevelOrder(r)) == r;
+		}
+		System.out.println(inverse); //true
+	}
+	
+	/**
+	 * Demo of decoding digits translated in blocks, see decodeDigits() and DigitTranslator.
+	 */
+	public static void demoDigits(){
 		
-//		Object[] mirror1 = tree.mirror(); //should return [ "_", "A", "_", null, null, "N", "B" ]
-//		System.out.println(mirror1[0]); //_
-//		System.out.println(mirror1[1]); //A
-//		System.out.println(mirror1[2]); //_
-//		System.out.println(mirror1[3]); //null
-//		System.out.println(mirror1[4]); //null
-//		System.out.println(mirror1[5]); //N
-//		System.out.println(mirror1[6]); //B
-//		System.out.println();
-//		
-//		Object[] mirror2 = tree2.mirror(); //should return [ 1 4 3 2 13 12 11 10 9 8 7 6 5]
-//		//System.out.println(mirror2.length);
-//		System.out.println(mirror2[0]); //1
-//		System.out.println(mirror2[1]); //4
-//		System.out.println(mirror2[2]); //3
-//		System.out.println(mirror2[3]); //2
-//		System.out.println(mirror2[4]); //13
-//		System.out.println(mirror2[5]); //12
-//		System.out.println(mirror2[6]); //11
-//		System.out.println(mirror2[7]); //10
-//		System.out.println(mirror2[8]); //9
-//		System.out.println(mirror2[9]); //8
-//		System.out.println(mirror2[10]); //7
-//		System.out.println(mirror2[11]); //6
-//		System.out.println(mirror2[12]); //5
-//		System.out.println();
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
+		String message = "00 1 01-1 011".repeat(4); //separators are ignored like decode() ignores them
+		byte[] bytes = message.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
 		
-		String[] s100 = {"_", "A", "P", "O", "E", "L"};
-		KTree<String> tree100 = new KTree<String>(s100, 5);
-				
-		//System.out.println(tree100.toStringLevelOrder());
-		System.out.println(tree100.toString());
+		byte[] numbers = new byte[16];
+		System.out.println(DigitTranslator.translate("0010110112", 0, numbers, 0, 10, 2)); //9
+		System.out.println(DigitTranslator.translate(bytes, 0, numbers, 0, 16, 2)); //2
+		System.out.println(DigitTranslator.isOutOfRange('2', 2)); //true
 		
-		String[] s101 = {"_", "Q", "W", null, "R"};
-		KTree<String> tree101 = new KTree<String>(s101, 4);
-
-		//System.out.println(tree101.toStringLevelOrder());
-		System.out.println(tree101.toString());
-
+		System.out.println(decodeDigits(tree, "001011011")); //BANANA
+		System.out.println(decodeDigits(tree, message).equals(decode(tree, message))); //true
+		System.out.println(decodeDigits(tree, bytes, 0, bytes.length).equals(decode(tree, message))); //true
 		
-		String[] s102 = {"_","_", "_", "_", "E", null, "V", null, "I", "L", "S", null, null};
-		KTree<String> tree102 = new KTree<String>(s102, 3);
-
-		//System.out.println(tree102.toStringLevelOrder());
-		System.out.println(tree102.toString());
-
+		try{
+			decodeDigits(tree, "0012".getBytes(java.nio.charset.StandardCharsets.US_ASCII), 0, 4);
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			System.out.println(e.getMessage()); //Array index out of range: 2
+		}
+	}
+	
+	/**
+	 * Demo of decoding with code generated for the tree, see decodeCompiled().
+	 */
+	public static void demoCompiled(){
 		
-		String[] s103 = {null, null, null};
-		KTree<String> tree103 = new KTree<String>(s103, 2);
-
-		//System.out.println(tree103.toStringLevelOrder());
-		System.out.println(tree103.toString());
-		Object[] a103 = tree103.toArray();
-		System.out.println(a103.length);
-		System.out.println(tree103.height);
+		String[] strings = { "_", "_", "A", "B", "N", null, null };
+		KTree<String> tree = new KTree<>(strings, 2);
 		
-		String[] s104 = {"A","B","C","D","E",null,null};
-		KTree<String> tree104 = new KTree<String>(s104, 2);
-
-		System.out.println(tree104.toStringLevelOrder());
+		System.out.println(decodeCompiled(tree, "001011011")); //BANANA
+		byte[] bytes = "0010110110".getBytes(java.nio.charset.StandardCharsets.US_ASCII); //ends partway down the tree
+		System.out.println(decodeCompiled(tree, bytes, 0, bytes.length)); //BANANA
+		tree.set(4, "M"); //compiled again for the new version
+		System.out.println(decodeCompiled(tree, "001011011")); //BAMAMA
+		try{
+			decodeCompiled(tree, "002");
+		}
+		catch(ArrayIndexOutOfBoundsException e){
+			System.out.println(e.getClass().getSimpleName()); //ArrayIndexOutOfBoundsException
+		}
 		
-		Integer[] s105 = {1,2,3,4,null,null,null,5,6,7,null,null,null,null,null,null,null,null,null,null,null};
-		KTree<Integer> tree105 = new KTree<Integer>(s105, 4);
-		System.out.println(tree105.toStringPreOrder());
-
+		HashMap<String, Integer> frequencies = new HashMap<>();
+		for(char c = 'A'; c <= 'Z'; c++){
+			frequencies.put(String.valueOf(c), c - 'A' + 1);
+		}
+		KTree<String> letters = KTreeAdvisor.optimalTree(frequencies, 4, "_");
+		java.util.Random random = new java.util.Random(50);
+		StringBuilder message = new StringBuilder();
+		for(int i = 0; i < 10000; i++){
+			message.append((char)('0' + random.nextInt(4)));
+		}
+		System.out.println(decodeCompiled(letters, message).equals(decode(letters, message.toString()))); //true
 	}
 	
 	/****************************************/
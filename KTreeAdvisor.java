@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Advise on the shape of encoding trees from symbol frequencies.
+ * It measures the expected number of instructions per decoded symbol of an existing tree
+ * and builds the optimal k-ary prefix-code tree (k-ary Huffman) in the level-order layout
+ * that the KTree constructor accepts.
+ */
+public final class KTreeAdvisor {
+
+	/**
+	 * A node of the Huffman forest.
+	 * @param <E> the type of the symbols.
+	 */
+	private static class HuffmanNode<E> implements Comparable<HuffmanNode<E>>{
+		private final double weight;
+		private final long order; //tie breaker so equal weights merge in insertion order
+		private final E symbol; //null for internal nodes and padding leaves
+		private final ArrayList<HuffmanNode<E>> children;
+
+		/**
+		 * Create a new Huffman node.
+		 * @param weight the total frequency below the node.
+		 * @param order the creation order of the node.
+		 * @param symbol the symbol of a leaf, null otherwise.
+		 */
+		public HuffmanNode(double weight, long order, E symbol){
+			this.weight = weight;
+			this.order = order;
+			this.symbol = symbol;
+			this.children = new ArrayList<>();
+		}
+
+		public int compareTo(HuffmanNode<E> other){
+			int c = Double.compare(weight, other.weight);
+			return c != 0 ? c : Long.compare(order, other.order);
+		}
+	}
+
+	private KTreeAdvisor(){}
+
+	/**
+	 * Return the expected number of instructions needed to decode one symbol with the given tree,
+	 * the average leaf depth weighted by the symbol frequencies.
+	 * @param tree the decoding tree.
+	 * @param frequencies how often each symbol occurs.
+	 * @param <E> the type of the symbols.
+	 * @return the weighted average leaf depth, 0 if all frequencies are 0.
+	 * @throws IllegalArgumentException if a symbol with a positive frequency is not a leaf of the tree.
+	 */
+	public static <E> double averageCodeLength(KTree<E> tree, Map<E, ? extends Number> frequencies){
+
+		Object[] slots = tree.toArray();
+		int k = tree.getK();
+
+		HashMap<Object, Integer> depths = new HashMap<>();
+		int depth = 0;
+		long levelEnd = 1; //first index after the current level
+		for(int i = 0; i < slots.length; i++){
+			if(i == levelEnd){
+				depth++;
+				levelEnd = levelEnd * k + 1;
+			}
+			if(slots[i] != null && isLeaf(slots, i, k) && !depths.containsKey(slots[i])){
+				depths.put(slots[i], depth); //keep the shallowest leaf of a symbol
+			}
+		}
+
+		double total = 0.0;
+		double weighted = 0.0;
+		for(Map.Entry<E, ? extends Number> entry : frequencies.entrySet()){
+			double weight = entry.getValue().doubleValue();
+			if(weight <= 0){
+				continue;
+			}
+			Integer d = depths.get(entry.getKey());
+			if(d == null){
+				throw new IllegalArgumentException("Symbol is not a leaf: " + entry.getKey());
+			}
+			total += weight;
+			weighted += weight * d;
+		}
+
+		return total == 0.0 ? 0.0 : weighted / total;
+	}
+
+	/**
+	 * This method supports the averageCodeLength() method.
+	 * @param slots the tree in level order.
+	 * @param i the index of an occupied slot.
+	 * @param k the branching factor.
+	 * @return true if no child slot of i holds a value.
+	 */
+	private static boolean isLeaf(Object[] slots, int i, int k){
+
+		for(long c = (long)k * i + 1; c <= (long)k * i + k && c < slots.length; c++){
+			if(slots[(int)c] != null){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Build the k-ary tree that minimizes the expected number of instructions per decoded symbol.
+	 * Symbols become leaves, internal nodes hold the given filler value, and heavier children
+	 * are placed on lower digits. Symbols with frequency 0 are still given a code.
+	 * @param frequencies how often each symbol occurs, at least one symbol.
+	 * @param k the branching factor k.
+	 * @param internal the value stored at internal nodes, for example "_".
+	 * @param <E> the type of the symbols.
+	 * @return the optimal decoding tree.
+	 * @throws InvalidKException if k is less than 2.
+	 * @throws IllegalArgumentException if there are no symbols, a symbol or the filler is null,
+	 * a frequency is negative, or the level-order array would not fit in an int index.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> KTree<E> optimalTree(Map<E, ? extends Number> frequencies, int k, E internal){
+
+		if(k < 2){
+			throw new InvalidKException();
+		}
+		if(frequencies.isEmpty() || internal == null){
+			throw new IllegalArgumentException();
+		}
+
+		PriorityQueue<HuffmanNode<E>> queue = new PriorityQueue<>();
+		long order = 0;
+		for(Map.Entry<E, ? extends Number> entry : frequencies.entrySet()){
+			double weight = entry.getValue().doubleValue();
+			if(entry.getKey() == null || !(weight >= 0)){
+				throw new IllegalArgumentException("Invalid symbol or frequency: " + entry);
+			}
+			queue.add(new HuffmanNode<E>(weight, order++, entry.getKey()));
+		}
+
+		int padding = 0; //empty leaves so that every merge takes exactly k nodes
+		if(queue.size() == 1){
+			padding = k - 1; //a single symbol still needs a one instruction code
+		}
+		else if((queue.size() - 1) % (k - 1) != 0){
+			padding = (k - 1) - (queue.size() - 1) % (k - 1);
+		}
+		for(int i = 0; i < padding; i++){
+			queue.add(new HuffmanNode<E>(0.0, -1 - i, null)); //padding sorts before real zero weights
+		}
+
+		while(queue.size() > 1){ //merge the k lightest nodes until one tree is left
+			ArrayList<HuffmanNode<E>> children = new ArrayList<>();
+			double weight = 0.0;
+			for(int i = 0; i < k; i++){
+				HuffmanNode<E> child = queue.poll();
+				weight += child.weight;
+				children.add(0, child); //lightest child ends up on the highest digit
+			}
+			HuffmanNode<E> parent = new HuffmanNode<E>(weight, order++, null);
+			parent.children.addAll(children);
+			queue.add(parent);
+		}
+
+		HuffmanNode<E> top = queue.poll();
+
+		//lay the tree out in level order using k * index + c-th child of the node
+		ArrayList<HuffmanNode<E>> placedNodes = new ArrayList<>();
+		ArrayList<Long> placedIndices = new ArrayList<>();
+		placedNodes.add(top);
+		placedIndices.add(0L);
+		long maxIndex = 0;
+		for(int i = 0; i < placedNodes.size(); i++){ //the lists double as the breadth-first queue
+			HuffmanNode<E> node = placedNodes.get(i);
+			long index = placedIndices.get(i);
+			maxIndex = Math.max(maxIndex, index);
+			if(maxIndex >= Integer.MAX_VALUE - 8){
+				throw new IllegalArgumentException("Tree is too deep for a level-order array");
+			}
+			for(int c = 0; c < node.children.size(); c++){
+				placedNodes.add(node.children.get(c));
+				placedIndices.add(k * index + c + 1);
+			}
+		}
+
+		long perfectSize = 1;
+		long levelWidth = 1;
+		while(perfectSize <= maxIndex){ //round up to a perfect tree like the KTree constructor expects
+			levelWidth *= k;
+			perfectSize += levelWidth;
+		}
+		if(perfectSize >= Integer.MAX_VALUE - 8){
+			throw new IllegalArgumentException("Tree is too deep for a level-order array");
+		}
+
+		E[] arrayTree = (E[]) new Object[(int)perfectSize];
+		for(int i = 0; i < placedNodes.size(); i++){
+			HuffmanNode<E> node = placedNodes.get(i);
+			int index = (int)(long)placedIndices.get(i);
+			if(!node.children.isEmpty()){
+				arrayTree[index] = internal;
+			}
+			else{
+				arrayTree[index] = node.symbol; //padding leaves stay null
+			}
+		}
+
+		return new KTree<E>(arrayTree, k);
+	}
+}
\ No newline at end of file
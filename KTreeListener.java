@@ -0,0 +1,29 @@
+/**
+ * Define an interface for receiving operation events from a KTreeMetrics instance.
+ * Every method has an empty default so a listener only overrides the events it needs.
+ * Listeners are called on the thread that performed the operation and should return quickly.
+ */
+public interface KTreeListener {
+
+	/**
+	 * Called when a timed operation on the tree completes.
+	 * @param op the operation that completed.
+	 * @param nanos the elapsed time of the operation in nanoseconds.
+	 */
+	public default void operationCompleted(KTreeMetrics.Operation op, long nanos){}
+
+	/**
+	 * Called after a node lookup by location index.
+	 * @param index the level-order location index that was searched for.
+	 * @param nodesVisited the number of nodes visited by the search.
+	 */
+	public default void nodeSearched(int index, int nodesVisited){}
+
+	/**
+	 * Called after a message has been decoded.
+	 * @param symbols the number of instructions processed.
+	 * @param leaves the number of leaves appended to the decoded message.
+	 * @param resets the number of times an invalid instruction reset the walk to the root.
+	 */
+	public default void messageDecoded(int symbols, int leaves, int resets){}
+}
\ No newline at end of file
@@ -0,0 +1,341 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collect operation counters and latency histograms for one or more k-ary trees.
+ * A tree only records into a KTreeMetrics after enableMetrics() or setMetrics() is called,
+ * so trees without metrics never read the clock or touch these counters.
+ * All methods are thread-safe.
+ */
+public class KTreeMetrics implements KTreeMetricsMBean {
+
+	/**
+	 * The operations that are timed.
+	 */
+	public enum Operation { GET, SET, DECODE, LEVEL_ORDER, PRE_ORDER, POST_ORDER }
+
+	/**
+	 * Number of latency buckets, bucket b counts operations that took [2^(b-1), 2^b) nanoseconds.
+	 */
+	public static final int BUCKETS = 48;
+
+	private static final int OPERATIONS = Operation.values().length;
+
+	private final LongAdder[] counts; //completed operations per Operation
+	private final LongAdder[] totalNanos; //summed latency per Operation
+	private final AtomicLongArray histogram; //OPERATIONS * BUCKETS latency buckets
+	private final LongAdder iterators; //iterators created
+	private final LongAdder findNodeCalls; //node lookups by index
+	private final LongAdder nodesVisited; //nodes visited by all lookups
+	private final AtomicLong maxNodesVisited; //the most nodes visited by one lookup
+	private final LongAdder symbolsDecoded; //instructions processed by decode
+	private final LongAdder leavesEmitted; //leaves appended by decode
+	private final LongAdder rootResets; //invalid instructions that reset to the root
+	private final CopyOnWriteArrayList<KTreeListener> listeners;
+
+	/**
+	 * Construct an empty set of metrics.
+	 */
+	public KTreeMetrics(){
+		counts = new LongAdder[OPERATIONS];
+		totalNanos = new LongAdder[OPERATIONS];
+		for(int i = 0; i < OPERATIONS; i++){
+			counts[i] = new LongAdder();
+			totalNanos[i] = new LongAdder();
+		}
+		histogram = new AtomicLongArray(OPERATIONS * BUCKETS);
+		iterators = new LongAdder();
+		findNodeCalls = new LongAdder();
+		nodesVisited = new LongAdder();
+		maxNodesVisited = new AtomicLong();
+		symbolsDecoded = new LongAdder();
+		leavesEmitted = new LongAdder();
+		rootResets = new LongAdder();
+		listeners = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Add a listener that is notified of every recorded event.
+	 * @param listener the listener to add.
+	 */
+	public void addListener(KTreeListener listener){
+
+		if(listener == null){
+			throw new IllegalArgumentException();
+		}
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a previously added listener.
+	 * @param listener the listener to remove.
+	 * @return true if the listener was removed.
+	 */
+	public boolean removeListener(KTreeListener listener){
+
+		return listeners.remove(listener);
+	}
+
+	/**
+	 * Record a completed operation.
+	 * @param op the operation.
+	 * @param nanos the elapsed time in nanoseconds.
+	 */
+	public void recordOperation(Operation op, long nanos){
+
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0))); //log2 bucket
+		counts[op.ordinal()].increment();
+		totalNanos[op.ordinal()].add(nanos);
+		histogram.incrementAndGet(op.ordinal() * BUCKETS + bucket);
+
+		for(KTreeListener listener : listeners){
+			listener.operationCompleted(op, nanos);
+		}
+	}
+
+	/**
+	 * Record the creation of a traversal iterator.
+	 */
+	public void recordIterator(){
+
+		iterators.increment();
+	}
+
+	/**
+	 * Record a node lookup by location index.
+	 * @param index the level-order location index searched for.
+	 * @param visited the number of nodes visited by the search.
+	 */
+	public void recordFindNode(int index, int visited){
+
+		findNodeCalls.increment();
+		nodesVisited.add(visited);
+		maxNodesVisited.accumulateAndGet(visited, Math::max);
+
+		for(KTreeListener listener : listeners){
+			listener.nodeSearched(index, visited);
+		}
+	}
+
+	/**
+	 * Record the work done by one decode call.
+	 * @param symbols the number of instructions processed.
+	 * @param leaves the number of leaves appended to the message.
+	 * @param resets the number of invalid instructions that reset the walk to the root.
+	 */
+	public void recordDecode(int symbols, int leaves, int resets){
+
+		symbolsDecoded.add(symbols);
+		leavesEmitted.add(leaves);
+		rootResets.add(resets);
+
+		for(KTreeListener listener : listeners){
+			listener.messageDecoded(symbols, leaves, resets);
+		}
+	}
+
+	/**
+	 * Return the number of completed operations of a kind.
+	 * @param op the operation.
+	 * @return the number of completed operations.
+	 */
+	public long getCount(Operation op){
+
+		return counts[op.ordinal()].sum();
+	}
+
+	/**
+	 * Return the latency histogram of an operation.
+	 * @param op the operation.
+	 * @return a copy of the BUCKETS log2 latency buckets.
+	 */
+	public long[] getLatencyHistogram(Operation op){
+
+		long[] toReturn = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++){
+			toReturn[i] = histogram.get(op.ordinal() * BUCKETS + i);
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Return the number of completed get() calls.
+	 * @return the number of gets.
+	 */
+	public long getGetCount(){
+
+		return getCount(Operation.GET);
+	}
+
+	/**
+	 * Return the number of completed set() calls.
+	 * @return the number of sets.
+	 */
+	public long getSetCount(){
+
+		return getCount(Operation.SET);
+	}
+
+	/**
+	 * Return the number of completed decode() calls.
+	 * @return the number of decodes.
+	 */
+	public long getDecodeCount(){
+
+		return getCount(Operation.DECODE);
+	}
+
+	/**
+	 * Return the number of completed level-order, pre-order and post-order traversals.
+	 * @return the number of traversals of all three orders.
+	 */
+	public long getTraversalCount(){
+
+		return getCount(Operation.LEVEL_ORDER) + getCount(Operation.PRE_ORDER) + getCount(Operation.POST_ORDER);
+	}
+
+	/**
+	 * Return the number of traversal iterators created.
+	 * @return the number of iterators.
+	 */
+	public long getIteratorCount(){
+
+		return iterators.sum();
+	}
+
+	/**
+	 * Return the number of node lookups by location index.
+	 * @return the number of lookups.
+	 */
+	public long getFindNodeCount(){
+
+		return findNodeCalls.sum();
+	}
+
+	/**
+	 * Return the number of nodes visited by all node lookups together.
+	 * @return the number of nodes visited.
+	 */
+	public long getNodesVisited(){
+
+		return nodesVisited.sum();
+	}
+
+	/**
+	 * Return the most nodes visited by a single node lookup.
+	 * @return the largest number of nodes visited by one lookup.
+	 */
+	public long getMaxNodesVisited(){
+
+		return maxNodesVisited.get();
+	}
+
+	/**
+	 * Return the number of instructions processed by all decode calls.
+	 * @return the number of instructions decoded.
+	 */
+	public long getSymbolsDecoded(){
+
+		return symbolsDecoded.sum();
+	}
+
+	/**
+	 * Return the number of leaves appended to decoded messages.
+	 * @return the number of leaves emitted.
+	 */
+	public long getLeavesEmitted(){
+
+		return leavesEmitted.sum();
+	}
+
+	/**
+	 * Return the number of invalid instructions that reset a decode walk to the root.
+	 * @return the number of resets.
+	 */
+	public long getRootResets(){
+
+		return rootResets.sum();
+	}
+
+	/**
+	 * Return the mean latency of an operation, for JMX clients that pass the operation by name.
+	 * @param operation the name of an Operation, for example "DECODE".
+	 * @return the mean nanoseconds per completed operation, 0 if none completed.
+	 * @throws IllegalArgumentException if there is no operation with the name.
+	 */
+	public double getMeanNanos(String operation){
+
+		Operation op = Operation.valueOf(operation);
+		long n = getCount(op);
+		return n == 0 ? 0.0 : (double)totalNanos[op.ordinal()].sum() / n;
+	}
+
+	/**
+	 * Return the latency histogram of an operation, for JMX clients that pass the operation by name.
+	 * @param operation the name of an Operation, for example "DECODE".
+	 * @return a copy of the BUCKETS log2 latency buckets.
+	 * @throws IllegalArgumentException if there is no operation with the name.
+	 */
+	public long[] getLatencyHistogram(String operation){
+
+		return getLatencyHistogram(Operation.valueOf(operation));
+	}
+
+	/**
+	 * Reset every counter and histogram back to zero, listeners are kept.
+	 */
+	public void reset(){
+
+		for(int i = 0; i < OPERATIONS; i++){
+			counts[i].reset();
+			totalNanos[i].reset();
+		}
+		for(int i = 0; i < histogram.length(); i++){
+			histogram.set(i, 0);
+		}
+		iterators.reset();
+		findNodeCalls.reset();
+		nodesVisited.reset();
+		maxNodesVisited.set(0);
+		symbolsDecoded.reset();
+		leavesEmitted.reset();
+		rootResets.reset();
+	}
+
+	/**
+	 * Register these metrics with the platform MBean server as KTree:type=Metrics,name=(name).
+	 * @param name the name of the tree the metrics belong to.
+	 * @return the object name the metrics were registered under.
+	 * @throws IllegalStateException if the registration fails.
+	 */
+	public ObjectName register(String name){
+
+		try{
+			ObjectName objectName = new ObjectName("KTree:type=Metrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		}
+		catch(JMException e){
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Remove metrics registered by register() from the platform MBean server.
+	 * @param objectName the name returned by register().
+	 */
+	public static void unregister(ObjectName objectName){
+
+		try{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		}
+		catch(JMException e){
+			throw new IllegalStateException(e);
+		}
+	}
+}
\ No newline at end of file
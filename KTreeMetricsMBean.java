@@ -0,0 +1,19 @@
+/**
+ * Define the JMX management interface of KTreeMetrics.
+ */
+public interface KTreeMetricsMBean {
+	public long getGetCount();
+	public long getSetCount();
+	public long getDecodeCount();
+	public long getTraversalCount();
+	public long getIteratorCount();
+	public long getFindNodeCount();
+	public long getNodesVisited();
+	public long getMaxNodesVisited();
+	public long getSymbolsDecoded();
+	public long getLeavesEmitted();
+	public long getRootResets();
+	public double getMeanNanos(String operation);
+	public long[] getLatencyHistogram(String operation);
+	public void reset();
+}
\ No newline at end of file
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the shape of a k-ary tree, created by KTree.statistics().
+ * Levels are numbered from 0 at the root, only nodes holding a value are counted.
+ */
+public class KTreeStatistics {
+
+	private final int k; //branching factor of the tree
+	private final int size; //number of values in the tree
+	private final int leafCount; //number of values without children
+	private final int[] levelOccupancy; //number of values on each level
+	private final int[] leafDepths; //number of leaves on each level
+	private final long perfectSize; //number of nodes of a perfect tree of the same height
+
+	/**
+	 * Construct a new statistics snapshot, used by KTree.statistics().
+	 * @param k the branching factor of the tree.
+	 * @param levelOccupancy the number of values on each level.
+	 * @param leafDepths the number of leaves on each level.
+	 */
+	KTreeStatistics(int k, int[] levelOccupancy, int[] leafDepths){
+
+		int levels = levelOccupancy.length;
+		while(levels > 0 && levelOccupancy[levels - 1] == 0){ //drop empty trailing levels
+			levels--;
+		}
+
+		this.k = k;
+		this.levelOccupancy = Arrays.copyOf(levelOccupancy, levels);
+		this.leafDepths = Arrays.copyOf(leafDepths, levels);
+
+		int values = 0;
+		int leaves = 0;
+		long perfect = 0;
+		long levelWidth = 1;
+		for(int d = 0; d < levels; d++){
+			values += this.levelOccupancy[d];
+			leaves += this.leafDepths[d];
+			perfect += levelWidth; //k^d nodes on level d
+			levelWidth *= k;
+		}
+		this.size = values;
+		this.leafCount = leaves;
+		this.perfectSize = perfect;
+	}
+
+	/**
+	 * Return the branching factor k of the tree.
+	 * @return the branching factor k.
+	 */
+	public int getK(){
+
+		return k;
+	}
+
+	/**
+	 * Return the depth of the deepest value, or -1 if the tree holds no values.
+	 * @return the height of the occupied part of the tree.
+	 */
+	public int getHeight(){
+
+		return levelOccupancy.length - 1;
+	}
+
+	/**
+	 * Return the number of values in the tree.
+	 * @return the number of values in the tree.
+	 */
+	public int getSize(){
+
+		return size;
+	}
+
+	/**
+	 * Return the number of leaves, the values that decode() can emit.
+	 * @return the number of leaves.
+	 */
+	public int getLeafCount(){
+
+		return leafCount;
+	}
+
+	/**
+	 * Return the number of values on each level.
+	 * @return a copy of the per-level occupancy, index d is level d.
+	 */
+	public int[] getLevelOccupancy(){
+
+		return levelOccupancy.clone();
+	}
+
+	/**
+	 * Return the number of leaves on each level.
+	 * @return a copy of the leaf depth histogram, index d is level d.
+	 */
+	public int[] getLeafDepthHistogram(){
+
+		return leafDepths.clone();
+	}
+
+	/**
+	 * Return the number of nodes of a perfect k-ary tree with the same height.
+	 * @return the perfect tree size.
+	 */
+	public long getPerfectSize(){
+
+		return perfectSize;
+	}
+
+	/**
+	 * Return the fraction of the perfect tree that holds values.
+	 * @return size divided by the perfect tree size, 0 for an empty tree.
+	 */
+	public double getFillRatio(){
+
+		return perfectSize == 0 ? 0.0 : (double)size / perfectSize;
+	}
+
+	/**
+	 * Return the average depth of the leaves, the average number of instructions per decoded leaf
+	 * if every leaf is equally likely.
+	 * @return the average leaf depth, 0 if there are no leaves.
+	 */
+	public double getAverageLeafDepth(){
+
+		if(leafCount == 0){
+			return 0.0;
+		}
+
+		long total = 0;
+		for(int d = 0; d < leafDepths.length; d++){
+			total += (long)d * leafDepths[d];
+		}
+		return (double)total / leafCount;
+	}
+
+	/**
+	 * Return a readable summary of the statistics.
+	 * @return the summary string.
+	 */
+	public String toString(){
+
+		return "k=" + k + " height=" + getHeight() + " size=" + size + " leaves=" + leafCount
+				+ " fill=" + getFillRatio() + " levels=" + Arrays.toString(levelOccupancy)
+				+ " leafDepths=" + Arrays.toString(leafDepths);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+/**
+ * Define a test on the nodes of a tree that decides which subtrees a pruned traversal enters,
+ * see KTree.getPreOrderIterator(filter) and the other filtered iterators.
+ * A node that fails the test is skipped together with its whole subtree.
+ * @param <T> the type of the value in the tree.
+ */
+@FunctionalInterface
+public interface NodePredicate<T> {
+
+	/**
+	 * Test a node before the traversal visits it or anything below it.
+	 * @param index the level-order location index of the node.
+	 * @param depth the level of the node, 0 for the root.
+	 * @param value the value of the node, never null.
+	 * @return true to visit the node and test its children, false to skip its subtree.
+	 */
+	public boolean test(int index, int depth, T value);
+
+	/**
+	 * Combine this test with another one, the other test is only called when this one passes.
+	 * @param other the other test.
+	 * @return a test that passes when both tests pass.
+	 */
+	public default NodePredicate<T> and(NodePredicate<? super T> other){
+		return (index, depth, value) -> test(index, depth, value) && other.test(index, depth, value);
+	}
+
+	/**
+	 * Return a test that stops a traversal from descending below a level.
+	 * @param maxDepth the deepest level to visit.
+	 * @param <T> the type of the value in the tree.
+	 * @return a test that passes for the nodes down to maxDepth.
+	 */
+	public static <T> NodePredicate<T> maxDepth(int maxDepth){
+		return (index, depth, value) -> depth <= maxDepth;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Pack decoding instructions into ceil(log2 k) bits each, the input format of KTree.decodePacked().
+ * A packed message is a 4 byte big-endian instruction count followed by the instructions,
+ * most significant bit first, with the last byte padded with zero bits.
+ * For k = 2 this takes one bit per instruction instead of one char per instruction.
+ */
+public final class PackedDigits {
+
+	/**
+	 * Number of bytes in the instruction count header.
+	 */
+	public static final int HEADER_BYTES = 4;
+
+	private PackedDigits(){}
+
+	/**
+	 * Return the number of bits each instruction takes for a branching factor.
+	 * @param k the branching factor k.
+	 * @return ceil(log2 k).
+	 * @throws InvalidKException if k is less than 2.
+	 */
+	public static int bitsPerSymbol(int k){
+
+		if(k < 2){
+			throw new InvalidKException();
+		}
+		return 32 - Integer.numberOfLeadingZeros(k - 1);
+	}
+
+	/**
+	 * Return the size of a packed message.
+	 * @param count the number of instructions.
+	 * @param k the branching factor k.
+	 * @return the number of bytes including the header.
+	 */
+	public static long packedLength(long count, int k){
+
+		return HEADER_BYTES + (count * bitsPerSymbol(k) + 7) / 8;
+	}
+
+	/**
+	 * Pack a string of digit instructions, the format decode() accepts.
+	 * Characters that are not digits are skipped, like decode() skips them.
+	 * @param codedMessage the encoded string of digits.
+	 * @param k the branching factor k.
+	 * @return the packed message.
+	 * @throws IllegalArgumentException if a digit is not less than k.
+	 */
+	public static byte[] pack(CharSequence codedMessage, int k){
+
+		int[] symbols = new int[codedMessage.length()];
+		int count = 0;
+		for(int i = 0; i < codedMessage.length(); i++){
+			int number = Character.getNumericValue(codedMessage.charAt(i));
+			if(number >= 0 && number <= 9){
+				symbols[count++] = number;
+			}
+		}
+		return pack(symbols, 0, count, k);
+	}
+
+	/**
+	 * Pack instructions given as child indices.
+	 * @param symbols the instructions.
+	 * @param offset the index of the first instruction.
+	 * @param count the number of instructions.
+	 * @param k the branching factor k.
+	 * @return the packed message.
+	 * @throws IllegalArgumentException if an instruction is negative or not less than k.
+	 */
+	public static byte[] pack(int[] symbols, int offset, int count, int k){
+
+		int bits = bitsPerSymbol(k);
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int)packedLength(count, k));
+
+		out.write(count >>> 24);
+		out.write(count >>> 16);
+		out.write(count >>> 8);
+		out.write(count);
+
+		long acc = 0; //bits not yet written
+		int accBits = 0;
+		for(int i = offset; i < offset + count; i++){
+			if(symbols[i] < 0 || symbols[i] >= k){
+				throw new IllegalArgumentException("Instruction out of range: " + symbols[i]);
+			}
+			acc = (acc << bits) | symbols[i];
+			accBits += bits;
+			while(accBits >= 8){
+				out.write((int)(acc >>> (accBits - 8)));
+				accBits -= 8;
+			}
+			acc &= (1L << accBits) - 1;
+		}
+		if(accBits > 0){
+			out.write((int)(acc << (8 - accBits))); //pad the last byte with zero bits
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Unpack a packed message back into child indices.
+	 * @param packed the packed message.
+	 * @param k the branching factor k.
+	 * @return the instructions.
+	 * @throws IllegalArgumentException if the message is shorter than its header says.
+	 */
+	public static int[] unpack(byte[] packed, int k){
+
+		int bits = bitsPerSymbol(k);
+		int count = readCount(packed);
+		if(packed.length < packedLength(count, k)){
+			throw new IllegalArgumentException("Truncated packed message");
+		}
+
+		int[] symbols = new int[count];
+		long acc = 0;
+		int accBits = 0;
+		int n = 0;
+		for(int i = HEADER_BYTES; n < count; i++){
+			acc = (acc << 8) | (packed[i] & 0xFF);
+			accBits += 8;
+			while(accBits >= bits && n < count){
+				accBits -= bits;
+				symbols[n++] = (int)(acc >>> accBits) & ((1 << bits) - 1);
+			}
+			acc &= (1L << accBits) - 1;
+		}
+		return symbols;
+	}
+
+	/**
+	 * Read the instruction count header of a packed message.
+	 * @param packed the packed message.
+	 * @return the number of instructions.
+	 * @throws IllegalArgumentException if the header is missing or negative.
+	 */
+	public static int readCount(byte[] packed){
+
+		if(packed.length < HEADER_BYTES){
+			throw new IllegalArgumentException("Truncated packed message");
+		}
+		int count = ((packed[0] & 0xFF) << 24) | ((packed[1] & 0xFF) << 16) | ((packed[2] & 0xFF) << 8) | (packed[3] & 0xFF);
+		if(count < 0){
+			throw new IllegalArgumentException("Invalid instruction count");
+		}
+		return count;
+	}
+}
\ No newline at end of file
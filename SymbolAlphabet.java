@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * A table-driven mapping between instruction characters and child indices, used by
+ * KTree.decode(tree, message, alphabet) to decode trees with more than 10 children per node.
+ * The character at position d of the alphabet is the instruction for child d.
+ */
+public final class SymbolAlphabet {
+
+	/**
+	 * The digits 0-9, the instructions decode() understands.
+	 */
+	public static final SymbolAlphabet DECIMAL = new SymbolAlphabet("0123456789", false);
+
+	/**
+	 * The hexadecimal digits 0-9 and a-f, for k up to 16, letters in either case.
+	 */
+	public static final SymbolAlphabet HEX = new SymbolAlphabet("0123456789abcdef", true);
+
+	/**
+	 * The digits 0-9 and letters a-z, for k up to 36, letters in either case.
+	 */
+	public static final SymbolAlphabet BASE36 = new SymbolAlphabet("0123456789abcdefghijklmnopqrstuvwxyz", true);
+
+	/**
+	 * The base 64 alphabet of RFC 4648, A-Z, a-z, 0-9, + and /, for k up to 64.
+	 */
+	public static final SymbolAlphabet BASE64 = new SymbolAlphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/", false);
+
+	private final String symbols; //instruction character of each child index
+	private final short[] table; //child index of each character, -1 if not in the alphabet
+
+	/**
+	 * Construct an alphabet from its instruction characters.
+	 * @param symbols the instruction characters, the character at position d selects child d.
+	 * @throws IllegalArgumentException if the alphabet is empty or repeats a character.
+	 */
+	public SymbolAlphabet(String symbols){
+
+		this(symbols, false);
+	}
+
+	/**
+	 * Construct an alphabet from its instruction characters.
+	 * @param symbols the instruction characters, the character at position d selects child d.
+	 * @param ignoreCase true if upper and lower case letters select the same child.
+	 * @throws IllegalArgumentException if the alphabet is empty or repeats a character.
+	 */
+	private SymbolAlphabet(String symbols, boolean ignoreCase){
+
+		if(symbols.isEmpty() || symbols.length() > Short.MAX_VALUE){
+			throw new IllegalArgumentException();
+		}
+
+		int max = 0;
+		for(int i = 0; i < symbols.length(); i++){
+			max = Math.max(max, Math.max(symbols.charAt(i), ignoreCase ? Character.toUpperCase(symbols.charAt(i)) : 0));
+		}
+
+		this.symbols = symbols;
+		this.table = new short[max + 1];
+		Arrays.fill(table, (short)-1);
+
+		for(int d = 0; d < symbols.length(); d++){
+			char c = symbols.charAt(d);
+			if(table[c] != -1){
+				throw new IllegalArgumentException("Repeated symbol: " + c);
+			}
+			table[c] = (short)d;
+			if(ignoreCase){
+				table[Character.toUpperCase(c)] = (short)d;
+			}
+		}
+	}
+
+	/**
+	 * Return the smallest built-in alphabet that has an instruction for every child.
+	 * @param k the branching factor k.
+	 * @return DECIMAL, HEX, BASE36 or BASE64.
+	 * @throws IllegalArgumentException if k is more than 64, use KTree.decodeBytes() instead.
+	 */
+	public static SymbolAlphabet forK(int k){
+
+		if(k <= 10){
+			return DECIMAL;
+		}
+		else if(k <= 16){
+			return HEX;
+		}
+		else if(k <= 36){
+			return BASE36;
+		}
+		else if(k <= 64){
+			return BASE64;
+		}
+		throw new IllegalArgumentException("No built-in alphabet for k = " + k);
+	}
+
+	/**
+	 * Return the number of instructions in the alphabet.
+	 * @return the largest branching factor the alphabet can address.
+	 */
+	public int size(){
+
+		return symbols.length();
+	}
+
+	/**
+	 * Return the child index an instruction character selects.
+	 * @param c the instruction character.
+	 * @return the child index, or -1 if the character is not in the alphabet.
+	 */
+	public int digit(char c){
+
+		return (c < table.length) ? table[c] : -1;
+	}
+
+	/**
+	 * Return the instruction character that selects a child.
+	 * @param d the child index.
+	 * @return the instruction character.
+	 * @throws IndexOutOfBoundsException if d is not less than size().
+	 */
+	public char symbol(int d){
+
+		return symbols.charAt(d);
+	}
+
+	/**
+	 * Return the instruction characters of the alphabet.
+	 * @return the instruction characters in child index order.
+	 */
+	public String toString(){
+
+		return symbols;
+	}
+}
\ No newline at end of file
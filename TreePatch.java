@@ -0,0 +1,139 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable list of index-level changes that turns one k-ary tree into another, created by KTree.diff().
+ * The changes are kept in the order KTree.apply() performs them: removes from the deepest index up,
+ * then updates, then inserts from the root down, so every intermediate tree stays valid.
+ * @param <E> the type of the values in the trees.
+ */
+public class TreePatch<E> {
+
+	/**
+	 * The kind of a change, in the order they are applied.
+	 */
+	public enum Operation {
+		/** The value at the index is removed. */
+		REMOVE,
+		/** The value at the index is replaced. */
+		UPDATE,
+		/** A value is added at an index that had none. */
+		INSERT
+	}
+
+	private final int k; //branching factor of the trees
+	private final Operation[] operations; //kind of each change
+	private final int[] indices; //level-order location index of each change
+	private final Object[] values; //new value of each change, null for removes
+
+	/**
+	 * Construct a new patch, used by KTree.diff().
+	 * @param k the branching factor of the trees.
+	 * @param operations the kind of each change.
+	 * @param indices the level-order location index of each change.
+	 * @param values the new value of each change, null for removes.
+	 */
+	TreePatch(int k, List<Operation> operations, List<Integer> indices, List<E> values){
+
+		Integer[] order = new Integer[operations.size()];
+		for(int n = 0; n < order.length; n++){
+			order[n] = n;
+		}
+		Arrays.sort(order, Comparator.comparing((Integer n) -> operations.get(n)) //apply order of the kinds
+				.thenComparingInt(n -> (operations.get(n) == Operation.REMOVE) ? -indices.get(n) : indices.get(n)));
+
+		this.k = k;
+		this.operations = new Operation[order.length];
+		this.indices = new int[order.length];
+		this.values = new Object[order.length];
+		for(int n = 0; n < order.length; n++){
+			this.operations[n] = operations.get(order[n]);
+			this.indices[n] = indices.get(order[n]);
+			this.values[n] = values.get(order[n]);
+		}
+	}
+
+	/**
+	 * Return the branching factor k of the trees.
+	 * @return the branching factor k.
+	 */
+	public int getK(){
+
+		return k;
+	}
+
+	/**
+	 * Return the number of changes.
+	 * @return the number of changes.
+	 */
+	public int size(){
+
+		return operations.length;
+	}
+
+	/**
+	 * Test if the two trees held the same values.
+	 * @return true if there are no changes.
+	 */
+	public boolean isEmpty(){
+
+		return operations.length == 0;
+	}
+
+	/**
+	 * Return the kind of a change.
+	 * @param n the position of the change, 0 to size() - 1.
+	 * @return the kind of the change.
+	 */
+	public Operation getOperation(int n){
+
+		return operations[n];
+	}
+
+	/**
+	 * Return the location of a change.
+	 * @param n the position of the change, 0 to size() - 1.
+	 * @return the level-order location index of the change.
+	 */
+	public int getIndex(int n){
+
+		return indices[n];
+	}
+
+	/**
+	 * Return the new value of a change.
+	 * @param n the position of the change, 0 to size() - 1.
+	 * @return the new value, null for a remove.
+	 */
+	@SuppressWarnings("unchecked")
+	public E getValue(int n){
+
+		return (E)values[n];
+	}
+
+	/**
+	 * Output the changes, -i for a remove, ~i=value for an update and +i=value for an insert.
+	 * @return the changes separated by spaces.
+	 */
+	public String toString(){
+
+		StringBuilder s = new StringBuilder();
+		for(int n = 0; n < operations.length; n++){
+			if(n > 0){
+				s.append(" ");
+			}
+			switch(operations[n]){
+				case REMOVE:
+					s.append("-").append(indices[n]);
+					break;
+				case UPDATE:
+					s.append("~").append(indices[n]).append("=").append(values[n]);
+					break;
+				default:
+					s.append("+").append(indices[n]).append("=").append(values[n]);
+			}
+		}
+		return s.toString();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+/**
+ * Define the callbacks of a single depth-first walk over a tree, see KTree.walk().
+ * enter() is called in pre-order and exit() in post-order during the same pass.
+ * @param <T> the type of the value in the tree.
+ */
+public interface TreeVisitor<T> {
+
+	/**
+	 * Called when the walk reaches a node, before any of its children.
+	 * @param index the level-order location index of the node.
+	 * @param value the value of the node.
+	 * @param depth the level of the node, 0 for the root.
+	 */
+	public void enter(int index, T value, int depth);
+
+	/**
+	 * Called when the walk leaves a node, after all of its children.
+	 * @param index the level-order location index of the node.
+	 * @param value the value of the node.
+	 * @param depth the level of the node, 0 for the root.
+	 */
+	public default void exit(int index, T value, int depth){}
+}
\ No newline at end of file